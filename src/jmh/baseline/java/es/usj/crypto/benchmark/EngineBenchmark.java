@@ -0,0 +1,51 @@
+package es.usj.crypto.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.usj.crypto.HeuristicDecryptor;
+import es.usj.crypto.enigma.*;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+/**
+ * EngineBenchmark for the tree before the optimizations, which only has {@link Machine}: the compiled machine
+ * benchmark ciphers the same text with it, so that its baseline is the work it replaces.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EngineBenchmark {
+
+    @Param({"64", "512", "4096"})
+    public int length;
+
+    private String text;
+    private Machine machine;
+
+    @Setup
+    public void setup() {
+        text = BenchmarkTexts.text(length);
+        Plugboard plugboard = new Plugboard(BenchmarkTexts.PLUGBOARD);
+        Rotor right = new Rotor(RotorConfiguration.ROTOR_I, 'F');
+        Rotor middle = new Rotor(RotorConfiguration.ROTOR_II, 'S');
+        Rotor left = new Rotor(RotorConfiguration.ROTOR_III, 'E');
+        machine = new Machine(plugboard, right, middle, left, HeuristicDecryptor.REFLECTOR);
+    }
+
+    // The machine cannot be reset, so its rotors keep stepping from one call to the next
+    @Benchmark
+    public String machineCipheredText() {
+        return machine.getCipheredText(text);
+    }
+
+    @Benchmark
+    public String compiledMachineEncrypt() {
+        return machine.getCipheredText(text);
+    }
+
+    @Benchmark
+    public Plugboard plugboardConstruction() {
+        return new Plugboard(BenchmarkTexts.PLUGBOARD);
+    }
+}
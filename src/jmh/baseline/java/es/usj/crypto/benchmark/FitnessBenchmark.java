@@ -0,0 +1,87 @@
+package es.usj.crypto.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.usj.crypto.Entropy;
+import es.usj.crypto.fitness.*;
+
+/**
+ * FitnessBenchmark for the tree before the optimizations, which has no fitness kernel: the kernel benchmarks score
+ * the same text with {@link Entropy#getFitness(String, boolean)}, so that their baselines are the work they replace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FitnessBenchmark {
+
+    @Param({"64", "512", "4096"})
+    public int length;
+
+    private String text;
+    private char[] letters;
+    private SingleCharacterFitness unigramFitness;
+    private BigramFitness bigramFitness;
+    private TrigramFitness trigramFitness;
+    private QuadramFitness quadramFitness;
+    private IoCFitness iocFitness;
+    private Entropy entropy;
+
+    @Setup
+    public void setup() {
+        text = BenchmarkTexts.text(length);
+        letters = BenchmarkTexts.letters(length);
+        unigramFitness = new SingleCharacterFitness();
+        bigramFitness = new BigramFitness();
+        trigramFitness = new TrigramFitness();
+        quadramFitness = new QuadramFitness();
+        iocFitness = new IoCFitness();
+        entropy = new Entropy();
+    }
+
+    @Benchmark
+    public float unigramScore() {
+        return unigramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float bigramScore() {
+        return bigramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float trigramScore() {
+        return trigramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float quadgramScore() {
+        return quadramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float iocScore() {
+        return iocFitness.score(letters);
+    }
+
+    @Benchmark
+    public Float entropyFitness() {
+        return entropy.getFitness(text, false);
+    }
+
+    @Benchmark
+    public Float entropyRotorsFitness() {
+        return entropy.getFitness(text, true);
+    }
+
+    @Benchmark
+    public Float kernelFitness() {
+        return entropy.getFitness(text, false);
+    }
+
+    @Benchmark
+    public Float kernelRotorsFitness() {
+        return entropy.getFitness(text, true);
+    }
+}
@@ -0,0 +1,121 @@
+package es.usj.crypto.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.usj.crypto.Entropy;
+import es.usj.crypto.GeneticalPopulations;
+import es.usj.crypto.HeuristicDecryptor;
+import es.usj.crypto.HillClimbing;
+import es.usj.crypto.Pair;
+import es.usj.crypto.enigma.Machine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+/**
+ * HeuristicBenchmark for the tree before the optimizations, where plugboards are strings and every step runs on the
+ * common pool, sized by the runner with {@code threads}. The batch evaluator benchmark scores the same population
+ * with one machine per plugboard, as the genetic algorithm did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HeuristicBenchmark {
+
+    private static final int POPULATION = 1000;
+    private static final int SIZE = 26;
+
+    @Param({"64", "512", "4096"})
+    public int length;
+
+    @Param({"1"})
+    public int threads;
+
+    private Rotor[] rotors;
+    private String text;
+    private List<String> population;
+    private Entropy entropy;
+    private HillClimbing hillClimbing;
+    private GeneticalPopulations geneticalPopulations;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rotors = new Rotor[]{
+            new Rotor(RotorConfiguration.ROTOR_I, 'C'),
+            new Rotor(RotorConfiguration.ROTOR_IV, 'Q'),
+            new Rotor(RotorConfiguration.ROTOR_II, 'Z')
+        };
+        text = BenchmarkTexts.text(length);
+        Random random = new Random(42);
+        population = new ArrayList<>();
+        for (int i = 0; i < POPULATION; i++) {
+            population.add(randomPlugboard(random, 10));
+        }
+        entropy = new Entropy();
+        hillClimbing = new HillClimbing(rotors, new ArrayList<>(), text);
+    }
+
+    // A new population each iteration
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        geneticalPopulations = new GeneticalPopulations(new ArrayList<>(population), rotors, text);
+    }
+
+    @Benchmark
+    public Pair<String, Float> hillClimbingEvaluateNeighbors() {
+        return hillClimbing.evaluateNeighbors(BenchmarkTexts.PLUGBOARD);
+    }
+
+    @Benchmark
+    public float geneticalNextGeneration() {
+        geneticalPopulations.nextGeneration();
+        return geneticalPopulations.getBestFitness();
+    }
+
+    @Benchmark
+    public float[] batchEvaluatorPopulation() {
+        float[] scores = new float[population.size()];
+        for (int i = 0; i < scores.length; i++) {
+            Machine machine = new Machine(new Plugboard(population.get(i)), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+            scores[i] = entropy.getMachineFitness(machine, text);
+        }
+        return scores;
+    }
+
+    // Same plugboards as PlugboardWiring.random, in its "AB:CD" notation
+    private static String randomPlugboard(Random random, int cables) {
+        int[] letters = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            letters[i] = i;
+        }
+        for (int i = SIZE - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = letters[i];
+            letters[i] = letters[j];
+            letters[j] = swap;
+        }
+        int[] mapping = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            mapping[i] = i;
+        }
+        for (int i = 0; i < 2 * cables; i += 2) {
+            mapping[letters[i]] = letters[i + 1];
+            mapping[letters[i + 1]] = letters[i];
+        }
+        StringBuilder pairs = new StringBuilder();
+        for (int c = 0; c < SIZE; c++) {
+            if (mapping[c] > c) {
+                if (pairs.length() > 0) {
+                    pairs.append(':');
+                }
+                pairs.append((char) ('A' + c)).append((char) ('A' + mapping[c]));
+            }
+        }
+        return pairs.toString();
+    }
+}
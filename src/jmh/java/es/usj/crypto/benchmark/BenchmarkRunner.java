@@ -0,0 +1,134 @@
+package es.usj.crypto.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs every benchmark for each requested thread count and compares the scores with the checked-in baselines.
+ *
+ * Usage: {@code BenchmarkRunner [threads[,threads...]] [baseline]}. Results are written to
+ * {@code target/jmh/results-t<threads>.csv}; when {@code baseline} is {@code true} they are written to
+ * {@code src/jmh/baselines/baseline-t<threads>.csv} instead, to become the new reference.
+ *
+ * The checked-in baselines are recorded on the tree before the optimizations by {@code src/jmh/record-baselines.sh},
+ * with the benchmarks of {@code src/jmh/baseline}, so that every optimization is compared against the original code.
+ * Each row keeps the number of CPUs it was measured on: a thread count above them measures oversubscription rather
+ * than scaling, so it is neither recorded as a baseline nor compared against one.
+ */
+public class BenchmarkRunner {
+
+    private static final String HEADER = "benchmark,params,threads,score,error,unit,cpus";
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1").split(",");
+        boolean baseline = args.length > 1 && Boolean.parseBoolean(args[1]);
+
+        for (String value : threadCounts) {
+            int threads = Integer.parseInt(value.trim());
+            if (baseline && threads > CPUS) {
+                System.out.println("Baseline for " + threads + " threads not recorded: only " + CPUS + " CPUs");
+                continue;
+            }
+            List<String> rows = new ArrayList<>();
+
+            // Single-threaded code is measured with as many JMH threads as requested
+            rows.addAll(toRows(new Runner(options()
+                    .include(EngineBenchmark.class.getSimpleName())
+                    .include(FitnessBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run(), threads));
+
+            // Heuristic steps are parallel themselves, so their pools are sized instead
+            rows.addAll(toRows(new Runner(options()
+                    .include(HeuristicBenchmark.class.getSimpleName())
+                    .param("threads", String.valueOf(threads))
+                    .jvmArgsAppend("-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + threads)
+                    .threads(1)
+                    .build()).run(), threads));
+
+            Path reference = Paths.get("src", "jmh", "baselines", "baseline-t" + threads + ".csv");
+            Path output = baseline ? reference : Paths.get("target", "jmh", "results-t" + threads + ".csv");
+            List<String> lines = new ArrayList<>();
+            lines.add(HEADER);
+            lines.addAll(rows);
+            Files.createDirectories(output.getParent());
+            Files.write(output, lines);
+            System.out.println("Results written to " + output);
+
+            if (!baseline && Files.exists(reference)) {
+                compare(reference, rows);
+            }
+        }
+    }
+
+    private static ChainedOptionsBuilder options() {
+        return new OptionsBuilder()
+                .forks(3)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(1))
+                .shouldFailOnError(true);
+    }
+
+    private static List<String> toRows(Collection<RunResult> results, int threads) {
+        List<String> rows = new ArrayList<>();
+        for (RunResult result : results) {
+            Map<String, String> params = new TreeMap<>();
+            for (String key : result.getParams().getParamsKeys()) {
+                params.put(key, result.getParams().getParam(key));
+            }
+            rows.add(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%s,%d",
+                    result.getParams().getBenchmark().replace(BenchmarkRunner.class.getPackageName() + ".", ""),
+                    params.toString().replace(", ", ";").replaceAll("[{}]", ""),
+                    threads,
+                    result.getPrimaryResult().getScore(),
+                    result.getPrimaryResult().getScoreError(),
+                    result.getPrimaryResult().getScoreUnit(),
+                    CPUS));
+        }
+        return rows;
+    }
+
+    private static void compare(Path reference, List<String> rows) throws IOException {
+        Map<String, Double> baselineScores = new HashMap<>();
+        for (String line : Files.readAllLines(reference)) {
+            String[] fields = line.split(",");
+            if (!line.equals(HEADER)) {
+                int threads = Integer.parseInt(fields[2]);
+                int cpus = fields.length > 6 ? Integer.parseInt(fields[6]) : 1;
+                if (threads > cpus) {
+                    System.out.println("Not compared with " + reference + ": " + threads + " threads recorded on " + cpus + " CPUs");
+                    return;
+                }
+                baselineScores.put(fields[0] + " " + fields[1], Double.parseDouble(fields[3]));
+            }
+        }
+        System.out.println("Speedup over " + reference + ":");
+        for (String row : rows) {
+            String[] fields = row.split(",");
+            Double baselineScore = baselineScores.get(fields[0] + " " + fields[1]);
+            if (baselineScore != null) {
+                System.out.printf(Locale.ROOT, "  %-55s %-22s %8.2fx%n",
+                        fields[0], fields[1], Double.parseDouble(fields[3]) / baselineScore);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package es.usj.crypto.benchmark;
+
+import java.util.Random;
+
+/**
+ * Builds the reproducible ciphertexts used by the benchmarks: words of 1 to 8 letters separated by single spaces.
+ */
+final class BenchmarkTexts {
+
+    static final String PLUGBOARD = "IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK";
+
+    private BenchmarkTexts() {
+    }
+
+    static String text(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            int wordLength = 1 + random.nextInt(8);
+            for (int i = 0; i < wordLength && text.length() < length; i++) {
+                text.append((char) ('A' + random.nextInt(26)));
+            }
+        }
+        return text.toString();
+    }
+
+    static char[] letters(int length) {
+        return text(length).replace(" ", "").toCharArray();
+    }
+}
@@ -0,0 +1,54 @@
+package es.usj.crypto.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.usj.crypto.HeuristicDecryptor;
+import es.usj.crypto.enigma.*;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EngineBenchmark {
+
+    @Param({"64", "512", "4096"})
+    public int length;
+
+    private String text;
+    private Machine machine;
+    private CompiledMachine compiledMachine;
+    private byte[] normalized;
+    private byte[] output;
+
+    @Setup
+    public void setup() {
+        text = BenchmarkTexts.text(length);
+        Plugboard plugboard = new Plugboard(BenchmarkTexts.PLUGBOARD);
+        Rotor right = new Rotor(RotorConfiguration.ROTOR_I, 'F');
+        Rotor middle = new Rotor(RotorConfiguration.ROTOR_II, 'S');
+        Rotor left = new Rotor(RotorConfiguration.ROTOR_III, 'E');
+        machine = new Machine(plugboard, right, middle, left, HeuristicDecryptor.REFLECTOR);
+        compiledMachine = new CompiledMachine(plugboard, right, middle, left, HeuristicDecryptor.REFLECTOR);
+        normalized = CompiledMachine.normalize(text);
+        output = new byte[normalized.length];
+    }
+
+    @Benchmark
+    public String machineCipheredText() {
+        machine.reset();
+        return machine.getCipheredText(text);
+    }
+
+    @Benchmark
+    public byte[] compiledMachineEncrypt() {
+        compiledMachine.encrypt(normalized, output);
+        return output;
+    }
+
+    @Benchmark
+    public Plugboard plugboardConstruction() {
+        return new Plugboard(BenchmarkTexts.PLUGBOARD);
+    }
+}
@@ -0,0 +1,89 @@
+package es.usj.crypto.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.usj.crypto.Entropy;
+import es.usj.crypto.FitnessKernel;
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.fitness.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FitnessBenchmark {
+
+    @Param({"64", "512", "4096"})
+    public int length;
+
+    private String text;
+    private char[] letters;
+    private SingleCharacterFitness unigramFitness;
+    private BigramFitness bigramFitness;
+    private TrigramFitness trigramFitness;
+    private QuadramFitness quadramFitness;
+    private IoCFitness iocFitness;
+    private Entropy entropy;
+    private byte[] normalized;
+    private FitnessKernel kernel;
+
+    @Setup
+    public void setup() {
+        text = BenchmarkTexts.text(length);
+        letters = BenchmarkTexts.letters(length);
+        unigramFitness = new SingleCharacterFitness();
+        bigramFitness = new BigramFitness();
+        trigramFitness = new TrigramFitness();
+        quadramFitness = new QuadramFitness();
+        iocFitness = new IoCFitness();
+        entropy = new Entropy();
+        normalized = CompiledMachine.normalize(text);
+        kernel = new FitnessKernel(entropy, normalized);
+    }
+
+    @Benchmark
+    public float unigramScore() {
+        return unigramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float bigramScore() {
+        return bigramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float trigramScore() {
+        return trigramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float quadgramScore() {
+        return quadramFitness.score(letters);
+    }
+
+    @Benchmark
+    public float iocScore() {
+        return iocFitness.score(letters);
+    }
+
+    @Benchmark
+    public Float entropyFitness() {
+        return entropy.getFitness(text, false);
+    }
+
+    @Benchmark
+    public Float entropyRotorsFitness() {
+        return entropy.getFitness(text, true);
+    }
+
+    @Benchmark
+    public float kernelFitness() {
+        return kernel.score(normalized, false);
+    }
+
+    @Benchmark
+    public float kernelRotorsFitness() {
+        return kernel.score(normalized, true);
+    }
+}
@@ -0,0 +1,97 @@
+package es.usj.crypto.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import es.usj.crypto.BatchEvaluator;
+import es.usj.crypto.Entropy;
+import es.usj.crypto.EvaluationScheduler;
+import es.usj.crypto.GeneticalPopulations;
+import es.usj.crypto.HillClimbing;
+import es.usj.crypto.Pair;
+import es.usj.crypto.HeuristicDecryptor;
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+/**
+ * Heuristic steps for a fixed rotor setting. They are parallel themselves, so they are run by a single JMH thread:
+ * {@code threads} sizes the evaluation pool of HillClimbing, and the runner sizes the common pool used by the
+ * genetic algorithm with the same value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HeuristicBenchmark {
+
+    private static final int POPULATION = 1000;
+
+    @Param({"64", "512", "4096"})
+    public int length;
+
+    @Param({"1"})
+    public int threads;
+
+    private Rotor[] rotors;
+    private String text;
+    private List<PlugboardWiring> population;
+    private PlugboardWiring plugboard;
+    private EvaluationScheduler scheduler;
+    private HillClimbing hillClimbing;
+    private GeneticalPopulations geneticalPopulations;
+    private BatchEvaluator batchEvaluator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rotors = new Rotor[]{
+            new Rotor(RotorConfiguration.ROTOR_I, 'C'),
+            new Rotor(RotorConfiguration.ROTOR_IV, 'Q'),
+            new Rotor(RotorConfiguration.ROTOR_II, 'Z')
+        };
+        text = BenchmarkTexts.text(length);
+        Random random = new Random(42);
+        population = new ArrayList<>();
+        for (int i = 0; i < POPULATION; i++) {
+            population.add(PlugboardWiring.random(random, 10));
+        }
+        plugboard = PlugboardWiring.parse(BenchmarkTexts.PLUGBOARD);
+        scheduler = new EvaluationScheduler(threads);
+        hillClimbing = new HillClimbing(rotors, new ArrayList<>(), text, scheduler);
+        CompiledMachine machine = new CompiledMachine(
+            new Plugboard(PlugboardWiring.EMPTY), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+        batchEvaluator = new BatchEvaluator(new Entropy(), machine.trace(CompiledMachine.normalize(text)));
+    }
+
+    // A new population each iteration, with an empty fitness cache
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        geneticalPopulations = new GeneticalPopulations(new ArrayList<>(population), rotors, text);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public Pair<PlugboardWiring, Float> hillClimbingEvaluateNeighbors() {
+        return hillClimbing.evaluateNeighbors(plugboard);
+    }
+
+    @Benchmark
+    public float geneticalNextGeneration() {
+        geneticalPopulations.nextGeneration();
+        return geneticalPopulations.getBestFitness();
+    }
+
+    @Benchmark
+    public float[] batchEvaluatorPopulation() {
+        return batchEvaluator.score(population);
+    }
+}
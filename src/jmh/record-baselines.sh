@@ -0,0 +1,25 @@
+#!/bin/sh
+# Records src/jmh/baselines on the tree before the optimizations (the first commit by default).
+#
+# Usage: src/jmh/record-baselines.sh [threads[,threads...]] [commit]
+#
+# That tree has no compiled machine, fitness kernel or batch evaluator, so its benchmarks are the ones under
+# src/jmh/baseline: they have the same names and do the same work with the code of that tree.
+set -e
+
+THREADS=${1:-1,4}
+ROOT=$(git rev-parse --show-toplevel)
+COMMIT=${2:-$(git rev-list --max-parents=0 HEAD)}
+TREE=$(mktemp -d)
+
+git -C "$ROOT" worktree add --detach "$TREE" "$COMMIT"
+trap 'git -C "$ROOT" worktree remove --force "$TREE"' EXIT
+
+BENCHMARKS=src/jmh/java/es/usj/crypto/benchmark
+cp "$ROOT/pom.xml" "$TREE/pom.xml"
+mkdir -p "$TREE/$BENCHMARKS" "$TREE/src/jmh/baselines"
+cp "$ROOT/$BENCHMARKS/BenchmarkRunner.java" "$ROOT/$BENCHMARKS/BenchmarkTexts.java" "$TREE/$BENCHMARKS/"
+cp "$ROOT"/src/jmh/baseline/java/es/usj/crypto/benchmark/*.java "$TREE/$BENCHMARKS/"
+
+(cd "$TREE" && mvn -B -Pbenchmarks compile exec:exec -Dbenchmark.threads="$THREADS" -Dbenchmark.baseline=true)
+cp "$TREE"/src/jmh/baselines/baseline-t*.csv "$ROOT/src/jmh/baselines/"
@@ -0,0 +1,163 @@
+package es.usj.crypto;
+
+import java.util.List;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.ScramblerTrace;
+import es.usj.crypto.fitness.BigramFitness;
+import es.usj.crypto.fitness.NgramTable;
+import es.usj.crypto.fitness.NgramTables;
+import es.usj.crypto.fitness.SingleCharacterFitness;
+import es.usj.crypto.fitness.TrigramFitness;
+
+/**
+ * Scores many plugboards against one rotor setting, as {@link FitnessKernel} does in full mode.
+ *
+ * Plugboards are processed in blocks of {@link #BLOCK}. The ciphertext is walked once per block, and each block is
+ * decrypted into a column-major matrix (one row per letter, one column per plugboard), so every step of the walk
+ * and every n-gram of a word is handled for the whole block by a short, fixed-length inner loop over the columns.
+ * Scores can be computed concurrently; each thread uses its own block buffers.
+ */
+public class BatchEvaluator {
+
+    public static final int BLOCK = 16;
+    private static final int SIZE = 26;
+
+    // Scrambler substitution at each letter, indexed by letter * SIZE + character
+    private final byte[] scrambler;
+    private final SingleCharacterFitness unigramFitness;
+    private final BigramFitness bigramFitness;
+    private final TrigramFitness trigramFitness;
+    private final NgramTable quadgrams;
+
+    // Ciphertext character of each letter, and first letter and length of each word
+    private final byte[] cipherLetters;
+    private final int[] wordStarts;
+    private final int[] wordLengths;
+
+    private final ThreadLocal<Block> blocks;
+
+    public BatchEvaluator(Entropy entropy, ScramblerTrace trace) {
+        this.scrambler = trace.getSubstitutions();
+        this.unigramFitness = entropy.unigramFitness;
+        this.bigramFitness = entropy.bigramFitness;
+        this.trigramFitness = entropy.trigramFitness;
+        this.quadgrams = NgramTables.get(NgramTables.Table.QUADGRAMS);
+
+        byte[] text = trace.getText();
+        int words = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] >= 0 && (i == 0 || text[i - 1] < 0)) {
+                words++;
+            }
+        }
+        this.cipherLetters = new byte[trace.letters()];
+        this.wordStarts = new int[words];
+        this.wordLengths = new int[words];
+        int letter = 0;
+        int word = -1;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] >= 0) {
+                if (i == 0 || text[i - 1] < 0) {
+                    wordStarts[++word] = letter;
+                }
+                wordLengths[word]++;
+                cipherLetters[letter++] = text[i];
+            }
+        }
+        this.blocks = ThreadLocal.withInitial(() -> new Block(cipherLetters.length));
+    }
+
+    public float[] score(List<PlugboardWiring> plugboards) {
+        float[] scores = new float[plugboards.size()];
+        score(plugboards, 0, plugboards.size(), scores);
+        return scores;
+    }
+
+    // Scores plugboards [from, to) into the same positions of scores
+    public void score(List<PlugboardWiring> plugboards, int from, int to, float[] scores) {
+        Block block = blocks.get();
+        for (int first = from; first < to; first += BLOCK) {
+            int count = Math.min(BLOCK, to - first);
+            for (int k = 0; k < count; k++) {
+                System.arraycopy(plugboards.get(first + k).getMapping(), 0, block.plugboards, k * SIZE, SIZE);
+            }
+            decrypt(block, count);
+            scoreWords(block, count);
+            System.arraycopy(block.fitness, 0, scores, first, count);
+        }
+    }
+
+    private void decrypt(Block block, int count) {
+        byte[] plugboards = block.plugboards;
+        byte[] decryptions = block.decryptions;
+        byte[] scrambler = this.scrambler;
+        for (int letter = 0; letter < cipherLetters.length; letter++) {
+            int c = cipherLetters[letter];
+            int row = letter * BLOCK;
+            int scramblerRow = letter * SIZE;
+            for (int k = 0, plugboard = 0; k < count; k++, plugboard += SIZE) {
+                decryptions[row + k] = plugboards[plugboard + scrambler[scramblerRow + plugboards[plugboard + c]]];
+            }
+        }
+    }
+
+    private void scoreWords(Block block, int count) {
+        byte[] text = block.decryptions;
+        float[] fitness = block.fitness;
+        float[] scores = block.wordScores;
+        int[] trigrams = block.trigrams;
+        for (int k = 0; k < count; k++) {
+            fitness[k] = 0.0f;
+        }
+        for (int w = 0; w < wordStarts.length; w++) {
+            int row = wordStarts[w] * BLOCK;
+            int length = wordLengths[w];
+            switch (length) {
+                case 1:
+                    for (int k = 0; k < count; k++) {
+                        scores[k] = unigramFitness.score(text[row + k]);
+                    }
+                    break;
+                case 2:
+                    for (int k = 0; k < count; k++) {
+                        scores[k] = bigramFitness.score(text[row + k], text[row + BLOCK + k]);
+                    }
+                    break;
+                case 3:
+                    for (int k = 0; k < count; k++) {
+                        scores[k] = trigramFitness.score(text[row + k], text[row + BLOCK + k], text[row + 2 * BLOCK + k]);
+                    }
+                    break;
+                default:
+                    // Rolling base-26 index of the last three letters of each column
+                    for (int k = 0; k < count; k++) {
+                        scores[k] = 0.0f;
+                        trigrams[k] = (text[row + k] * SIZE + text[row + BLOCK + k]) * SIZE + text[row + 2 * BLOCK + k];
+                    }
+                    for (int end = row + 3 * BLOCK; end < row + length * BLOCK; end += BLOCK) {
+                        for (int k = 0; k < count; k++) {
+                            int quadgram = trigrams[k] * SIZE + text[end + k];
+                            scores[k] += quadgrams.get(quadgram);
+                            trigrams[k] = quadgram - text[end - 3 * BLOCK + k] * SIZE * SIZE * SIZE;
+                        }
+                    }
+            }
+            for (int k = 0; k < count; k++) {
+                fitness[k] += scores[k];
+            }
+        }
+    }
+
+    private static final class Block {
+        private final byte[] plugboards = new byte[BLOCK * SIZE];
+        private final byte[] decryptions;
+        private final float[] wordScores = new float[BLOCK];
+        private final int[] trigrams = new int[BLOCK];
+        private final float[] fitness = new float[BLOCK];
+
+        private Block(int letters) {
+            this.decryptions = new byte[letters * BLOCK];
+        }
+    }
+}
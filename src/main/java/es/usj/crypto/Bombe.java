@@ -0,0 +1,452 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+
+/**
+ * Turing-bombe-style elimination of rotor settings with a crib, a phrase known to be at an offset of the message.
+ *
+ * Each letter of the crib is linked in a menu to the letter it was ciphered to, through the scrambler of its
+ * position: if the plugboard sends the plain letter to x, it sends the cipher letter to scrambler(x). For a rotor
+ * setting, the check assumes a partner for the most connected letter of the menu, skips it unless it comes back to
+ * itself around the shortest loop through that letter, and propagates it through every link, with the diagonal-board deduction (if A is plugged to B, B is plugged to A). A letter with two partners, or
+ * more than 10 cables, rejects the assumption. Deductions work both ways, so a contradiction also rejects every pair
+ * of letters deduced on the way, and later assumptions stop as soon as they deduce one of them. Other parts of the
+ * menu with a loop are checked in the same way, and a setting is rejected when no assumption survives. Parts of the
+ * menu without a loop accept almost any assumption, so they are not checked.
+ *
+ * Every rotor order and position is checked in parallel, with the middle rotor turning over at each letter of the
+ * crib or after it, as the ring setting of the right rotor is unknown. The ring setting of the middle rotor is unknown
+ * too: for each of those, the left rotor turns over at each position of the middle rotor in the crib, or at none of
+ * them. Each surviving assumption is a stop: a rotor setting and the partial plugboard implied by the menu.
+ * {@link #rings(Stop)} then finds the ring settings and rotor positions that keep the crib, which only differ outside
+ * of it.
+ */
+public class Bombe {
+
+    private static final Plugboard NO_PLUGBOARD = new Plugboard("");
+    private static final int SIZE = 26;
+    private static final int CABLES = 10;
+
+    private final String crib;
+    private final int offset;
+    // Index of the first letter of the crib among the letters of the message
+    private final int first;
+    private final int letters;
+    // Links of each letter of the menu, as pairs of the linked letter and the letter of the crib
+    private final int[][] links;
+    // One letter of each part of the menu that is checked, the most connected part first
+    private final int[] roots;
+    // Crib letters along the shortest loop through the first root, empty if it is on no loop
+    private final int[] loop;
+
+    public Bombe(String encryptedMessage, String crib, int offset) {
+        String message = encryptedMessage.toUpperCase(Locale.ROOT);
+        this.crib = crib.toUpperCase(Locale.ROOT);
+        this.offset = offset;
+        if (offset < 0 || offset + crib.length() > message.length()) {
+            throw new IllegalArgumentException("Crib does not fit in the message at offset " + offset);
+        }
+        int letter = 0;
+        for (int i = 0; i < offset; i++) {
+            if (isLetter(message.charAt(i))) {
+                letter++;
+            }
+        }
+        this.first = letter;
+
+        List<List<Integer>> menu = new ArrayList<>();
+        for (int c = 0; c < SIZE; c++) {
+            menu.add(new ArrayList<>());
+        }
+        int count = 0;
+        for (int i = 0; i < this.crib.length(); i++) {
+            char plain = this.crib.charAt(i);
+            char cipher = message.charAt(offset + i);
+            if (isLetter(plain) != isLetter(cipher)) {
+                throw new IllegalArgumentException("Blanks of the crib do not match the message at offset " + offset);
+            }
+            if (!isLetter(plain)) {
+                continue;
+            }
+            if (plain == cipher) {
+                throw new IllegalArgumentException("Enigma never ciphers a letter to itself: " + plain + " at " + (offset + i));
+            }
+            menu.get(plain - 'A').addAll(Arrays.asList(cipher - 'A', count));
+            menu.get(cipher - 'A').addAll(Arrays.asList(plain - 'A', count));
+            count++;
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("Crib has no letters");
+        }
+        this.letters = count;
+        this.links = new int[SIZE][];
+        for (int c = 0; c < SIZE; c++) {
+            links[c] = menu.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.roots = roots(links);
+        this.loop = loop(links, roots[0]);
+    }
+
+    public String getCrib() {
+        return crib;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    // Stops of every rotor order and position
+    public List<Stop> run() {
+        return run(0, RotorSettings.ROTOR_ORDERS);
+    }
+
+    // Stops of the rotor orders [from, to), one task per rotor order
+    List<Stop> run(int from, int to) {
+        List<Stop> stops = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int order = from; order < to; order++) {
+            final int firstIndex = order * RotorSettings.POSITIONS;
+            futures.add(CompletableFuture.runAsync(() -> {
+                Check check = new Check();
+                Rotor[] rotors = RotorSettings.getRotors(firstIndex);
+                CompiledMachine base = new CompiledMachine(NO_PLUGBOARD, rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+                for (int index = firstIndex; index < firstIndex + RotorSettings.POSITIONS; index++) {
+                    CompiledMachine machine = base.withPositions(
+                        RotorSettings.getLeftPosition(index),
+                        RotorSettings.getMiddlePosition(index),
+                        RotorSettings.getRightPosition(index)
+                    );
+                    // Turnovers at every letter of the crib, and one after it
+                    for (int turnover = 0; turnover < Math.min(letters + 1, SIZE); turnover++) {
+                        CompiledMachine turned = machine.withRightTurnover(first + turnover);
+                        int notches = check.middleNotches(turned);
+                        for (int notch = 0; notch < notches; notch++) {
+                            CompiledMachine variant = turned.withMiddleTurnover(check.notches[notch]);
+                            for (int[] partners : check.stops(variant)) {
+                                stops.add(new Stop(withRings(RotorSettings.getRotors(index), variant), partners));
+                            }
+                        }
+                    }
+                }
+                SearchMetrics.get().rotorSettingsRanked(RotorSettings.POSITIONS);
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return new ArrayList<>(stops);
+    }
+
+    // Stops of every right and middle ring setting and middle rotor position of a stop, including itself, with the
+    // left rotor position that keeps the left rotor of the stop in the crib
+    public List<Stop> rings(Stop stop) {
+        Check check = new Check();
+        Rotor[] rotors = stop.getRotors();
+        CompiledMachine base = new CompiledMachine(NO_PLUGBOARD, rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+        int[] start = new int[3];
+        base.positions(first, start);
+        List<Stop> stops = new ArrayList<>();
+        for (char ring = 'A'; ring <= 'Z'; ring++) {
+            for (char middleRing = 'A'; middleRing <= 'Z'; middleRing++) {
+                for (char middle = 'A'; middle <= 'Z'; middle++) {
+                    CompiledMachine machine = base.withPositions(rotors[0].getRotorPosition(), middle, rotors[2].getRotorPosition())
+                            .withRingSettings(ring, middleRing)
+                            .withLeftHead(first, start[2]);
+                    for (int[] partners : check.stops(machine)) {
+                        stops.add(new Stop(new Rotor[]{
+                            new Rotor(rotors[0].getRotorConfiguration(), rotors[0].getRotorPosition(), ring),
+                            new Rotor(rotors[1].getRotorConfiguration(), middle, middleRing),
+                            new Rotor(rotors[2].getRotorConfiguration(), machine.getLeftPosition(), rotors[2].getRingSetting())
+                        }, partners));
+                    }
+                }
+            }
+        }
+        return stops;
+    }
+
+    private static Rotor[] withRings(Rotor[] rotors, CompiledMachine machine) {
+        rotors[0] = new Rotor(rotors[0].getRotorConfiguration(), rotors[0].getRotorPosition(), machine.getRightRingSetting());
+        rotors[1] = new Rotor(rotors[1].getRotorConfiguration(), rotors[1].getRotorPosition(), machine.getMiddleRingSetting());
+        return rotors;
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    // Parts of the menu with a loop, by decreasing number of loops, or the largest part if none has one
+    private static int[] roots(int[][] links) {
+        int[] component = new int[SIZE];
+        Arrays.fill(component, -1);
+        List<int[]> parts = new ArrayList<>();
+        for (int c = 0; c < SIZE; c++) {
+            if (component[c] >= 0 || links[c].length == 0) {
+                continue;
+            }
+            // Walk the part: its most connected letter, and its loops (links - letters + 1)
+            int root = c;
+            int size = 0;
+            int degrees = 0;
+            List<Integer> pending = new ArrayList<>(Collections.singletonList(c));
+            component[c] = parts.size();
+            while (!pending.isEmpty()) {
+                int letter = pending.remove(pending.size() - 1);
+                size++;
+                degrees += links[letter].length / 2;
+                if (links[letter].length > links[root].length) {
+                    root = letter;
+                }
+                for (int i = 0; i < links[letter].length; i += 2) {
+                    if (component[links[letter][i]] < 0) {
+                        component[links[letter][i]] = parts.size();
+                        pending.add(links[letter][i]);
+                    }
+                }
+            }
+            parts.add(new int[]{root, degrees / 2 - size + 1, degrees / 2});
+        }
+        parts.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(b[2], a[2]));
+        return parts.stream().filter(part -> part[1] > 0 || part == parts.get(0)).mapToInt(part -> part[0]).toArray();
+    }
+
+    // Shortest loop through a letter: a non-tree link of a breadth-first walk that joins two branches of the letter
+    private static int[] loop(int[][] links, int root) {
+        int[] depth = new int[SIZE];
+        int[] parent = new int[SIZE];
+        int[] parentLink = new int[SIZE];
+        int[] branch = new int[SIZE];
+        Arrays.fill(depth, -1);
+        depth[root] = 0;
+        parentLink[root] = -1;
+        branch[root] = -1;
+        int[] queue = new int[SIZE];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        int[] shortest = null;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int i = 0; i < links[u].length; i += 2) {
+                int v = links[u][i];
+                int k = links[u][i + 1];
+                if (depth[v] < 0) {
+                    depth[v] = depth[u] + 1;
+                    parent[v] = u;
+                    parentLink[v] = k;
+                    branch[v] = u == root ? v : branch[u];
+                    queue[tail++] = v;
+                } else if (k != parentLink[u] && k != parentLink[v] && branch[u] != branch[v]
+                        && (shortest == null || depth[u] + depth[v] + 1 < shortest.length)) {
+                    // From the root down to u, across to v, and up to the root
+                    shortest = new int[depth[u] + depth[v] + 1];
+                    for (int letter = u, j = depth[u] - 1; letter != root; letter = parent[letter], j--) {
+                        shortest[j] = parentLink[letter];
+                    }
+                    shortest[depth[u]] = k;
+                    for (int letter = v, j = depth[u] + 1; letter != root; letter = parent[letter], j++) {
+                        shortest[j] = parentLink[letter];
+                    }
+                }
+            }
+        }
+        return shortest == null ? new int[0] : shortest;
+    }
+
+    /**
+     * Buffers of the check of one rotor setting, used by one thread at a time.
+     */
+    private final class Check {
+        private final int[] positions = new int[letters * 3];
+        // Middle notches of the turnovers of the left rotor to check, see middleNotches
+        private final int[] notches = new int[letters / SIZE + 3];
+        // Partner of each letter (-1 when unknown) after checking each part of the menu
+        private final int[][] partners = new int[roots.length][SIZE];
+        private final int[] cables = new int[roots.length];
+        private final int[] queue = new int[SIZE];
+        // Pairs of letters that lead to a contradiction, marked with the stamp of the rotor setting
+        private final int[] refuted = new int[SIZE * SIZE];
+        private int stamp;
+        private boolean overflow;
+        private CompiledMachine machine;
+        private int head;
+        private int tail;
+
+        // Middle notches that make the left rotor turn over at each position of the middle rotor in the crib, and at
+        // the position before the crib, where it does not turn over in the crib; returns how many there are
+        private int middleNotches(CompiledMachine machine) {
+            machine.positions(first, positions);
+            int count = 0;
+            for (int letter = 0; letter < letters; letter++) {
+                if (letter == 0 || positions[letter * 3 + 1] != positions[letter * 3 - 2]) {
+                    notches[count++] = positions[letter * 3 + 1];
+                }
+            }
+            notches[count++] = (positions[1] + 1) % SIZE;
+            return count;
+        }
+
+        // Partners of the most connected part of the menu for each surviving assumption
+        private List<int[]> stops(CompiledMachine machine) {
+            this.machine = machine;
+            this.stamp++;
+            machine.positions(first, positions);
+            List<int[]> found = Collections.emptyList();
+            for (int partner = 0; partner < SIZE; partner++) {
+                Arrays.fill(partners[0], -1);
+                cables[0] = 0;
+                if (refuted[roots[0] * SIZE + partner] == stamp || !closesLoop(partner)) {
+                    continue;
+                }
+                if (!assume(0, roots[0], partner)) {
+                    // Every pair deduced from the assumption leads to the same contradiction
+                    for (int c = 0; c < SIZE; c++) {
+                        if (partners[0][c] >= 0) {
+                            refuted[c * SIZE + partners[0][c]] = stamp;
+                        }
+                    }
+                } else if (extend(1)) {
+                    if (found.isEmpty()) {
+                        found = new ArrayList<>();
+                    }
+                    found.add(partners[0].clone());
+                }
+            }
+            return found;
+        }
+
+        // Whether a partner of the first root comes back to itself around the shortest loop, as the true one does
+        private boolean closesLoop(int partner) {
+            int c = partner;
+            for (int letter : loop) {
+                c = machine.scramble(positions, letter, c);
+            }
+            return c == partner;
+        }
+
+        // Whether the remaining parts of the menu accept some assumption
+        private boolean extend(int depth) {
+            if (depth == roots.length) {
+                return true;
+            }
+            int root = roots[depth];
+            // Already deduced through the diagonal board, with its whole part
+            if (partners[depth - 1][root] >= 0) {
+                System.arraycopy(partners[depth - 1], 0, partners[depth], 0, SIZE);
+                cables[depth] = cables[depth - 1];
+                return extend(depth + 1);
+            }
+            for (int partner = 0; partner < SIZE; partner++) {
+                System.arraycopy(partners[depth - 1], 0, partners[depth], 0, SIZE);
+                cables[depth] = cables[depth - 1];
+                if (assume(depth, root, partner) && extend(depth + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean assume(int depth, int letter, int partner) {
+            head = 0;
+            tail = 0;
+            overflow = false;
+            if (!plug(depth, letter, partner)) {
+                return false;
+            }
+            int[] state = partners[depth];
+            while (head < tail) {
+                int c = queue[head++];
+                int[] link = links[c];
+                for (int i = 0; i < link.length; i += 2) {
+                    if (!plug(depth, link[i], machine.scramble(positions, link[i + 1], state[c]))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean plug(int depth, int first, int second) {
+            int[] state = partners[depth];
+            if (state[first] == second) {
+                return true;
+            }
+            if (state[first] >= 0 || state[second] >= 0 || refuted[first * SIZE + second] == stamp) {
+                return false;
+            }
+            state[first] = second;
+            queue[tail++] = first;
+            if (first != second) {
+                if (++cables[depth] > CABLES) {
+                    overflow = true;
+                    return false;
+                }
+                state[second] = first;
+                queue[tail++] = second;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A rotor setting that keeps the crib, with the cables implied by the menu.
+     */
+    public static final class Stop {
+        private final Rotor[] rotors;
+        private final PlugboardWiring plugboard;
+        // Letters the menu leaves out of the plugboard, as a bit mask
+        private final int unplugged;
+
+        private Stop(Rotor[] rotors, int[] partners) {
+            PlugboardWiring plugboard = PlugboardWiring.EMPTY;
+            int unplugged = 0;
+            for (int c = 0; c < SIZE; c++) {
+                if (partners[c] == c) {
+                    unplugged |= 1 << c;
+                } else if (partners[c] > c) {
+                    plugboard = plugboard.plug(c, partners[c]);
+                }
+            }
+            this.rotors = rotors;
+            this.plugboard = plugboard;
+            this.unplugged = unplugged;
+        }
+
+        public Rotor[] getRotors() {
+            return rotors;
+        }
+
+        public PlugboardWiring getPlugboard() {
+            return plugboard;
+        }
+
+        public boolean isUnplugged(int c) {
+            return (unplugged & 1 << c) != 0;
+        }
+
+        // The cables of the stop, and random cables between the letters the menu says nothing about
+        public PlugboardWiring complete(Random random, int cables) {
+            List<Integer> free = new ArrayList<>();
+            for (int c = 0; c < SIZE; c++) {
+                if (!plugboard.isPlugged(c) && !isUnplugged(c)) {
+                    free.add(c);
+                }
+            }
+            Collections.shuffle(free, random);
+            PlugboardWiring wiring = plugboard;
+            for (int i = 0; i + 1 < free.size() && wiring.cables() < cables; i += 2) {
+                wiring = wiring.plug(free.get(i), free.get(i + 1));
+            }
+            return wiring;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package es.usj.crypto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Slides cribs over a ciphertext to find the offsets where they can be, since Enigma never ciphers a letter to itself.
+ *
+ * An offset survives when no letter of the crib falls on the same letter of the ciphertext, and its blanks fall on
+ * blanks. Survivors are ranked by the strength of the menu they give to the {@link Bombe}: its loops first, then its
+ * links. The ciphertext is read in chunks that overlap by the longest crib, and the offsets of each chunk are dragged
+ * in parallel into rankings merged into a bounded one, so the memory used only depends on the chunk size and the
+ * number of offsets kept, however long the input is.
+ */
+public class CribDragger {
+
+    public static final int DEFAULT_CHUNK = 1 << 20;
+
+    private static final int SIZE = 26;
+    // Offsets dragged by each task
+    private static final int TASK_OFFSETS = 1 << 14;
+
+    private final String[] cribs;
+    private final int longest;
+    private final int keep;
+    private int chunkSize;
+
+    public CribDragger(int keep, String... cribs) {
+        if (cribs.length == 0) {
+            throw new IllegalArgumentException("No cribs to drag");
+        }
+        this.cribs = new String[cribs.length];
+        int longest = 0;
+        for (int i = 0; i < cribs.length; i++) {
+            this.cribs[i] = cribs[i].toUpperCase(Locale.ROOT);
+            longest = Math.max(longest, cribs[i].length());
+        }
+        this.longest = longest;
+        this.keep = keep;
+        this.chunkSize = CribDragger.DEFAULT_CHUNK;
+    }
+
+    // Characters of the ciphertext held in memory at once, besides the overlap with the next chunk
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public List<Offset> drag(String encryptedText) {
+        try {
+            return drag(new StringReader(encryptedText));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Best offsets of every crib in the ciphertext read, by decreasing strength of their menus
+    public List<Offset> drag(Reader reader) throws IOException {
+        TopRanking ranking = new TopRanking(this.keep);
+        char[] buffer = new char[this.chunkSize + this.longest - 1];
+        long base = 0;
+        int length = 0;
+        boolean end = false;
+        while (!end) {
+            int read = 0;
+            while (length < buffer.length && (read = reader.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+            }
+            end = read < 0;
+            for (int i = 0; i < length; i++) {
+                buffer[i] = Character.toUpperCase(buffer[i]);
+            }
+
+            // Offsets whose cribs may not fit in this chunk are dragged again with the next one
+            final int starts = end ? length : length - this.longest + 1;
+            final int chunkLength = length;
+            final long chunkBase = base;
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int from = 0; from < starts; from += CribDragger.TASK_OFFSETS) {
+                final int first = from;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    TopRanking workerRanking = new TopRanking(this.keep);
+                    int[] parts = new int[SIZE];
+                    for (int offset = first; offset < Math.min(first + CribDragger.TASK_OFFSETS, starts); offset++) {
+                        for (int c = 0; c < cribs.length; c++) {
+                            if (offset + cribs[c].length() <= chunkLength && fits(buffer, offset, cribs[c])) {
+                                workerRanking.offer((chunkBase + offset) * cribs.length + c, strength(buffer, offset, cribs[c], parts));
+                            }
+                        }
+                    }
+                    ranking.merge(workerRanking);
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            // Keep the characters that the remaining offsets still need
+            System.arraycopy(buffer, starts, buffer, 0, length - starts);
+            base += starts;
+            length -= starts;
+        }
+
+        List<Offset> offsets = new ArrayList<>();
+        long[] keys = ranking.getKeys();
+        float[] scores = ranking.getScores();
+        for (int i = 0; i < keys.length; i++) {
+            offsets.add(new Offset(cribs[(int) (keys[i] % cribs.length)], keys[i] / cribs.length, scores[i]));
+        }
+        return offsets;
+    }
+
+    // Whether a crib can be at an offset: no letter on itself, and blanks on blanks
+    public static boolean fits(char[] text, int offset, String crib) {
+        for (int i = 0; i < crib.length(); i++) {
+            char plain = crib.charAt(i);
+            char cipher = text[offset + i];
+            if (isLetter(plain) != isLetter(cipher) || isLetter(plain) && plain == cipher) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Loops of the menu, counted as the links that join letters already connected, with its links as a tiebreak
+    private float strength(char[] text, int offset, String crib, int[] parts) {
+        for (int c = 0; c < SIZE; c++) {
+            parts[c] = c;
+        }
+        int loops = 0;
+        int links = 0;
+        for (int i = 0; i < crib.length(); i++) {
+            if (!isLetter(crib.charAt(i))) {
+                continue;
+            }
+            int plain = find(parts, crib.charAt(i) - 'A');
+            int cipher = find(parts, text[offset + i] - 'A');
+            if (plain == cipher) {
+                loops++;
+            } else {
+                parts[plain] = cipher;
+            }
+            links++;
+        }
+        return loops + (float) links / (this.longest + 1);
+    }
+
+    private static int find(int[] parts, int c) {
+        while (parts[c] != c) {
+            parts[c] = parts[parts[c]];
+            c = parts[c];
+        }
+        return c;
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * A crib and an offset of the ciphertext where it can be.
+     */
+    public static final class Offset {
+        private final String crib;
+        private final long offset;
+        private final float strength;
+
+        private Offset(String crib, long offset, float strength) {
+            this.crib = crib;
+            this.offset = offset;
+            this.strength = strength;
+        }
+
+        public String getCrib() {
+            return crib;
+        }
+
+        // Characters of the ciphertext before the crib
+        public long getOffset() {
+            return offset;
+        }
+
+        // Loops of the menu, plus its links as a fraction
+        public float getStrength() {
+            return strength;
+        }
+
+        @Override
+        public String toString() {
+            return crib + "@" + offset;
+        }
+    }
+}
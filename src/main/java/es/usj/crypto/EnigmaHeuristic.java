@@ -8,10 +8,23 @@ public interface EnigmaHeuristic {
 
     void optimize();
 
+    // Makes a running optimize() return as soon as possible, keeping the best result found so far
+    void stop();
+
+    // Asks a running optimize() to capture its state at the next safe point; it also does when it returns
+    void requestSnapshot();
+
+    // Latest state captured by optimize() or restore(), or null if none was captured yet
+    SearchCheckpoint.State getSnapshot();
+
+    // Continues from a captured state instead of the initial plugboards; called before optimize()
+    void restore(SearchCheckpoint.State state);
+
     float getBestFitness();
     String getBestPlugboard();
     String getBestDecryptedMessage();
 
-    void writeBestToFile();
+    // Where improvements are reported; results are discarded until one is set
+    void setResultSink(ResultSink resultSink);
 
 }
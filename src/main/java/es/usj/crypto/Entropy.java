@@ -1,6 +1,8 @@
 package es.usj.crypto;
 
+import es.usj.crypto.enigma.CompiledMachine;
 import es.usj.crypto.enigma.Machine;
+import es.usj.crypto.enigma.ScramblerTrace;
 import es.usj.crypto.fitness.BigramFitness;
 import es.usj.crypto.fitness.FitnessFunction;
 import es.usj.crypto.fitness.QuadramFitness;
@@ -22,7 +24,8 @@ public class Entropy {
     }
 
     public Float getFitness(String decryptedText, boolean rotorsAnalysis) {
-        String[] decryptedWords = decryptedText.replace("\n", " ").split(" ");
+        // Any run of blank space separates words, so that no word is empty
+        String[] decryptedWords = decryptedText.trim().split("\\s+");
         float fitness = 0.0f;
         FitnessFunction f;
         if(rotorsAnalysis) {
@@ -54,4 +57,16 @@ public class Entropy {
     public Float getMachineFitness(Machine machine, String encryptedText) {
         return getFitness(machine.getCipheredText(encryptedText), false);
     }
+
+    public Float getMachineFitness(CompiledMachine machine, byte[] encryptedText) {
+        byte[] decryptedText = new byte[encryptedText.length];
+        machine.encrypt(encryptedText, decryptedText);
+        return getFitness(CompiledMachine.denormalize(decryptedText), false);
+    }
+
+    public Float getTraceFitness(ScramblerTrace trace, byte[] plugboard) {
+        byte[] decryptedText = new byte[trace.length()];
+        trace.decrypt(plugboard, decryptedText);
+        return getFitness(CompiledMachine.denormalize(decryptedText), false);
+    }
 }
@@ -0,0 +1,160 @@
+package es.usj.crypto;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates batches of candidates on a fork/join pool and keeps the best one.
+ *
+ * A batch is split into about four chunks per worker; each chunk scores its candidates sequentially and the chunk
+ * winners are reduced pairwise, so no result is stored per candidate. The pool is the common one unless a dedicated
+ * pool with a given number of threads is requested. Searches that keep their own parallel tasks, as the annealing
+ * chains, run them on the same pool, so the searches of a decryption never use more threads than it.
+ */
+public class EvaluationScheduler {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    public interface Evaluator<T> {
+        float evaluate(T candidate);
+    }
+
+    private final ForkJoinPool pool;
+
+    public EvaluationScheduler() {
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    public EvaluationScheduler(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    // Candidate with the highest score, or null for an empty batch
+    public <T> Pair<T, Float> best(List<T> candidates, Evaluator<T> evaluator) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        int chunkSize = Math.max(1, candidates.size() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        return pool.invoke(new ArgMaxTask<>(candidates, evaluator, 0, candidates.size(), chunkSize));
+    }
+
+    // Score of every candidate, in the order of the batch
+    public <T> float[] scores(List<T> candidates, Evaluator<T> evaluator) {
+        float[] scores = new float[candidates.size()];
+        if (!candidates.isEmpty()) {
+            int chunkSize = Math.max(1, candidates.size() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+            pool.invoke(new ScoreTask<>(candidates, evaluator, scores, 0, candidates.size(), chunkSize));
+        }
+        return scores;
+    }
+
+    // Runs the action on every item on the pool, and waits for all of them
+    public <T> void forEach(List<T> items, Consumer<T> action) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[items.size()];
+        for (int i = 0; i < futures.length; i++) {
+            T item = items.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> action.accept(item), pool);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    // Threads of the pool for each of the given number of searches run at once, at least one
+    public int share(int searches) {
+        return Math.max(1, pool.getParallelism() / Math.max(1, searches));
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    // Tasks submitted to the pool or forked by its threads that did not start yet
+    public int getQueuedTasks() {
+        return (int) Math.min(Integer.MAX_VALUE, pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount());
+    }
+
+    public void shutdown() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    private static class ScoreTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> candidates;
+        private final Evaluator<T> evaluator;
+        private final float[] scores;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        ScoreTask(List<T> candidates, Evaluator<T> evaluator, float[] scores, int from, int to, int chunkSize) {
+            this.candidates = candidates;
+            this.evaluator = evaluator;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    scores[i] = evaluator.evaluate(candidates.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ScoreTask<T> left = new ScoreTask<>(candidates, evaluator, scores, from, middle, chunkSize);
+            left.fork();
+            new ScoreTask<>(candidates, evaluator, scores, middle, to, chunkSize).compute();
+            left.join();
+        }
+    }
+
+    private static class ArgMaxTask<T> extends RecursiveTask<Pair<T, Float>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> candidates;
+        private final Evaluator<T> evaluator;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        ArgMaxTask(List<T> candidates, Evaluator<T> evaluator, int from, int to, int chunkSize) {
+            this.candidates = candidates;
+            this.evaluator = evaluator;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected Pair<T, Float> compute() {
+            if (to - from <= chunkSize) {
+                int bestIndex = from;
+                float bestScore = Float.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    float score = evaluator.evaluate(candidates.get(i));
+                    if (score > bestScore || i == from) {
+                        bestIndex = i;
+                        bestScore = score;
+                    }
+                }
+                return new Pair<>(candidates.get(bestIndex), bestScore);
+            }
+            int middle = (from + to) >>> 1;
+            ArgMaxTask<T> left = new ArgMaxTask<>(candidates, evaluator, from, middle, chunkSize);
+            left.fork();
+            Pair<T, Float> right = new ArgMaxTask<>(candidates, evaluator, middle, to, chunkSize).compute();
+            Pair<T, Float> best = left.join();
+            // Ties keep the first candidate of the batch
+            return right.getSecond() > best.getSecond() ? right : best;
+        }
+    }
+}
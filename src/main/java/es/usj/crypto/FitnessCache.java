@@ -0,0 +1,134 @@
+package es.usj.crypto;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+
+/**
+ * Bounded cache of plugboard scores, shared by the searches of every rotor setting.
+ *
+ * Entries are keyed by the fingerprint of the plugboard key and the rotor setting (see
+ * {@link PlugboardStore#fingerprint(PlugboardWiring, long)}), and the table is set-associative: a fingerprint can only
+ * live in the {@link #WAYS} slots of its set. A hit marks its slot as referenced; a miss on a full set evicts with
+ * CLOCK, advancing the hand of the set and clearing the referenced slots until it finds one that was not used since
+ * the hand last passed. Sets are guarded by striped locks, so the memory is fixed at creation and threads only
+ * contend when they touch sets of the same stripe.
+ */
+public class FitnessCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 21;
+
+    private static final int WAYS = 8;
+    private static final int STRIPES = 64;
+
+    // Fingerprint of each slot, 0 when free
+    private final long[] fingerprints;
+    private final float[] scores;
+    private final boolean[] referenced;
+    // Next slot of each set to consider for eviction
+    private final byte[] hands;
+    private final Object[] locks;
+    private final int setMask;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder size;
+
+    public FitnessCache(int capacity) {
+        if (Integer.bitCount(capacity) != 1 || capacity < WAYS) {
+            throw new IllegalArgumentException("Capacity should be a power of two of at least " + WAYS + ": " + capacity);
+        }
+        this.fingerprints = new long[capacity];
+        this.scores = new float[capacity];
+        this.referenced = new boolean[capacity];
+        this.hands = new byte[capacity / WAYS];
+        this.setMask = capacity / WAYS - 1;
+        this.locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.size = new LongAdder();
+    }
+
+    // Separates the plugboards of different rotor settings
+    public static long namespace(Rotor[] rotors) {
+        long namespace = 0;
+        for (Rotor rotor : rotors) {
+            namespace = namespace * 31 + rotor.getRotorConfiguration().ordinal();
+            namespace = namespace * 31 + rotor.getRotorPosition();
+            namespace = namespace * 31 + rotor.getRingSetting();
+        }
+        return namespace;
+    }
+
+    // Score of a fingerprint, NaN if it is not cached
+    public float get(long fingerprint) {
+        int set = set(fingerprint);
+        synchronized (locks[set & (STRIPES - 1)]) {
+            for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+                if (fingerprints[slot] == fingerprint) {
+                    referenced[slot] = true;
+                    hits.increment();
+                    return scores[slot];
+                }
+            }
+        }
+        misses.increment();
+        return Float.NaN;
+    }
+
+    public void put(long fingerprint, float score) {
+        int set = set(fingerprint);
+        synchronized (locks[set & (STRIPES - 1)]) {
+            int first = set * WAYS;
+            for (int slot = first; slot < first + WAYS; slot++) {
+                if (fingerprints[slot] == fingerprint || fingerprints[slot] == 0) {
+                    if (fingerprints[slot] == 0) {
+                        size.increment();
+                    }
+                    fingerprints[slot] = fingerprint;
+                    scores[slot] = score;
+                    return;
+                }
+            }
+            // Every slot of the set is used: CLOCK finds one not referenced since the hand last passed it
+            int hand = hands[set];
+            while (referenced[first + hand]) {
+                referenced[first + hand] = false;
+                hand = (hand + 1) % WAYS;
+            }
+            fingerprints[first + hand] = fingerprint;
+            scores[first + hand] = score;
+            hands[set] = (byte) ((hand + 1) % WAYS);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Fraction of lookups answered by the cache, 0 before the first lookup
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    public int capacity() {
+        return fingerprints.length;
+    }
+
+    private int set(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & setMask;
+    }
+}
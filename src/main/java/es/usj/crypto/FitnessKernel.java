@@ -0,0 +1,102 @@
+package es.usj.crypto;
+
+import es.usj.crypto.fitness.BigramFitness;
+import es.usj.crypto.fitness.QuadramFitness;
+import es.usj.crypto.fitness.SingleCharacterFitness;
+import es.usj.crypto.fitness.TrigramFitness;
+
+/**
+ * Scores decryptions of one ciphertext as {@link Entropy#getFitness(String, boolean)} does, without building
+ * strings.
+ *
+ * The machine keeps non-letters in place, so the words of every decryption have the bounds of the words of the
+ * ciphertext; they are computed once, and each call is a single pass over the normalized decryption (letters 0-25)
+ * that does not allocate. Any non-letter separates words, as any run of blank space does in getFitness. Scores can
+ * be computed concurrently.
+ */
+public class FitnessKernel {
+
+    private final SingleCharacterFitness unigramFitness;
+    private final BigramFitness bigramFitness;
+    private final TrigramFitness trigramFitness;
+    private final QuadramFitness quadramFitness;
+
+    // First position and number of letters of each word of the ciphertext
+    private final int[] wordStarts;
+    private final int[] wordLengths;
+
+    public FitnessKernel(Entropy entropy, byte[] cipherText) {
+        this.unigramFitness = entropy.unigramFitness;
+        this.bigramFitness = entropy.bigramFitness;
+        this.trigramFitness = entropy.trigramFitness;
+        this.quadramFitness = entropy.quadramFitness;
+
+        int words = 0;
+        for (int i = 0; i < cipherText.length; i++) {
+            if (cipherText[i] >= 0 && (i == 0 || cipherText[i - 1] < 0)) {
+                words++;
+            }
+        }
+        this.wordStarts = new int[words];
+        this.wordLengths = new int[words];
+        int word = -1;
+        for (int i = 0; i < cipherText.length; i++) {
+            if (cipherText[i] >= 0) {
+                if (i == 0 || cipherText[i - 1] < 0) {
+                    wordStarts[++word] = i;
+                }
+                wordLengths[word]++;
+            }
+        }
+    }
+
+    public float score(byte[] decryption, boolean rotorsAnalysis) {
+        return rotorsAnalysis ? scoreRotors(decryption) : scoreWords(decryption);
+    }
+
+    // Unigrams for single letters and bigrams for any other word
+    private float scoreRotors(byte[] text) {
+        float fitness = 0.0f;
+        for (int w = 0; w < wordStarts.length; w++) {
+            int start = wordStarts[w];
+            int length = wordLengths[w];
+            float score = 0.0f;
+            if (length == 1) {
+                score = unigramFitness.score(text[start]);
+            } else {
+                for (int i = start + 1; i < start + length; i++) {
+                    score += bigramFitness.score(text[i - 1], text[i]);
+                }
+            }
+            fitness += score;
+        }
+        return fitness;
+    }
+
+    // N-grams of the word length, up to quadgrams
+    private float scoreWords(byte[] text) {
+        float fitness = 0.0f;
+        for (int w = 0; w < wordStarts.length; w++) {
+            int start = wordStarts[w];
+            int length = wordLengths[w];
+            float score = 0.0f;
+            switch (length) {
+                case 1:
+                    score = unigramFitness.score(text[start]);
+                    break;
+                case 2:
+                    score = bigramFitness.score(text[start], text[start + 1]);
+                    break;
+                case 3:
+                    score = trigramFitness.score(text[start], text[start + 1], text[start + 2]);
+                    break;
+                default:
+                    for (int i = start + 3; i < start + length; i++) {
+                        score += quadramFitness.score(text[i - 3], text[i - 2], text[i - 1], text[i]);
+                    }
+            }
+            fitness += score;
+        }
+        return fitness;
+    }
+}
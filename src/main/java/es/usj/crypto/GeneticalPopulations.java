@@ -6,69 +6,107 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-
 import es.usj.crypto.enigma.Rotor;
-import es.usj.crypto.enigma.Machine;
+import es.usj.crypto.enigma.CompiledMachine;
 import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.ScramblerTrace;
 
+/**
+ * Genetic algorithm over the plugboards of one rotor setting.
+ *
+ * By default the whole population is scored in parallel, and the top 5% is kept and bred every generation. Scores
+ * go through a {@link FitnessCache}, so survivors and offspring that repeat a plugboard scored before are looked up
+ * instead of scored again; a generation never holds the same plugboard twice. With more than
+ * one island, the population is split into islands that evolve independently, each one on its own thread of a pool
+ * owned by the search, with its own random generator, so there is no barrier between generations and no island
+ * waits for a worker of a shared pool. Every
+ * {@link #MIGRATION_INTERVAL} generations each island posts its best individuals to the next island of a ring
+ * through a lock-free slot, and takes the ones posted to it as extra parents. Islands check stop() and snapshot
+ * requests themselves between two of their generations; a snapshot is captured once every island has posted its
+ * population for the request.
+ */
 public class GeneticalPopulations implements EnigmaHeuristic {
 
     private static final int MAX_GENERATIONS = 100000;
+    private static final int BATCH_SIZE = 8 * BatchEvaluator.BLOCK;
+    private static final int MIGRATION_INTERVAL = 10;
+    private static final int MIGRANTS = 16;
+    private static final int CACHE_CAPACITY = 1 << 17;
 
     Entropy entropy;
-    List<String> population;
-    Set<String> usedPlugboards;
+    List<PlugboardWiring> population;
     private Rotor[] rotors;
     private String encryptedMessage;
-    private Machine bestMachine;
-    private String bestPlugboard;
-    private float bestFitness = Float.NEGATIVE_INFINITY;
+    private ScramblerTrace scramblerTrace;
+    private BatchEvaluator evaluator;
+    private FitnessCache fitnessCache;
+    private long cacheNamespace;
+    private ResultSink resultSink;
+    private SearchMetrics metrics;
+    private CompiledMachine machine;
+    private CompiledMachine bestMachine;
+    private PlugboardWiring bestPlugboard;
+    private volatile float bestFitness = Float.NEGATIVE_INFINITY;
     private String bestDecryptedMessage;
     private long generation;
+    private int islandCount;
+    private List<Island> islands;
+    // Migrants posted to each island, taken all at once by the island
+    private AtomicReferenceArray<List<PlugboardWiring>> migrations;
+    private final LongAdder migrated = new LongAdder();
+    private volatile boolean stopped;
+    private volatile boolean snapshotRequested;
+    // Snapshot requests so far, answered by each island on its own
+    private final AtomicLong snapshotRequests = new AtomicLong();
+    private volatile SearchCheckpoint.State snapshot;
 
-    public GeneticalPopulations(List<String> population, Rotor[] rotors, String encryptedMessage) {
+    public GeneticalPopulations(List<PlugboardWiring> population, Rotor[] rotors, String encryptedMessage) {
         this.entropy = new Entropy();
         this.population = population;
-        this.usedPlugboards = new HashSet<String>(population);
         this.generation = 1;
+        this.islandCount = 1;
         this.rotors = rotors;
         this.encryptedMessage = encryptedMessage;
+        this.machine = new CompiledMachine(new Plugboard(PlugboardWiring.EMPTY), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+        this.scramblerTrace = machine.trace(CompiledMachine.normalize(encryptedMessage));
+        this.evaluator = new BatchEvaluator(entropy, scramblerTrace);
+        this.fitnessCache = new FitnessCache(GeneticalPopulations.CACHE_CAPACITY);
+        this.cacheNamespace = FitnessCache.namespace(rotors);
+        this.resultSink = ResultSink.DISCARD;
+        this.metrics = SearchMetrics.get();
     }
 
-    private List<String> selectBestIndividuals() {
-        List<CompletableFuture<Pair<String, Float>>> futures = population.stream()
-            .map(plugboard -> CompletableFuture.supplyAsync(() -> {
-                Machine enigmaMachine = new Machine(new Plugboard(plugboard), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
-                float fitness = entropy.getMachineFitness(enigmaMachine, encryptedMessage);
-                
-                synchronized (this) {
-                    if (fitness > bestFitness) {
-                        bestMachine = enigmaMachine;
-                        bestPlugboard = plugboard;
-                        bestFitness = fitness;
-                        bestDecryptedMessage = enigmaMachine.getCipheredText(encryptedMessage);
-                        System.out.println("New best machine found:");
-                        System.out.println("Plugboard: " + bestPlugboard);
-                        System.out.println("Score (Fitness): " + bestFitness);
-                        System.out.println("Decypted Message: " + bestDecryptedMessage);
-                        
-                        // Write to the file best.txt
-                        writeBestToFile();
-                    }
-                }
-                return new Pair<>(plugboard, fitness);
-            }))
-            .collect(Collectors.toList());
+    private List<PlugboardWiring> selectBestIndividuals() {
+        // Score the population in batches of plugboards
+        float[] scores = new float[population.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int from = 0; from < population.size(); from += GeneticalPopulations.BATCH_SIZE) {
+            final int first = from;
+            final int last = Math.min(from + GeneticalPopulations.BATCH_SIZE, population.size());
+            futures.add(CompletableFuture.runAsync(() -> score(population, first, last, scores)));
+        }
 
         // Wait for all futures to complete
-        List<Pair<String, Float>> results = futures.stream()
-            .map(CompletableFuture::join)
-            .collect(Collectors.toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        List<Pair<PlugboardWiring, Float>> results = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            PlugboardWiring plugboard = population.get(i);
+            float fitness = scores[i];
+            if (fitness > bestFitness) {
+                offerBest(plugboard, fitness);
+            }
+            results.add(new Pair<>(plugboard, fitness));
+        }
 
         // Sort the results by fitness in descending order
         results.sort((p1, p2) -> Float.compare(p2.getSecond(), p1.getSecond()));
@@ -79,100 +117,112 @@ public class GeneticalPopulations implements EnigmaHeuristic {
             .distinct() // Ensure not duplicates
             .collect(Collectors.toList());
     }
-     
 
-    private String crossover(String parent1, String parent2) {
-        Random random = new Random();
-        Set<Character> usedChars = new HashSet<>();
-        StringBuilder offspring = new StringBuilder();
+    // Scores plugboards [from, to) into the same positions of scores, only scoring the ones not in the cache
+    private void score(List<PlugboardWiring> plugboards, int from, int to, float[] scores) {
+        List<PlugboardWiring> missing = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            float score = fitnessCache.get(PlugboardStore.fingerprint(plugboards.get(i), cacheNamespace));
+            if (Float.isNaN(score)) {
+                missing.add(plugboards.get(i));
+                positions.add(i);
+            } else {
+                scores[i] = score;
+            }
+        }
+        float[] missingScores = evaluator.score(missing);
+        for (int i = 0; i < missingScores.length; i++) {
+            scores[positions.get(i)] = missingScores[i];
+            fitnessCache.put(PlugboardStore.fingerprint(missing.get(i), cacheNamespace), missingScores[i]);
+        }
+        metrics.plugboardsEvaluated(missingScores.length);
+    }
+
+    // Only improvements take the lock, after the unlocked check of the callers
+    private synchronized void offerBest(PlugboardWiring plugboard, float fitness) {
+        if (fitness > bestFitness) {
+            CompiledMachine enigmaMachine = machine.withPlugboard(plugboard);
+            bestMachine = enigmaMachine;
+            bestPlugboard = plugboard;
+            bestFitness = fitness;
+            bestDecryptedMessage = enigmaMachine.getCipheredText(encryptedMessage);
+            metrics.improvement(bestFitness);
+            resultSink.submit(ResultSink.searchName(rotors), bestFitness, bestPlugboard.toString(), bestDecryptedMessage);
+        }
+    }
+
+    private PlugboardWiring crossover(PlugboardWiring parent1, PlugboardWiring parent2, Random random) {
+        PlugboardWiring offspring = PlugboardWiring.EMPTY;
 
         // Cross over the parents
-        String[] pairs1 = parent1.split(":");
-        String[] pairs2 = parent2.split(":");
+        int[] cables1 = parent1.getCables();
+        int[] cables2 = parent2.getCables();
 
-        for (int i = 0; i < pairs1.length; i++) {
-            String pair = random.nextBoolean() ? pairs1[i] : pairs2[i];
-            char first = pair.charAt(0);
-            char second = pair.charAt(1);
+        for (int i = 0; i < Math.min(cables1.length, cables2.length); i++) {
+            PlugboardWiring parent = random.nextBoolean() ? parent1 : parent2;
+            int first = parent == parent1 ? cables1[i] : cables2[i];
+            int second = parent.partner(first);
 
             // Verify that the characters are not repeated
-            if (!usedChars.contains(first) && !usedChars.contains(second)) {
-                if (offspring.length() > 0) {
-                    offspring.append(":");
-                }
-                offspring.append(first).append(second);
-                usedChars.add(first);
-                usedChars.add(second);
+            if (!offspring.isPlugged(first) && !offspring.isPlugged(second)) {
+                offspring = offspring.plug(first, second);
             }
         }
 
         // Ensure the plugboard is completed
-        while (usedChars.size() < 20) {
-            char first = HeuristicDecryptor.ALPHABET.charAt(random.nextInt(HeuristicDecryptor.ALPHABET.length()));
-            char second = HeuristicDecryptor.ALPHABET.charAt(random.nextInt(HeuristicDecryptor.ALPHABET.length()));
-            if (first != second && !usedChars.contains(first) && !usedChars.contains(second)) {
-                if (offspring.length() > 0) {
-                    offspring.append(":");
-                }
-                offspring.append(first).append(second);
-                usedChars.add(first);
-                usedChars.add(second);
+        while (offspring.cables() < 10) {
+            int first = random.nextInt(HeuristicDecryptor.ALPHABET.length());
+            int second = random.nextInt(HeuristicDecryptor.ALPHABET.length());
+            if (first != second && !offspring.isPlugged(first) && !offspring.isPlugged(second)) {
+                offspring = offspring.plug(first, second);
             }
         }
 
-        return offspring.toString();
+        return offspring;
     }
 
-    private String mutate(String individual, double mutationRate) {
-        Random random = new Random();
+    private PlugboardWiring mutate(PlugboardWiring individual, double mutationRate, Random random) {
         if (random.nextDouble() < mutationRate) {
-            // Converts the individual to a list of characters
-            String[] pairs = individual.split(":");
-            List<Character> currentChars = individual.chars()
-                    .filter(c -> c != ':')
-                    .mapToObj(c -> (char) c)
-                    .collect(Collectors.toList());
-
             // Find two new characters that are not in the plugboard
-            char newChar1, newChar2;
+            int newChar1, newChar2;
             do {
-                newChar1 = HeuristicDecryptor.ALPHABET.charAt(random.nextInt(HeuristicDecryptor.ALPHABET.length()));
-            } while (currentChars.contains(newChar1));
+                newChar1 = random.nextInt(HeuristicDecryptor.ALPHABET.length());
+            } while (individual.isPlugged(newChar1));
 
             do {
-                newChar2 = HeuristicDecryptor.ALPHABET.charAt(random.nextInt(HeuristicDecryptor.ALPHABET.length()));
-            } while (newChar1 == newChar2 || currentChars.contains(newChar2));
-
-            // Generate the new pair
-            String newPair = "" + newChar1 + newChar2;
-            int indexToReplace = random.nextInt(pairs.length);
-            pairs[indexToReplace] = newPair;
+                newChar2 = random.nextInt(HeuristicDecryptor.ALPHABET.length());
+            } while (newChar1 == newChar2 || individual.isPlugged(newChar2));
 
-            // Re-build the individual
-            return String.join(":", pairs);
+            // Replace a random pair with the new one
+            int[] cables = individual.getCables();
+            return individual.replace(cables[random.nextInt(cables.length)], newChar1, newChar2);
         }
         return individual;
     }
 
     public void nextGeneration() {
         // Select the best individuals
-        List<String> selected = selectBestIndividuals();
+        List<PlugboardWiring> selected = selectBestIndividuals();
     
         // Define an elite percentage
         int eliteSize = (int) (population.size() * 0.05);  // 5% of population
-        List<String> elite = selected.subList(0, eliteSize);  // Elige el top 5% como élite
+        List<PlugboardWiring> elite = selected.subList(0, eliteSize);  // Elige el top 5% como élite
         
         // Create the new generation applying crossover and mutation
-        List<String> newPopulation = new ArrayList<>();  // Add the elite without changes
+        List<PlugboardWiring> newPopulation = new ArrayList<>(elite);  // Add the elite without changes
+        Set<Long> keys = new HashSet<Long>();
+        for (PlugboardWiring plugboard : elite) {
+            keys.add(plugboard.key());
+        }
         Random random = new Random();
     
         while (newPopulation.size() < population.size()) {
-            String parent1 = elite.get(random.nextInt(elite.size()));
-            String parent2 = elite.get(random.nextInt(elite.size()));
-            String offspring = crossover(parent1, parent2);
-            offspring = mutate(offspring, 0.5);
-            if(!usedPlugboards.contains(offspring)) {
-                usedPlugboards.add(offspring);
+            PlugboardWiring parent1 = elite.get(random.nextInt(elite.size()));
+            PlugboardWiring parent2 = elite.get(random.nextInt(elite.size()));
+            PlugboardWiring offspring = crossover(parent1, parent2, random);
+            offspring = mutate(offspring, 0.5, random);
+            if(keys.add(offspring.key())) {
                 newPopulation.add(offspring);
             }
         }
@@ -181,38 +231,244 @@ public class GeneticalPopulations implements EnigmaHeuristic {
         this.population = newPopulation;
     }
 
+    // Shares a cache between the searches of several rotor settings
+    public void setFitnessCache(FitnessCache fitnessCache) {
+        this.fitnessCache = fitnessCache;
+    }
+
+    // Number of islands evolved independently, one per thread; 1 evolves a single population
+    public void setIslands(int islands) {
+        this.islandCount = islands;
+    }
+
     public void optimize() {
-        while (this.generation < GeneticalPopulations.MAX_GENERATIONS) {
+        if (islandCount > 1) {
+            optimizeIslands();
+            return;
+        }
+        while (this.generation < GeneticalPopulations.MAX_GENERATIONS && !stopped) {
+            if (snapshotRequested) {
+                captureSnapshot();
+            }
             //System.out.println("Generation: " + generation);
+            long start = System.nanoTime();
             nextGeneration();
+            metrics.generation(System.nanoTime() - start);
             this.generation++;
         }
+        captureSnapshot();
+    }
+
+    private void optimizeIslands() {
+        if (islands == null) {
+            startIslands();
+        }
+        // Islands only return once the search stops, so every island needs a thread of its own
+        ExecutorService executor = Executors.newFixedThreadPool(islands.size(), task -> {
+            Thread thread = new Thread(task, "island");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Island island : islands) {
+                futures.add(CompletableFuture.runAsync(island::evolve, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        this.generation += islands.stream().mapToLong(island -> island.generations).min().orElse(0);
+        captureSnapshot();
+    }
+
+    // Deals the population out to the islands
+    private void startIslands() {
+        islands = new ArrayList<>();
+        migrations = new AtomicReferenceArray<>(islandCount);
+        for (int i = 0; i < islandCount; i++) {
+            islands.add(new Island(i));
+        }
+        for (int i = 0; i < population.size(); i++) {
+            islands.get(i % islandCount).population.add(population.get(i));
+        }
+        population = null;
+    }
+
+    /**
+     * Subpopulation evolved by one thread at a time.
+     */
+    private final class Island {
+        private final int index;
+        private List<PlugboardWiring> population;
+        // Generations evolved by this island, and its population for the last snapshot request it answered
+        private long generations;
+        private long answered;
+        private long snapshotGenerations;
+        private long[] snapshotKeys;
+
+        private Island(int index) {
+            this.index = index;
+            this.population = new ArrayList<>();
+        }
+
+        // Evolves the island until the search stops, answering snapshot requests between two generations
+        private void evolve() {
+            Random random = ThreadLocalRandom.current();
+            generations = 0;
+            while (generation + generations < GeneticalPopulations.MAX_GENERATIONS && !stopped && population.size() > 1) {
+                long request = snapshotRequests.get();
+                if (request != answered) {
+                    postSnapshot(this, request);
+                }
+                long start = System.nanoTime();
+                float[] scores = new float[population.size()];
+                score(population, 0, population.size(), scores);
+
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < scores.length; i++) {
+                    order.add(i);
+                }
+                order.sort((a, b) -> Float.compare(scores[b], scores[a]));
+                if (scores[order.get(0)] > bestFitness) {
+                    offerBest(population.get(order.get(0)), scores[order.get(0)]);
+                }
+
+                List<PlugboardWiring> elite = new ArrayList<>();
+                int eliteSize = Math.max(2, (int) (population.size() * 0.05));
+                for (int i = 0; i < Math.min(eliteSize, order.size()); i++) {
+                    elite.add(population.get(order.get(i)));
+                }
+                // The last generation of each interval sends its best individuals to the next island
+                if (generations % GeneticalPopulations.MIGRATION_INTERVAL == GeneticalPopulations.MIGRATION_INTERVAL - 1) {
+                    migrations.set((index + 1) % islands.size(), new ArrayList<>(elite.subList(0, Math.min(MIGRANTS, elite.size()))));
+                }
+                List<PlugboardWiring> migrants = migrations.getAndSet(index, null);
+                if (migrants != null) {
+                    migrated.increment();
+                    elite.addAll(migrants);
+                }
+
+                List<PlugboardWiring> newPopulation = new ArrayList<>(elite.subList(0, Math.min(eliteSize, elite.size())));
+                Set<Long> keys = new HashSet<>();
+                for (PlugboardWiring plugboard : newPopulation) {
+                    keys.add(plugboard.key());
+                }
+                while (newPopulation.size() < population.size()) {
+                    PlugboardWiring parent1 = elite.get(random.nextInt(elite.size()));
+                    PlugboardWiring parent2 = elite.get(random.nextInt(elite.size()));
+                    PlugboardWiring offspring = mutate(crossover(parent1, parent2, random), 0.5, random);
+                    if (keys.add(offspring.key())) {
+                        newPopulation.add(offspring);
+                    }
+                }
+                this.population = newPopulation;
+                generations++;
+                metrics.generation(System.nanoTime() - start);
+            }
+            // A finished island answers the later requests with its last population
+            postSnapshot(this, Long.MAX_VALUE);
+        }
+    }
+
+    public void stop() {
+        this.stopped = true;
+    }
+
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
+        this.snapshotRequests.incrementAndGet();
+    }
+
+    public SearchCheckpoint.State getSnapshot() {
+        return snapshot;
+    }
+
+    // Migrant lists taken by the islands so far
+    long getMigrations() {
+        return migrated.sum();
+    }
+
+    public void restore(SearchCheckpoint.State state) {
+        this.population = new ArrayList<>();
+        for (long key : state.getPending()) {
+            this.population.add(PlugboardWiring.fromKey(key));
+        }
+        if (state.getBestPlugboard() != null) {
+            this.bestPlugboard = state.getBestPlugboard();
+            this.bestMachine = machine.withPlugboard(bestPlugboard);
+            this.bestFitness = state.getBestFitness();
+            this.bestDecryptedMessage = bestMachine.getCipheredText(encryptedMessage);
+        }
+        this.generation = state.getIterations();
+        this.islands = null;
+        this.snapshot = state;
+    }
+
+    // Called from the thread of an island, between two of its generations; the snapshot of a request is captured by
+    // the last island that answers it, under the same lock as offerBest
+    private synchronized void postSnapshot(Island island, long request) {
+        island.answered = request;
+        island.snapshotGenerations = island.generations;
+        island.snapshotKeys = island.population.stream().mapToLong(PlugboardWiring::key).toArray();
+        long target = Math.min(request, snapshotRequests.get());
+        long generations = Long.MAX_VALUE;
+        int size = 0;
+        for (Island other : islands) {
+            if (other.snapshotKeys == null || other.answered < target) {
+                return;
+            }
+            generations = Math.min(generations, other.snapshotGenerations);
+            size += other.snapshotKeys.length;
+        }
+        long[] pending = new long[size];
+        int i = 0;
+        for (Island other : islands) {
+            System.arraycopy(other.snapshotKeys, 0, pending, i, other.snapshotKeys.length);
+            i += other.snapshotKeys.length;
+        }
+        this.snapshot = new SearchCheckpoint.State(rotors, bestPlugboard, bestFitness, generation + generations, pending);
+    }
+
+    // Called from the optimizing thread, between two generations, or once every island has finished
+    private void captureSnapshot() {
+        this.snapshotRequested = false;
+        List<List<PlugboardWiring>> populations = new ArrayList<>();
+        if (islands == null) {
+            populations.add(population);
+        } else {
+            for (Island island : islands) {
+                populations.add(island.population);
+            }
+        }
+        long[] pending = new long[populations.stream().mapToInt(List::size).sum()];
+        int i = 0;
+        for (List<PlugboardWiring> plugboards : populations) {
+            for (PlugboardWiring plugboard : plugboards) {
+                pending[i++] = plugboard.key();
+            }
+        }
+        this.snapshot = new SearchCheckpoint.State(rotors, bestPlugboard, bestFitness, generation, pending);
     }
 
     public float getBestFitness() {
         return bestFitness;
     }
 
-    public Machine getBestMachine() {
+    public CompiledMachine getBestMachine() {
         return bestMachine;
     }
 
     public String getBestPlugboard() {
-        return bestPlugboard;
+        return bestPlugboard == null ? null : bestPlugboard.toString();
     }
 
     public String getBestDecryptedMessage() {
         return bestDecryptedMessage;
     }
 
-    public void writeBestToFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("best.txt"))) {
-            writer.write("Plugboard: " + bestPlugboard + "\n");
-            writer.write("Score (Fitness): " + bestFitness + "\n");
-            writer.write("Decrypted Message: " + bestDecryptedMessage + "\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public void setResultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
     }
 
 }
\ No newline at end of file
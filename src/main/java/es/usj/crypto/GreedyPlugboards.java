@@ -0,0 +1,117 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.ScramblerTrace;
+import es.usj.crypto.fitness.IoCFitness;
+
+/**
+ * Builds plugboards of a rotor setting cable by cable (Gillogly's method), as seeds for the plugboard searches.
+ *
+ * Starting from a partial plugboard, every cable between two unplugged letters is scored in parallel, each thread
+ * decrypting into buffers of its own, and the best one is kept until 10 cables are placed. The first cables are
+ * chosen by the index of coincidence, which only depends on the letter frequencies and still rises when a few cables
+ * are right; the rest by bigrams, which need the letters around them to be right too. Different seeds start from
+ * different first cables, the best ones by the index of coincidence.
+ */
+public class GreedyPlugboards {
+
+    public static final int IOC_CABLES = 3;
+
+    private static final int SIZE = 26;
+    private static final int CABLES = 10;
+
+    private final ScramblerTrace trace;
+    private final FitnessKernel kernel;
+    private final IoCFitness iocFitness;
+    private final EvaluationScheduler scheduler;
+    private final ThreadLocal<Buffers> buffers;
+    private int iocCables;
+
+    public GreedyPlugboards(Rotor[] rotors, String encryptedMessage, Entropy entropy, EvaluationScheduler scheduler) {
+        byte[] text = CompiledMachine.normalize(encryptedMessage);
+        CompiledMachine machine = new CompiledMachine(new Plugboard(PlugboardWiring.EMPTY), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+        this.trace = machine.trace(text);
+        this.kernel = new FitnessKernel(entropy, text);
+        this.iocFitness = new IoCFitness();
+        this.scheduler = scheduler;
+        this.buffers = ThreadLocal.withInitial(() -> new Buffers(text.length));
+        this.iocCables = GreedyPlugboards.IOC_CABLES;
+    }
+
+    // Number of cables chosen by the index of coincidence before switching to bigrams
+    public void setIocCables(int iocCables) {
+        this.iocCables = iocCables;
+    }
+
+    // Distinct plugboards completed from the best first cables, at most count of them
+    public List<PlugboardWiring> seeds(int count) {
+        List<PlugboardWiring> firstCables = additions(PlugboardWiring.EMPTY);
+        float[] scores = scheduler.scores(firstCables, candidate -> score(candidate, true));
+        TopRanking ranking = new TopRanking(count);
+        for (int i = 0; i < firstCables.size(); i++) {
+            ranking.offer(i, scores[i]);
+        }
+        Set<PlugboardWiring> seeds = new LinkedHashSet<>();
+        for (long i : ranking.getKeys()) {
+            seeds.add(complete(firstCables.get((int) i)));
+        }
+        return new ArrayList<>(seeds);
+    }
+
+    // Adds the best cable until the plugboard has 10
+    public PlugboardWiring complete(PlugboardWiring plugboard) {
+        while (plugboard.cables() < GreedyPlugboards.CABLES) {
+            final boolean ioc = plugboard.cables() < this.iocCables;
+            plugboard = scheduler.best(additions(plugboard), candidate -> score(candidate, ioc)).getFirst();
+        }
+        return plugboard;
+    }
+
+    // Every plugboard with one more cable between two unplugged letters
+    private static List<PlugboardWiring> additions(PlugboardWiring plugboard) {
+        List<PlugboardWiring> additions = new ArrayList<>();
+        for (int first = 0; first < SIZE; first++) {
+            for (int second = first + 1; second < SIZE; second++) {
+                if (!plugboard.isPlugged(first) && !plugboard.isPlugged(second)) {
+                    additions.add(plugboard.plug(first, second));
+                }
+            }
+        }
+        return additions;
+    }
+
+    private float score(PlugboardWiring plugboard, boolean ioc) {
+        Buffers buffers = this.buffers.get();
+        byte[] decrypted = buffers.decrypted;
+        trace.decrypt(plugboard.getMapping(), decrypted);
+        if (!ioc) {
+            return kernel.score(decrypted, true);
+        }
+        int[] counts = buffers.counts;
+        Arrays.fill(counts, 0);
+        for (byte c : decrypted) {
+            if (c >= 0) {
+                counts[c]++;
+            }
+        }
+        return iocFitness.score(counts);
+    }
+
+    private static final class Buffers {
+        private final byte[] decrypted;
+        private final int[] counts = new int[SIZE];
+
+        private Buffers(int length) {
+            this.decrypted = new byte[length];
+        }
+    }
+}
@@ -2,183 +2,610 @@ package es.usj.crypto;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 
 import es.usj.crypto.enigma.*;
 import es.usj.crypto.enigma.constant.ReflectorConfiguration;
-import es.usj.crypto.enigma.constant.RotorConfiguration;
+import es.usj.crypto.fitness.IoCFitness;
 
 public class HeuristicDecryptor {
 
     public static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
     public static final Reflector REFLECTOR = new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT);
+    private static final Plugboard NO_PLUGBOARD = new Plugboard("");
 
     public static final String HILLCLIMB_ALGORITHM = "HillClimbing";
     public static final String GENETICAL_ALGORITHM = "Genetical";
+    public static final String ANNEALING_ALGORITHM = "SimulatedAnnealing";
+    public static final String ISLAND_GENETICAL_ALGORITHM = "IslandGenetical";
 
     private static final int ROTOR_LEFT = 0;
     private static final int ROTOR_MIDDLE = 1;
     private static final int ROTOR_RIGHT = 2;
     
     private static final int TESTED_PLUGBOARDS = 100000;
+    private static final int BEST_ROTORS = 20;
+    private static final int CRIB_OFFSETS = 4;
+    // Rotor settings kept by the index of coincidence screen and by the bigram re-ranking
+    private static final int IOC_ROTORS = 20000;
+    private static final int BIGRAM_ROTORS = 1000;
+    // Plugboards built cable by cable for each rotor candidate, in place of random ones
+    private static final int GREEDY_SEEDS = 64;
+    // Survivors re-ranked by each task
+    private static final int RERANK_BATCH = 256;
+    // Bound of the n-gram score per letter of a decryption, as the floor of the n-gram tables is above -10
+    private static final float CRIB_TIE_RANGE = 10f;
+    private static final Duration SEARCH_BUDGET = Duration.ofMinutes(20);
+
+    private static final String PLUGBOARD_STORE = "plugboards.store";
+    private static final String PLUGBOARDS_FILE = "plugboards.txt";
+    // Namespace of the random initial plugboards, shared by every search
+    private static final long GENERATED_PLUGBOARDS = 0;
+
+    private static final String CHECKPOINT_FILE = "search.checkpoint";
+    private static final Duration CHECKPOINT_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String RESULTS_LOG = "best.jsonl";
+    private static final String RESULTS_SUMMARY = "best.txt";
+    private static final Duration SUMMARY_INTERVAL = Duration.ofSeconds(10);
 
     private String encryptedMessage; // Mensaje cifrado
-    private List<Rotor[]> rotorConfigurations;
     private List<Rotor[]> bestRotorConfigurations;
+    private int bestRotorsToKeep;
+    private int iocRotorsToKeep;
+    private int bigramRotorsToKeep;
+    private int evaluationThreads;
+    private EvaluationScheduler scheduler;
+    private Duration searchBudget;
     private Entropy machineEntropy;
-    private static Set<String> testedPlugboards = HeuristicDecryptor.readGeneratedPlugboards();
     private int pluboardsToTest;
     private String usedAlgorithm;
+    private Path checkpointFile;
+    private Duration checkpointInterval;
+    private boolean resume;
+    private Duration summaryInterval;
+    private String[] cribs;
+    private int[] cribOffsets;
+    private String[] draggedCribs;
+    private int cribOffsetsToTest;
+    private int greedySeeds;
 
     public HeuristicDecryptor(String encryptedMessage, String algorithm) {
         this.encryptedMessage = encryptedMessage;
-        this.rotorConfigurations = new ArrayList<>();
         this.machineEntropy = new Entropy();
+        this.bestRotorsToKeep = HeuristicDecryptor.BEST_ROTORS;
+        this.iocRotorsToKeep = HeuristicDecryptor.IOC_ROTORS;
+        this.bigramRotorsToKeep = HeuristicDecryptor.BIGRAM_ROTORS;
+        this.searchBudget = HeuristicDecryptor.SEARCH_BUDGET;
         this.pluboardsToTest = HeuristicDecryptor.TESTED_PLUGBOARDS;
         this.usedAlgorithm = algorithm;
+        this.checkpointFile = Paths.get(HeuristicDecryptor.CHECKPOINT_FILE);
+        this.checkpointInterval = HeuristicDecryptor.CHECKPOINT_INTERVAL;
+        this.summaryInterval = HeuristicDecryptor.SUMMARY_INTERVAL;
+        this.cribOffsetsToTest = HeuristicDecryptor.CRIB_OFFSETS;
+        this.greedySeeds = HeuristicDecryptor.GREEDY_SEEDS;
     }
 
     public HeuristicDecryptor(String encryptedMessage, int pluboardsToTest, String algorithm) {
         this.encryptedMessage = encryptedMessage;
-        this.rotorConfigurations = new ArrayList<>();
         this.machineEntropy = new Entropy();
+        this.bestRotorsToKeep = HeuristicDecryptor.BEST_ROTORS;
+        this.iocRotorsToKeep = HeuristicDecryptor.IOC_ROTORS;
+        this.bigramRotorsToKeep = HeuristicDecryptor.BIGRAM_ROTORS;
+        this.searchBudget = HeuristicDecryptor.SEARCH_BUDGET;
         this.pluboardsToTest = pluboardsToTest;
         this.usedAlgorithm = algorithm;
+        this.checkpointFile = Paths.get(HeuristicDecryptor.CHECKPOINT_FILE);
+        this.checkpointInterval = HeuristicDecryptor.CHECKPOINT_INTERVAL;
+        this.summaryInterval = HeuristicDecryptor.SUMMARY_INTERVAL;
+        this.cribOffsetsToTest = HeuristicDecryptor.CRIB_OFFSETS;
+        this.greedySeeds = HeuristicDecryptor.GREEDY_SEEDS;
     }
 
-    public void decrypt() {
-        createRotorsCombinations();
-        bestRotorConfigurations = chooseBestRotors(encryptedMessage, rotorConfigurations);
+    public void setBestRotorsToKeep(int bestRotorsToKeep) {
+        this.bestRotorsToKeep = bestRotorsToKeep;
+    }
 
-        List<String> initialPlugboards = generateRandomPlugboards(this.pluboardsToTest);
-        HeuristicDecryptor.writeGeneratedPlugboards(initialPlugboards);
+    // Widths of the first two stages of the rotor ranking, the last one keeping the best rotors
+    public void setRotorStages(int iocRotorsToKeep, int bigramRotorsToKeep) {
+        this.iocRotorsToKeep = iocRotorsToKeep;
+        this.bigramRotorsToKeep = bigramRotorsToKeep;
+    }
 
-        final EnigmaHeuristic enigmaHeuristic;
+    // Number of threads reserved for evaluating plugboards, instead of the common pool, 0 to use the common pool
+    public void setEvaluationThreads(int threads) {
+        this.evaluationThreads = threads;
+    }
 
-        if (this.usedAlgorithm.equals(HeuristicDecryptor.HILLCLIMB_ALGORITHM)) {
-            enigmaHeuristic = new HillClimbing(bestRotorConfigurations.get(0), initialPlugboards, encryptedMessage);
+    // Wall-clock time shared by the plugboard searches of all the rotor candidates
+    public void setSearchBudget(Duration searchBudget) {
+        this.searchBudget = searchBudget;
+    }
+
+    // File where the state of the plugboard searches is written every interval
+    public void setCheckpoint(Path checkpointFile, Duration checkpointInterval) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    // Continues the searches of the checkpoint file, if it belongs to the same ciphertext and algorithm
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    // How often best.txt is rewritten with the best result of every search
+    public void setSummaryInterval(Duration summaryInterval) {
+        this.summaryInterval = summaryInterval;
+    }
+
+    // Phrases known to be at character offsets of the message, which replace the n-gram ranking of the rotors by a
+    // bombe each
+    public void setCribs(String[] cribs, int[] cribOffsets) {
+        this.cribs = cribs;
+        this.cribOffsets = cribOffsets;
+    }
+
+    // Phrases known to be somewhere in the message, whose best offsets are checked by a bombe each
+    public void setDraggedCribs(String... draggedCribs) {
+        this.draggedCribs = draggedCribs;
+    }
+
+    // Number of dragged crib offsets, by strength of their menus, that are checked by a bombe
+    public void setCribOffsetsToTest(int cribOffsetsToTest) {
+        this.cribOffsetsToTest = cribOffsetsToTest;
+    }
+
+    // Plugboards built cable by cable that start the search of each rotor candidate, 0 to start from random ones only
+    public void setGreedySeeds(int greedySeeds) {
+        this.greedySeeds = greedySeeds;
+    }
+
+    public void decrypt() {
+        final SearchMetrics metrics = SearchMetrics.get();
+        metrics.resetBestFitness();
+
+        final PlugboardStore plugboardStore;
+        try {
+            plugboardStore = HeuristicDecryptor.openPlugboardStore();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        final SearchCheckpoint checkpoint = this.resume ? readCheckpoint() : null;
+        final List<PlugboardWiring> initialPlugboards;
+        // Stops of the bombe by rotor setting, whose cables seed the plugboard searches
+        final Map<String, Bombe.Stop> cribStops = new LinkedHashMap<>();
+        if (checkpoint != null) {
+            // The rotor candidates and the plugboards to explore come from the checkpoint
+            bestRotorConfigurations = checkpoint.getRotors();
+            initialPlugboards = new ArrayList<>();
+        } else if (this.cribs != null || this.draggedCribs != null) {
+            final List<Bombe> bombes = metrics.phase("cribs", this::cribBombes);
+            metrics.phase("bombe", () -> {
+                for (Bombe.Stop stop : chooseCribStops(encryptedMessage, bombes)) {
+                    cribStops.put(ResultSink.searchName(stop.getRotors()), stop);
+                }
+            });
+            if (cribStops.isEmpty()) {
+                System.out.println("No rotor setting keeps the cribs");
+                try {
+                    plugboardStore.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            bestRotorConfigurations = new ArrayList<>();
+            for (Bombe.Stop stop : cribStops.values()) {
+                bestRotorConfigurations.add(stop.getRotors());
+            }
+            initialPlugboards = new ArrayList<>();
         } else {
-            enigmaHeuristic = new GeneticalPopulations(initialPlugboards, bestRotorConfigurations.get(0), encryptedMessage);
+            bestRotorConfigurations = metrics.phase("rotors", () -> chooseBestRotors(encryptedMessage));
+            bestRotorConfigurations = metrics.phase("rings", () -> chooseBestRings(encryptedMessage, bestRotorConfigurations));
+            initialPlugboards = metrics.phase("plugboards", () -> generateRandomPlugboards(plugboardStore, this.pluboardsToTest));
         }
 
-        enigmaHeuristic.optimize();
+        // Improvements are written by a single thread, so the searches never wait for the disk
+        final ResultSink resultSink = new ResultSink(Paths.get(RESULTS_LOG), Paths.get(RESULTS_SUMMARY), this.summaryInterval);
+        metrics.queue("results", resultSink::getQueueDepth);
+        // Scores of the genetic searches, keyed by plugboard and rotor setting, in a fixed amount of memory
+        final FitnessCache fitnessCache = new FitnessCache(FitnessCache.DEFAULT_CAPACITY);
+        metrics.fitnessCache(fitnessCache);
 
-        System.out.println("Best Plugboard: " + enigmaHeuristic.getBestPlugboard());
-        System.out.println("Best Fitness: " + enigmaHeuristic.getBestFitness());
-        System.out.println("Best Decrypted Message: " + enigmaHeuristic.getBestDecryptedMessage());
-    
-        // Add a ShutdownHook for capturing Ctrl+C
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        // The dedicated pool of the plugboard evaluations lives until the searches end
+        this.scheduler = this.evaluationThreads > 0 ? new EvaluationScheduler(this.evaluationThreads) : new EvaluationScheduler();
+        metrics.queue("evaluation", scheduler::getQueuedTasks);
+
+        // Search the plugboard of every rotor candidate, since the ranking without plugboard is noisy
+        final int seedsPerStop = Math.max(1, this.pluboardsToTest / Math.max(1, cribStops.size()));
+        final MultiStartSearch search = new MultiStartSearch(bestRotorConfigurations, rotors -> {
+            Bombe.Stop stop = cribStops.get(ResultSink.searchName(rotors));
+            List<PlugboardWiring> plugboards = stop != null ? completePlugboards(stop, seedsPerStop) : new ArrayList<>(initialPlugboards);
+            if (checkpoint == null && this.greedySeeds > 0) {
+                plugboards = seedPlugboards(rotors, stop, plugboards);
+            }
+            EnigmaHeuristic heuristic;
+            if (this.usedAlgorithm.equals(HeuristicDecryptor.HILLCLIMB_ALGORITHM)) {
+                heuristic = new HillClimbing(rotors, plugboards, encryptedMessage, scheduler);
+            } else if (this.usedAlgorithm.equals(HeuristicDecryptor.ANNEALING_ALGORITHM)) {
+                // Every search anneals at once, so each one runs its share of the pool as chains
+                heuristic = new SimulatedAnnealing(rotors, plugboards, encryptedMessage, scheduler,
+                        scheduler.share(bestRotorConfigurations.size()));
+            } else if (this.usedAlgorithm.equals(HeuristicDecryptor.ISLAND_GENETICAL_ALGORITHM)) {
+                GeneticalPopulations genetical = new GeneticalPopulations(plugboards, rotors, encryptedMessage);
+                // Each search evolves its share of the pool as islands, at least two so that they migrate
+                genetical.setIslands(Math.max(2, scheduler.share(bestRotorConfigurations.size())));
+                genetical.setFitnessCache(fitnessCache);
+                heuristic = genetical;
+            } else {
+                GeneticalPopulations genetical = new GeneticalPopulations(plugboards, rotors, encryptedMessage);
+                genetical.setFitnessCache(fitnessCache);
+                heuristic = genetical;
+            }
+            heuristic.setResultSink(resultSink);
+            return heuristic;
+        }, this.searchBudget);
+        search.setCheckpoint(this.checkpointFile, checkpointTag(), this.checkpointInterval);
+        if (checkpoint != null) {
+            search.resume(checkpoint);
+        }
+
+        // Add a ShutdownHook for capturing Ctrl+C, which stops the searches so that their last state is written
+        Thread shutdownHook = new Thread(() -> {
+            search.interrupt(HeuristicDecryptor.SHUTDOWN_TIMEOUT);
+            resultSink.close();
+            EnigmaHeuristic best = search.getBest();
+            if (best != null) {
+                System.out.println("Best Plugboard: " + best.getBestPlugboard());
+                System.out.println("Best Fitness: " + best.getBestFitness());
+                System.out.println("Best Decrypted Message: " + best.getBestDecryptedMessage());
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        final EnigmaHeuristic enigmaHeuristic;
+        try {
+            enigmaHeuristic = metrics.phase("search", search::run);
+        } finally {
+            scheduler.shutdown();
+        }
+        resultSink.close();
+
+        // After Ctrl+C the hook prints the best result, otherwise it is printed here and the hook is no longer needed
+        boolean interrupted = false;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            interrupted = true;
+        }
+        if (!interrupted && enigmaHeuristic != null) {
+            System.out.println("Best Rotors: " + Arrays.toString(search.getBestRotors()));
             System.out.println("Best Plugboard: " + enigmaHeuristic.getBestPlugboard());
             System.out.println("Best Fitness: " + enigmaHeuristic.getBestFitness());
             System.out.println("Best Decrypted Message: " + enigmaHeuristic.getBestDecryptedMessage());
-        }));
-    
+        }
+
+        // Keep the best plugboard and score of this rotor setting and ciphertext
+        if (enigmaHeuristic != null && enigmaHeuristic.getBestPlugboard() != null) {
+            long namespace = HeuristicDecryptor.searchNamespace(search.getBestRotors(), encryptedMessage);
+            PlugboardWiring bestPlugboard = PlugboardWiring.parse(enigmaHeuristic.getBestPlugboard());
+            plugboardStore.record(PlugboardStore.fingerprint(bestPlugboard, namespace), enigmaHeuristic.getBestFitness());
+        }
+        try {
+            plugboardStore.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    public void createRotorsCombinations() {
-        List<String> combinations = new ArrayList<>();
-        char[] positions = ALPHABET.toCharArray();
-        int[] rotorTypes = {1, 2, 3, 4, 5};
-
-        for (int leftRotor : rotorTypes) {
-            for (int middleRotor : rotorTypes) {
-                for (int rightRotor : rotorTypes) {
-                    // Asegurarse de que los rotores sean diferentes
-                    if (leftRotor != middleRotor && middleRotor != rightRotor && leftRotor != rightRotor) {
-                        for (char leftPosition : positions) {
-                            for (char middlePosition : positions) {
-                                for (char rightPosition : positions) {
-                                    String combination = String.format("L%d-%c M%d-%c R%d-%c",
-                                            leftRotor, leftPosition,
-                                            middleRotor, middlePosition,
-                                            rightRotor, rightPosition);
-                                    combinations.add(combination);
-                                }
-                            }
-                        }
-                    }
-                }
+    private SearchCheckpoint readCheckpoint() {
+        if (!Files.exists(this.checkpointFile)) {
+            System.out.println("No checkpoint to resume in " + this.checkpointFile);
+            return null;
+        }
+        try {
+            SearchCheckpoint checkpoint = SearchCheckpoint.read(this.checkpointFile);
+            if (checkpoint.getTag() != checkpointTag()) {
+                System.out.println("Checkpoint " + this.checkpointFile + " belongs to another ciphertext or algorithm");
+                return null;
             }
+            System.out.println("Resuming " + checkpoint.getStates().size() + " searches after " +
+                    Duration.ofNanos(checkpoint.getElapsedNanos()).getSeconds() + " s");
+            return checkpoint;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-        parseRotorCombinations(combinations);
-        System.out.println("Rotors Combinations Generated: " + this.rotorConfigurations.size());
     }
 
-    private void parseRotorCombinations(List<String> combinations) {
-        for (String combination : combinations) {
-            String[] parts = combination.split(" ");
-            Rotor leftRotor = createRotor(parts[HeuristicDecryptor.ROTOR_LEFT]);
-            Rotor middleRotor = createRotor(parts[HeuristicDecryptor.ROTOR_MIDDLE]);
-            Rotor rightRotor = createRotor(parts[HeuristicDecryptor.ROTOR_RIGHT]);
+    // Identifies the searches of this ciphertext and algorithm in a checkpoint
+    private long checkpointTag() {
+        return (long) this.usedAlgorithm.hashCode() << 32 | (encryptedMessage.hashCode() & 0xFFFFFFFFL);
+    }
+
+    public List<Rotor[]> chooseBestRotors(String encryptedText) {
+        byte[] normalizedText = CompiledMachine.normalize(encryptedText);
+        FitnessKernel kernel = new FitnessKernel(machineEntropy, normalizedText);
+        SearchMetrics metrics = SearchMetrics.get();
 
-            this.rotorConfigurations.add(new Rotor[]{leftRotor, middleRotor, rightRotor});
+        // Every setting is screened by the index of coincidence, which only needs the letter counts of its decryption
+        long[] screened = metrics.phase("rotors.ioc", () -> screenRotors(normalizedText, this.iocRotorsToKeep));
+        // The survivors are ranked again by bigrams, and the best of them by n-grams up to quadgrams
+        long[] reranked = metrics.phase("rotors.bigrams", () -> rerankRotors(normalizedText, kernel, screened, this.bigramRotorsToKeep, true));
+        long[] survivors = metrics.phase("rotors.quadgrams", () -> rerankRotors(normalizedText, kernel, reranked, this.bestRotorsToKeep, false));
+
+        // Only the kept settings are built as rotors
+        List<Rotor[]> bestRotors = new ArrayList<>();
+        for (long index : survivors) {
+            bestRotors.add(RotorSettings.getRotors((int) index));
         }
+        System.out.println("Rotors Combinations Evaluated: " + RotorSettings.COUNT);
+        return bestRotors;
     }
 
-    private static Rotor createRotor(String rotorString) {
-        String[] parts = rotorString.split("-");
-        int type = Integer.parseInt(parts[0].substring(1));
-        char position = parts[1].charAt(0);
+    private long[] screenRotors(byte[] normalizedText, int width) {
+        IoCFitness iocFitness = new IoCFitness();
+        TopRanking ranking = new TopRanking(width);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
 
-        // Here we are using the RotorConfiguration enum to get the rotor configuration
-        RotorConfiguration rotorConfiguration = RotorConfiguration.getRotorConfiguration(type);
-        return new Rotor(rotorConfiguration, position);
+        // Each task ranks the positions of one rotor order in its own heap, merged into the global one at the end
+        for (int start = 0; start < RotorSettings.COUNT; start += RotorSettings.POSITIONS) {
+            final int first = start;
+            futures.add(CompletableFuture.runAsync(() -> {
+                TopRanking workerRanking = new TopRanking(width);
+                int[] counts = new int[ALPHABET.length()];
+                CompiledMachine machine = rotorMachine(first);
+                // Every position of the rotor order is ciphered, so the scrambler of every rotor state is computed once
+                ScramblerTable table = machine.scramblerTable();
+                for (int index = first; index < first + RotorSettings.POSITIONS; index++) {
+                    machine.withPositions(
+                        RotorSettings.getLeftPosition(index),
+                        RotorSettings.getMiddlePosition(index),
+                        RotorSettings.getRightPosition(index)
+                    ).countLetters(normalizedText, counts, table);
+                    workerRanking.offer(index, iocFitness.score(counts));
+                }
+                ranking.merge(workerRanking);
+                SearchMetrics.get().rotorSettingsRanked(RotorSettings.POSITIONS);
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return ranking.getKeys();
     }
 
-    public List<Rotor[]> chooseBestRotors(String encryptedText, List<Rotor[]> rotorConfigurations) {
-        List<CompletableFuture<Pair<Rotor[], Float>>> futures = new ArrayList<>();
+    // Best settings of a stage by the fitness of their decryptions, sorted by descending fitness
+    private long[] rerankRotors(byte[] normalizedText, FitnessKernel kernel, long[] settings, int width, boolean rotorsAnalysis) {
+        long[] sorted = settings.clone();
+        Arrays.sort(sorted);
+        TopRanking ranking = new TopRanking(width);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
 
-        for (Rotor[] rotors : rotorConfigurations) {
-            futures.add(CompletableFuture.supplyAsync(() -> {
-                String decryptedText = new Machine(
-                    new Plugboard(""),
+        // Sorted settings share rotor orders, so each task compiles few machines
+        for (int start = 0; start < sorted.length; start += HeuristicDecryptor.RERANK_BATCH) {
+            final int first = start;
+            futures.add(CompletableFuture.runAsync(() -> {
+                TopRanking workerRanking = new TopRanking(width);
+                byte[] decrypted = new byte[normalizedText.length];
+                CompiledMachine machine = null;
+                int order = -1;
+                for (int i = first; i < Math.min(first + HeuristicDecryptor.RERANK_BATCH, sorted.length); i++) {
+                    int index = (int) sorted[i];
+                    if (index / RotorSettings.POSITIONS != order) {
+                        order = index / RotorSettings.POSITIONS;
+                        machine = rotorMachine(index);
+                    }
+                    machine.withPositions(
+                        RotorSettings.getLeftPosition(index),
+                        RotorSettings.getMiddlePosition(index),
+                        RotorSettings.getRightPosition(index)
+                    ).encrypt(normalizedText, decrypted);
+                    workerRanking.offer(index, kernel.score(decrypted, rotorsAnalysis));
+                }
+                ranking.merge(workerRanking);
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return ranking.getKeys();
+    }
+
+    // Machine without plugboard of the rotor order of a setting
+    private static CompiledMachine rotorMachine(int index) {
+        Rotor[] rotors = RotorSettings.getRotors(index);
+        return new CompiledMachine(
+            HeuristicDecryptor.NO_PLUGBOARD,
+            rotors[HeuristicDecryptor.ROTOR_LEFT],
+            rotors[HeuristicDecryptor.ROTOR_MIDDLE],
+            rotors[HeuristicDecryptor.ROTOR_RIGHT],
+            HeuristicDecryptor.REFLECTOR
+        );
+    }
+
+    public List<Rotor[]> chooseBestRings(String encryptedText, List<Rotor[]> rotorConfigurations) {
+        byte[] normalizedText = CompiledMachine.normalize(encryptedText);
+        FitnessKernel kernel = new FitnessKernel(machineEntropy, normalizedText);
+        TopRanking ranking = new TopRanking(rotorConfigurations.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        // Each task keeps the best ring settings of one candidate in its own heap, so that the ring settings of a few
+        // strong candidates do not push the other candidates out of the ranking
+        // Rotors [0] and [1] take the right and middle places of the machine, the only ones whose notch matters
+        for (int i = 0; i < rotorConfigurations.size(); i++) {
+            final int index = i;
+            Rotor[] rotors = rotorConfigurations.get(i);
+            futures.add(CompletableFuture.runAsync(() -> {
+                TopRanking workerRanking = new TopRanking(1);
+                CompiledMachine machine = new CompiledMachine(
+                    HeuristicDecryptor.NO_PLUGBOARD,
                     rotors[HeuristicDecryptor.ROTOR_LEFT],
                     rotors[HeuristicDecryptor.ROTOR_MIDDLE],
                     rotors[HeuristicDecryptor.ROTOR_RIGHT],
                     HeuristicDecryptor.REFLECTOR
-                ).getCipheredText(encryptedText);
-                float fitness = machineEntropy.getFitness(decryptedText, true);
-                return new Pair<>(rotors, fitness);
+                );
+                byte[] decrypted = new byte[normalizedText.length];
+                for (char rightRing : ALPHABET.toCharArray()) {
+                    for (char middleRing : ALPHABET.toCharArray()) {
+                        machine.withRingSettings(rightRing, middleRing).encrypt(normalizedText, decrypted);
+                        float fitness = kernel.score(decrypted, true);
+                        workerRanking.offer(((long) index * ALPHABET.length() + (rightRing - 'A')) * ALPHABET.length() + (middleRing - 'A'), fitness);
+                    }
+                    SearchMetrics.get().ringSettingsRanked(ALPHABET.length());
+                }
+                ranking.merge(workerRanking);
             }));
         }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 
-        // Wait for all tasks to complete and collect the results.
-        List<Pair<Rotor[], Float>> rotorFitnessPairs = futures.stream()
-            .map(CompletableFuture::join)
-            .collect(Collectors.toList());
+        // Build the rotors of the best ring settings
+        List<Rotor[]> bestRotors = new ArrayList<>();
+        for (long key : ranking.getKeys()) {
+            char middleRing = ALPHABET.charAt((int) (key % ALPHABET.length()));
+            char rightRing = ALPHABET.charAt((int) (key / ALPHABET.length() % ALPHABET.length()));
+            Rotor[] rotors = rotorConfigurations.get((int) (key / ALPHABET.length() / ALPHABET.length()));
+            bestRotors.add(new Rotor[]{
+                withRingSetting(rotors[HeuristicDecryptor.ROTOR_LEFT], rightRing),
+                withRingSetting(rotors[HeuristicDecryptor.ROTOR_MIDDLE], middleRing),
+                rotors[HeuristicDecryptor.ROTOR_RIGHT]
+            });
+        }
+        System.out.println("Ring Settings Evaluated: " + rotorConfigurations.size() * ALPHABET.length() * ALPHABET.length());
+        return bestRotors;
+    }
 
-        // Sort pairs by fitness in descending order
-        rotorFitnessPairs.sort(Comparator.<Pair<Rotor[], Float>, Float>comparing(Pair::getSecond).reversed());
+    // The cribs at their offsets, and the dragged cribs at their best offsets
+    private List<Bombe> cribBombes() {
+        List<Bombe> bombes = new ArrayList<>();
+        if (this.cribs != null) {
+            for (int i = 0; i < this.cribs.length; i++) {
+                bombes.add(new Bombe(encryptedMessage, this.cribs[i], this.cribOffsets[i]));
+            }
+        }
+        if (this.draggedCribs != null) {
+            CribDragger dragger = new CribDragger(this.cribOffsetsToTest, this.draggedCribs);
+            List<CribDragger.Offset> offsets = dragger.drag(encryptedMessage);
+            System.out.println("Crib Offsets: " + offsets);
+            for (CribDragger.Offset offset : offsets) {
+                bombes.add(new Bombe(encryptedMessage, offset.getCrib(), (int) offset.getOffset()));
+            }
+        }
+        return bombes;
+    }
 
-        // Extract the ordered rotors
-        List<Rotor[]> bestRotors = new ArrayList<>();
-        for (Pair<Rotor[], Float> pair : rotorFitnessPairs) {
-            bestRotors.add(pair.getFirst());
+    public List<Bombe.Stop> chooseCribStops(String encryptedText, List<Bombe> bombes) {
+        byte[] normalizedText = CompiledMachine.normalize(encryptedText);
+        FitnessKernel kernel = new FitnessKernel(machineEntropy, normalizedText);
+        int letters = 0;
+        for (byte c : normalizedText) {
+            letters += c >= 0 ? 1 : 0;
         }
+        final int messageLetters = Math.max(1, letters);
+        // The best ring settings of each stop, keyed by bombe and stop; a rotor setting can be kept by every bombe
+        TopRanking ranking = new TopRanking(Math.max(1, this.bestRotorsToKeep * bombes.size()));
+        List<Bombe.Stop[]> bestOfStops = new ArrayList<>();
+        LongAdder evaluated = new LongAdder();
 
-        return bestRotors.subList(0, Math.min(20, bestRotors.size()));
+        for (Bombe bombe : bombes) {
+            List<Bombe.Stop> bombeStops = bombe.run();
+            System.out.println("Rotors Combinations Evaluated: " + RotorSettings.COUNT + ", Bombe Stops for " +
+                    bombe.getCrib() + "@" + bombe.getOffset() + ": " + bombeStops.size());
+            final long bombeIndex = bestOfStops.size();
+            Bombe.Stop[] best = new Bombe.Stop[bombeStops.size()];
+            bestOfStops.add(best);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+            // The ring settings of each stop only differ outside the crib, where the partial plugboard is scored by n-grams
+            for (int i = 0; i < bombeStops.size(); i++) {
+                final int stopIndex = i;
+                Rotor[] stopRotors = bombeStops.get(i).getRotors();
+                futures.add(CompletableFuture.runAsync(() -> {
+                    CompiledMachine machine = new CompiledMachine(
+                        HeuristicDecryptor.NO_PLUGBOARD,
+                        stopRotors[HeuristicDecryptor.ROTOR_LEFT],
+                        stopRotors[HeuristicDecryptor.ROTOR_MIDDLE],
+                        stopRotors[HeuristicDecryptor.ROTOR_RIGHT],
+                        HeuristicDecryptor.REFLECTOR
+                    );
+                    byte[] decrypted = new byte[normalizedText.length];
+                    float bestScore = Float.NEGATIVE_INFINITY;
+                    List<Bombe.Stop> rings = bombe.rings(bombeStops.get(stopIndex));
+                    for (Bombe.Stop stop : rings) {
+                        Rotor[] rotors = stop.getRotors();
+                        machine.withPositions(
+                            rotors[HeuristicDecryptor.ROTOR_LEFT].getRotorPosition(),
+                            rotors[HeuristicDecryptor.ROTOR_MIDDLE].getRotorPosition(),
+                            rotors[HeuristicDecryptor.ROTOR_RIGHT].getRotorPosition()
+                        ).withRingSettings(
+                            rotors[HeuristicDecryptor.ROTOR_LEFT].getRingSetting(),
+                            rotors[HeuristicDecryptor.ROTOR_MIDDLE].getRingSetting()
+                        ).withPlugboard(stop.getPlugboard()).encrypt(normalizedText, decrypted);
+                        float score = cribScore(bombe, decrypted) + kernel.score(decrypted, false) / messageLetters / CRIB_TIE_RANGE;
+                        if (score > bestScore) {
+                            best[stopIndex] = stop;
+                            bestScore = score;
+                        }
+                    }
+                    if (best[stopIndex] != null) {
+                        ranking.offer(bombeIndex << 32 | stopIndex, bestScore);
+                    }
+                    evaluated.add(rings.size());
+                    SearchMetrics.get().ringSettingsRanked(ALPHABET.length() * ALPHABET.length() * ALPHABET.length());
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+
+        // One stop per rotor setting
+        Map<String, Bombe.Stop> bestStops = new LinkedHashMap<>();
+        for (long key : ranking.getKeys()) {
+            if (bestStops.size() == this.bestRotorsToKeep) {
+                break;
+            }
+            Bombe.Stop stop = bestOfStops.get((int) (key >>> 32))[(int) key];
+            bestStops.putIfAbsent(ResultSink.searchName(stop.getRotors()), stop);
+        }
+        System.out.println("Ring Settings Evaluated: " + evaluated.sum());
+        return new ArrayList<>(bestStops.values());
     }
 
-    private static List<String> generateRandomPlugboards(int count) {
-        Set<String> plugboards = Collections.synchronizedSet(new HashSet<>());
-        Random random = new Random();
-        char[] alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
-    
-        List<Character> alphabetList = new ArrayList<>();
-        for (char c : alphabet) {
-            alphabetList.add(c);
+    // Percentage of the crib letters recovered by a decryption, comparable between cribs; whole percents outweigh
+    // the n-gram score per letter, scaled into (-1, 0] by CRIB_TIE_RANGE, that breaks the ties
+    private static float cribScore(Bombe bombe, byte[] decrypted) {
+        String crib = bombe.getCrib();
+        int letters = 0;
+        int recovered = 0;
+        for (int i = 0; i < crib.length(); i++) {
+            char c = crib.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                letters++;
+                recovered += decrypted[bombe.getOffset() + i] == c - 'A' ? 1 : 0;
+            }
         }
+        return Math.round(100f * recovered / letters);
+    }
+
+    private static Rotor withRingSetting(Rotor rotor, char ringSetting) {
+        return new Rotor(rotor.getRotorConfiguration(), rotor.getRotorPosition(), ringSetting);
+    }
+
+    private static List<PlugboardWiring> generateRandomPlugboards(PlugboardStore store, int count) {
+        Set<PlugboardWiring> plugboards = Collections.synchronizedSet(new HashSet<>());
+        Random random = new Random();
     
         int batchSize = 10000;
         while (plugboards.size() < count) {
@@ -188,24 +615,11 @@ public class HeuristicDecryptor {
             List<CompletableFuture<Void>> futures = new ArrayList<>();
             for (int i = 0; i < currentBatchSize; i++) {
                 futures.add(CompletableFuture.runAsync(() -> {
-                    List<Character> availableChars = new ArrayList<>(alphabetList);
-                    Collections.shuffle(availableChars);
-    
-                    StringBuilder plugboard = new StringBuilder();
-                    for (int j = 0; j < 10; j++) {
-                        char first = availableChars.remove(random.nextInt(availableChars.size()));
-                        char second = availableChars.remove(random.nextInt(availableChars.size()));
-                        if (plugboard.length() > 0) {
-                            plugboard.append(":");
-                        }
-                        plugboard.append(first).append(second);
-                    }
-                    String plugboardStr = plugboard.toString();
-                    synchronized (testedPlugboards) {
-                        if (!testedPlugboards.contains(plugboardStr)) {
-                            plugboards.add(plugboardStr);
-                            testedPlugboards.add(plugboardStr);
-                        }
+                    PlugboardWiring plugboard = PlugboardWiring.random(random, 10);
+                    long fingerprint = PlugboardStore.fingerprint(plugboard, GENERATED_PLUGBOARDS);
+                    // A full store no longer records new plugboards, which are still tested
+                    if (store.record(fingerprint, Float.NaN) || store.isFull() && !store.contains(fingerprint)) {
+                        plugboards.add(plugboard);
                     }
                 }));
             }
@@ -217,27 +631,51 @@ public class HeuristicDecryptor {
         return new ArrayList<>(plugboards);
     }
 
-    private static void writeGeneratedPlugboards(List<String> plugboards) {
-        try {
-            Files.write(Paths.get("plugboards.txt"), plugboards, StandardOpenOption.CREATE,StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Greedy plugboards first, where every heuristic looks first, replacing as many of the other plugboards
+    private List<PlugboardWiring> seedPlugboards(Rotor[] rotors, Bombe.Stop stop, List<PlugboardWiring> plugboards) {
+        GreedyPlugboards greedy = new GreedyPlugboards(rotors, encryptedMessage, machineEntropy, scheduler);
+        Set<PlugboardWiring> seeds = new LinkedHashSet<>();
+        if (stop != null) {
+            // The cables implied by the crib are completed the same way
+            seeds.add(greedy.complete(stop.getPlugboard()));
         }
+        seeds.addAll(greedy.seeds(this.greedySeeds));
+        List<PlugboardWiring> seeded = new ArrayList<>(seeds);
+        for (PlugboardWiring plugboard : plugboards.subList(Math.min(seeds.size(), plugboards.size()), plugboards.size())) {
+            if (!seeds.contains(plugboard)) {
+                seeded.add(plugboard);
+            }
+        }
+        return seeded;
     }
 
-    private static Set<String> readGeneratedPlugboards() {
-        if(Files.notExists(Paths.get("plugboards.txt"))) {
-            return new HashSet<String>();
-        } else {
-            System.out.println("Found!");
-            try {
-                List<String> plugboards = Files.readAllLines(Paths.get("plugboards.txt"));
-                return new HashSet<String>(plugboards);
-            } catch (IOException e) {
-                //e.printStackTrace();
-                return new HashSet<String>();
-            }
+    // Distinct plugboards with the cables of a stop, completed at random up to 10 cables
+    private static List<PlugboardWiring> completePlugboards(Bombe.Stop stop, int count) {
+        Set<PlugboardWiring> plugboards = new HashSet<>();
+        Random random = new Random();
+        // A stop with few free letters has fewer completions than requested
+        for (int attempt = 0; attempt < count * 4 && plugboards.size() < count; attempt++) {
+            plugboards.add(stop.complete(random, 10));
+        }
+        return new ArrayList<>(plugboards);
+    }
+
+    private static PlugboardStore openPlugboardStore() throws IOException {
+        PlugboardStore store = PlugboardStore.open(Paths.get(PLUGBOARD_STORE), PlugboardStore.DEFAULT_CAPACITY, true);
+        if (Files.exists(Paths.get(PLUGBOARDS_FILE))) {
+            int imported = store.migrate(Paths.get(PLUGBOARDS_FILE), GENERATED_PLUGBOARDS);
+            System.out.println("Plugboards migrated from " + PLUGBOARDS_FILE + ": " + imported);
+        }
+        System.out.println("Plugboards already generated: " + store.size());
+        if (store.isFull()) {
+            System.out.println("Plugboard store " + PLUGBOARD_STORE + " is full, new plugboards are no longer recorded");
         }
+        return store;
+    }
+
+    // Namespace of the plugboards searched for a rotor setting and ciphertext
+    private static long searchNamespace(Rotor[] rotors, String encryptedMessage) {
+        return (long) Arrays.hashCode(rotors) << 32 | (encryptedMessage.hashCode() & 0xFFFFFFFFL);
     }
 
-}
\ No newline at end of file
+}
@@ -2,144 +2,163 @@ package es.usj.crypto;
 
 import es.usj.crypto.enigma.*;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 
 public class HillClimbing implements EnigmaHeuristic {
     private Rotor[] rotors;
-    private List<String> plugboards;
-    private String bestPlugboard;
-    private float bestFitness;
+    private List<PlugboardWiring> plugboards;
+    private PlugboardWiring bestPlugboard;
+    private volatile float bestFitness;
     private String bestDecryptedMessage;
     private Entropy entropy;
     private String encryptedMessage;
-    private Stack<String> plugboardStack;
-    private int numTestedPlugboards;
+    private IncrementalScorer scorer;
+    private CompiledMachine machine;
+    private Stack<PlugboardWiring> plugboardStack;
+    private EvaluationScheduler scheduler;
+    private ResultSink resultSink;
+    private SearchMetrics metrics;
+    private LongAdder numTestedPlugboards;
+    private volatile boolean stopped;
+    private volatile boolean snapshotRequested;
+    private volatile SearchCheckpoint.State snapshot;
+
+    public HillClimbing(Rotor[] rotors, List<PlugboardWiring> initialPlugboards, String encryptedMessage) {
+        this(rotors, initialPlugboards, encryptedMessage, new EvaluationScheduler());
+    }
 
-    public HillClimbing(Rotor[] rotors, List<String> initialPlugboards, String encryptedMessage) {
+    public HillClimbing(Rotor[] rotors, List<PlugboardWiring> initialPlugboards, String encryptedMessage, EvaluationScheduler scheduler) {
         this.rotors = rotors;
         this.plugboards = initialPlugboards;
-        this.bestPlugboard = "";
         this.entropy = new Entropy();
         this.encryptedMessage = encryptedMessage;
+        this.machine = new CompiledMachine(new Plugboard(PlugboardWiring.EMPTY), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+        this.scorer = new IncrementalScorer(entropy, machine.trace(CompiledMachine.normalize(encryptedMessage)));
         this.bestFitness = Float.NEGATIVE_INFINITY;
         this.plugboardStack = new Stack<>();
-        this.numTestedPlugboards = 0;
+        this.scheduler = scheduler;
+        this.resultSink = ResultSink.DISCARD;
+        this.metrics = SearchMetrics.get();
+        this.numTestedPlugboards = new LongAdder();
     }
 
     public void optimize() {
-        // Initialize the stack with the initial plugboards
-        plugboardStack.addAll(plugboards);
+        // Initialize the stack with the initial plugboards, the first ones on top so that they are explored first
+        for (int i = plugboards.size() - 1; i >= 0; i--) {
+            plugboardStack.push(plugboards.get(i));
+        }
         System.out.println("Initializing optimization...");
 
-        while (!plugboardStack.isEmpty()) {
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
-            String currentPlugboard = plugboardStack.pop();
+        while (!plugboardStack.isEmpty() && !stopped) {
+            if (snapshotRequested) {
+                captureSnapshot();
+            }
+            PlugboardWiring currentPlugboard = plugboardStack.pop();
             //System.out.println("Evaluation neighbours of the plugboard: " + currentPlugboard);
-            Pair<String, Float> neighbor = evaluateNeighbors(currentPlugboard);
+            Pair<PlugboardWiring, Float> neighbor = evaluateNeighbors(currentPlugboard);
             //System.out.println("Neighbours evaluated.");
+            if (neighbor == null) {
+                continue;
+            }
 
-            futures.add(CompletableFuture.runAsync(() -> {
-                String neighborPlugboard = neighbor.getFirst();
-                float neighborFitness = neighbor.getSecond();
-                synchronized (this) {
-                    if (neighborFitness > bestFitness) {
-                        bestPlugboard = neighborPlugboard;
-                        bestFitness = neighborFitness;
-                        bestDecryptedMessage = new Machine(new Plugboard(bestPlugboard), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR).getCipheredText(encryptedMessage);
-                        System.out.println("New best machine found:");
-                        System.out.println("Plugboard: " + bestPlugboard);
-                        System.out.println("Puntuación (Fitness): " + bestFitness);
-                        System.out.println("Mensaje descifrado: " + bestDecryptedMessage);
-                        this.writeBestToFile();
-                        //If a better plugboard is found, we will put it in the stack to see if it can be further improved with the missing letters.
-                        plugboardStack.push(neighborPlugboard);
-                    }
+            PlugboardWiring neighborPlugboard = neighbor.getFirst();
+            float neighborFitness = neighbor.getSecond();
+            synchronized (this) {
+                if (neighborFitness > bestFitness) {
+                    bestPlugboard = neighborPlugboard;
+                    bestFitness = neighborFitness;
+                    bestDecryptedMessage = machine.withPlugboard(bestPlugboard).getCipheredText(encryptedMessage);
+                    metrics.improvement(bestFitness);
+                    resultSink.submit(ResultSink.searchName(rotors), bestFitness, bestPlugboard.toString(), bestDecryptedMessage);
+                    //If a better plugboard is found, we will put it in the stack to see if it can be further improved with the missing letters.
+                    plugboardStack.push(neighborPlugboard);
                 }
-            }));
-            
-            // Wait for all futures to complete
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            }
         }
-        System.out.println("Plugboards evaluated: " + numTestedPlugboards);
+        captureSnapshot();
+        System.out.println("Plugboards evaluated: " + numTestedPlugboards.sum());
+    }
+
+    public void stop() {
+        this.stopped = true;
+    }
+
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
     }
 
-    private Set<Character> extractAvailableChars(String plugboard) {
-        Set<Character> usedChars = new HashSet<>();
-        for (String pair : plugboard.split(":")) {
-            usedChars.add(pair.charAt(0));
-            usedChars.add(pair.charAt(1));
+    public SearchCheckpoint.State getSnapshot() {
+        return snapshot;
+    }
+
+    public void restore(SearchCheckpoint.State state) {
+        // The stack already holds the initial plugboards that were not explored
+        this.plugboards = new ArrayList<>();
+        this.plugboardStack.clear();
+        for (long key : state.getPending()) {
+            this.plugboardStack.push(PlugboardWiring.fromKey(key));
         }
-        Set<Character> availableChars = new HashSet<>();
-        for (char c : HeuristicDecryptor.ALPHABET.toCharArray()) {
-            if (!usedChars.contains(c)) {
-                availableChars.add(c);
-            }
+        if (state.getBestPlugboard() != null) {
+            this.bestPlugboard = state.getBestPlugboard();
+            this.bestFitness = state.getBestFitness();
+            this.bestDecryptedMessage = machine.withPlugboard(bestPlugboard).getCipheredText(encryptedMessage);
         }
-        return availableChars;
+        this.numTestedPlugboards.reset();
+        this.numTestedPlugboards.add(state.getIterations());
+        this.snapshot = state;
     }
 
-    private List<String> generateNeighbors(String currentPlugboard, String pair) {
-        List<String> neighbors = new ArrayList<>();
-        Set<Character> availableChars = extractAvailableChars(currentPlugboard);
-        availableChars.add(pair.charAt(0));
-        availableChars.add(pair.charAt(1));
-    
-        List<Character> availableList = new ArrayList<>(availableChars);
-        for (int i = 0; i < availableList.size(); i++) {
-            for (int j = i + 1; j < availableList.size(); j++) {
-                char c1 = availableList.get(i);
-                char c2 = availableList.get(j);
-                neighbors.add("" + c1 + c2);
-            }
+    // Called from the optimizing thread, between two plugboards of the stack
+    private void captureSnapshot() {
+        this.snapshotRequested = false;
+        long[] pending = new long[plugboardStack.size()];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = plugboardStack.get(i).key();
         }
-        this.numTestedPlugboards += neighbors.size();
-        return neighbors;
+        this.snapshot = new SearchCheckpoint.State(rotors, bestPlugboard, bestFitness, numTestedPlugboards.sum(), pending);
     }
 
-    private String replacePair(String plugboard, int index, String newPair) {
-        String[] pairs = plugboard.split(":");
-        pairs[index] = newPair;
-        return String.join(":", pairs);
+    private int[] extractAvailableChars(PlugboardWiring plugboard, int cable) {
+        int[] availableChars = new int[HeuristicDecryptor.ALPHABET.length() - 2 * plugboard.cables() + 2];
+        int count = 0;
+        for (int c = 0; c < HeuristicDecryptor.ALPHABET.length(); c++) {
+            if (!plugboard.isPlugged(c) || c == cable || c == plugboard.partner(cable)) {
+                availableChars[count++] = c;
+            }
+        }
+        return availableChars;
     }
 
-    public Pair<String, Float> evaluateNeighbors(String plugboard) {
-        List<CompletableFuture<Pair<String, Float>>> futures = new ArrayList<>();
-        String[] pairs = plugboard.split(":");
-
-        for (int i = 0; i < pairs.length; i++) {
-            final int index = i;
-            for (String neighbor : generateNeighbors(plugboard, pairs[i])) {
-                futures.add(CompletableFuture.supplyAsync(() -> {
-                    String newPlugboard = replacePair(plugboard, index, neighbor);
-                    Machine enigmaMachine = new Machine(new Plugboard(newPlugboard), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
-                    float fitness = entropy.getMachineFitness(enigmaMachine, encryptedMessage);
-                    return new Pair<>(newPlugboard, fitness);
-                }));
+    private List<PlugboardWiring> generateNeighbors(PlugboardWiring currentPlugboard, int cable) {
+        List<PlugboardWiring> neighbors = new ArrayList<>();
+        int[] availableChars = extractAvailableChars(currentPlugboard, cable);
+        for (int i = 0; i < availableChars.length; i++) {
+            for (int j = i + 1; j < availableChars.length; j++) {
+                neighbors.add(currentPlugboard.replace(cable, availableChars[i], availableChars[j]));
             }
         }
+        return neighbors;
+    }
 
-        List<Pair<String, Float>> neighborFitness = futures.stream()
-            .map(CompletableFuture::join)
-            .collect(Collectors.toList());
+    public Pair<PlugboardWiring, Float> evaluateNeighbors(PlugboardWiring plugboard) {
+        List<PlugboardWiring> neighbors = new ArrayList<>();
+        // Neighbors only differ from the current plugboard in one pair, so they are scored as a delta over it
+        scorer.setPlugboard(plugboard.getMapping());
 
-        neighborFitness.sort((a, b) -> Float.compare(b.getSecond(), a.getSecond()));
-        return neighborFitness.get(0);
+        for (int cable : plugboard.getCables()) {
+            neighbors.addAll(generateNeighbors(plugboard, cable));
+        }
+        long start = System.nanoTime();
+        Pair<PlugboardWiring, Float> best = scheduler.best(neighbors, neighbor -> scorer.getFitness(neighbor.getMapping()));
+        metrics.neighborBatch(System.nanoTime() - start);
+        numTestedPlugboards.add(neighbors.size());
+        metrics.plugboardsEvaluated(neighbors.size());
+        return best;
     }
 
-    public void writeBestToFile() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("best.txt", true))) {
-            writer.write("Plugboard: " + bestPlugboard + "\n");
-            writer.write("Score (Fitness): " + bestFitness + "\n");
-            writer.write("Decrypted Message: " + bestDecryptedMessage + "\n");
-            writer.write("\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public void setResultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
     }
 
     public float getBestFitness() {
@@ -147,7 +166,7 @@ public class HillClimbing implements EnigmaHeuristic {
     }
 
     public String getBestPlugboard() {
-        return bestPlugboard;
+        return bestPlugboard == null ? null : bestPlugboard.toString();
     }
 
     public String getBestDecryptedMessage() {
@@ -155,6 +174,6 @@ public class HillClimbing implements EnigmaHeuristic {
     }
 
     public int getNumTestedPlugboards() {
-        return numTestedPlugboards;
+        return numTestedPlugboards.intValue();
     }
 }
\ No newline at end of file
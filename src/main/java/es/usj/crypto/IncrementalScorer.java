@@ -0,0 +1,248 @@
+package es.usj.crypto;
+
+import es.usj.crypto.enigma.ScramblerTrace;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the decryption and the n-gram scores of a message under the current plugboard, so that the fitness of a
+ * plugboard that differs in a few letters is obtained by rescoring only the n-grams those letters touch.
+ *
+ * Words are scored as in {@link Entropy#getFitness(String, boolean)} (full mode): one n-gram per position, of the
+ * word length up to quadgrams. The n-gram score is stored at its last position.
+ *
+ * {@link #delta(byte[])} can be called concurrently; {@link #setPlugboard(byte[])} and {@link #accept(byte[])} must
+ * not overlap with it. {@link #accept(byte[])} moves to a candidate by updating only the positions its changed
+ * letters touch, so a search that walks from plugboard to plugboard never rescores the whole message.
+ */
+public class IncrementalScorer {
+
+    private static final int SIZE = 26;
+    private static final int MAX_ORDER = 4;
+
+    private final Entropy entropy;
+    private final ScramblerTrace trace;
+    private final byte[] text;
+
+    // Per position of the message: letter index in the trace, n-gram order and bounds of its word
+    private final int[] letters;
+    private final int[] orders;
+    private final int[] wordStarts;
+    private final int[] wordEnds;
+
+    // Positions of the message holding each ciphertext character
+    private final int[][] cipherPositions;
+    // Positions of the message where each character leaves the rotors, under the current plugboard: the first
+    // scramblerCounts[c] entries of scramblerPositions[c], and the index of each position in its list
+    private final int[][] scramblerPositions;
+    private final int[] scramblerCounts;
+    private final int[] scramblerSlots;
+
+    private final byte[] plugboard;
+    private final byte[] decryption;
+    private final float[] scores;
+    private double fitness;
+
+    // Per-thread marks of the n-grams already rescored by the current delta
+    private final ThreadLocal<Marks> marks;
+
+    public IncrementalScorer(Entropy entropy, ScramblerTrace trace) {
+        this.entropy = entropy;
+        this.trace = trace;
+        this.text = trace.getText();
+
+        int length = text.length;
+        this.letters = new int[length];
+        this.orders = new int[length];
+        this.wordStarts = new int[length];
+        this.wordEnds = new int[length];
+        int[] cipherCounts = new int[SIZE];
+        int letter = 0;
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && text[i] >= 0) {
+                letters[i] = letter++;
+                cipherCounts[text[i]]++;
+                continue;
+            }
+            // End of a word: record its bounds and n-gram order
+            for (int j = start; j < i; j++) {
+                orders[j] = Math.min(i - start, MAX_ORDER);
+                wordStarts[j] = start;
+                wordEnds[j] = i;
+            }
+            if (i < length) {
+                letters[i] = -1;
+            }
+            start = i + 1;
+        }
+
+        this.cipherPositions = new int[SIZE][];
+        this.scramblerPositions = new int[SIZE][length];
+        this.scramblerCounts = new int[SIZE];
+        this.scramblerSlots = new int[length];
+        for (int c = 0; c < SIZE; c++) {
+            cipherPositions[c] = new int[cipherCounts[c]];
+        }
+        int[] filled = new int[SIZE];
+        for (int i = 0; i < length; i++) {
+            if (text[i] >= 0) {
+                cipherPositions[text[i]][filled[text[i]]++] = i;
+            }
+        }
+
+        this.plugboard = new byte[SIZE];
+        this.decryption = new byte[length];
+        this.scores = new float[length];
+        this.marks = ThreadLocal.withInitial(() -> new Marks(length));
+    }
+
+    public void setPlugboard(byte[] newPlugboard) {
+        System.arraycopy(newPlugboard, 0, plugboard, 0, SIZE);
+        trace.decrypt(plugboard, decryption);
+        Arrays.fill(scramblerCounts, 0);
+
+        double total = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] < 0) {
+                scores[i] = 0f;
+                continue;
+            }
+            int output = trace.scramble(letters[i], plugboard[text[i]]);
+            scramblerSlots[i] = scramblerCounts[output];
+            scramblerPositions[output][scramblerCounts[output]++] = i;
+            scores[i] = i - wordStarts[i] + 1 >= orders[i] ? score(i, plugboard) : 0f;
+            total += scores[i];
+        }
+        this.fitness = total;
+    }
+
+    public float delta(byte[] candidate) {
+        Marks mark = marks.get();
+        int token = mark.next();
+
+        // Only positions whose ciphertext or rotor output is a changed letter can decrypt differently
+        double delta = 0;
+        for (int c = 0; c < SIZE; c++) {
+            if (candidate[c] != plugboard[c]) {
+                delta += rescore(cipherPositions[c], cipherPositions[c].length, candidate, mark.ends, token, false);
+                delta += rescore(scramblerPositions[c], scramblerCounts[c], candidate, mark.ends, token, false);
+            }
+        }
+        return (float) delta;
+    }
+
+    // Makes a candidate the current plugboard, as setPlugboard does, updating only the positions it changes
+    public void accept(byte[] candidate) {
+        Marks mark = marks.get();
+        int token = mark.next();
+
+        double delta = 0;
+        for (int c = 0; c < SIZE; c++) {
+            if (candidate[c] != plugboard[c]) {
+                delta += rescore(cipherPositions[c], cipherPositions[c].length, candidate, mark.ends, token, true);
+                delta += rescore(scramblerPositions[c], scramblerCounts[c], candidate, mark.ends, token, true);
+            }
+        }
+        this.fitness += delta;
+
+        // Positions of a changed ciphertext character leave the rotors by another character
+        for (int c = 0; c < SIZE; c++) {
+            if (candidate[c] != plugboard[c]) {
+                for (int position : cipherPositions[c]) {
+                    int from = trace.scramble(letters[position], plugboard[c]);
+                    int to = trace.scramble(letters[position], candidate[c]);
+                    if (from != to) {
+                        int last = scramblerPositions[from][--scramblerCounts[from]];
+                        scramblerPositions[from][scramblerSlots[position]] = last;
+                        scramblerSlots[last] = scramblerSlots[position];
+                        scramblerSlots[position] = scramblerCounts[to];
+                        scramblerPositions[to][scramblerCounts[to]++] = position;
+                    }
+                }
+            }
+        }
+
+        for (int c = 0; c < SIZE; c++) {
+            if (candidate[c] != plugboard[c]) {
+                for (int position : cipherPositions[c]) {
+                    decryption[position] = (byte) decrypt(position, candidate);
+                }
+                for (int i = 0; i < scramblerCounts[c]; i++) {
+                    decryption[scramblerPositions[c][i]] = (byte) decrypt(scramblerPositions[c][i], candidate);
+                }
+            }
+        }
+        System.arraycopy(candidate, 0, plugboard, 0, SIZE);
+    }
+
+    // Rescores the n-grams touching the first count positions, and stores their new score if update is set
+    private double rescore(int[] positions, int count, byte[] candidate, int[] mark, int token, boolean update) {
+        double delta = 0;
+        for (int p = 0; p < count; p++) {
+            int position = positions[p];
+            int order = orders[position];
+            // Every n-gram of the word containing the position
+            int first = Math.max(position, wordStarts[position] + order - 1);
+            int last = Math.min(position + order - 1, wordEnds[position] - 1);
+            for (int end = first; end <= last; end++) {
+                if (mark[end] != token) {
+                    mark[end] = token;
+                    float score = score(end, candidate);
+                    delta += score - scores[end];
+                    if (update) {
+                        scores[end] = score;
+                    }
+                }
+            }
+        }
+        return delta;
+    }
+
+    private float score(int end, byte[] plug) {
+        switch (orders[end]) {
+            case 1:
+                return entropy.unigramFitness.score(decrypt(end, plug));
+            case 2:
+                return entropy.bigramFitness.score(decrypt(end - 1, plug), decrypt(end, plug));
+            case 3:
+                return entropy.trigramFitness.score(decrypt(end - 2, plug), decrypt(end - 1, plug), decrypt(end, plug));
+            default:
+                return entropy.quadramFitness.score(decrypt(end - 3, plug), decrypt(end - 2, plug),
+                        decrypt(end - 1, plug), decrypt(end, plug));
+        }
+    }
+
+    private int decrypt(int position, byte[] plug) {
+        return plug[trace.scramble(letters[position], plug[text[position]])];
+    }
+
+    public float getFitness() {
+        return (float) fitness;
+    }
+
+    public float getFitness(byte[] candidate) {
+        return (float) (fitness + delta(candidate));
+    }
+
+    public byte[] getDecryption() {
+        return decryption;
+    }
+
+    private static final class Marks {
+        private final int[] ends;
+        private int token;
+
+        private Marks(int length) {
+            this.ends = new int[length];
+        }
+
+        private int next() {
+            if (++token == 0) {
+                Arrays.fill(ends, 0);
+                token = 1;
+            }
+            return token;
+        }
+    }
+}
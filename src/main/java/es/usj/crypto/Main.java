@@ -3,17 +3,59 @@ package es.usj.crypto;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 
 @SpringBootApplication
 public class Main {
+    private static final String USAGE = "Usage: [--resume] [--crib=PHRASE@OFFSET | --crib=PHRASE]...";
+
     public static void main(String[] args) {
         String input;
         try {
+            SearchMetrics.get().enableJmx();
             input = Files.readString(Path.of("src/main/java/es/usj/crypto/cipher.txt"));
             HeuristicDecryptor decryptor = new HeuristicDecryptor(input, HeuristicDecryptor.HILLCLIMB_ALGORITHM);
+            decryptor.setResume(Arrays.asList(args).contains("--resume"));
+            // --crib=PHRASE@OFFSET, the offset counting every character of the message, or --crib=PHRASE to drag it
+            List<String> cribs = new ArrayList<>();
+            List<Integer> cribOffsets = new ArrayList<>();
+            List<String> draggedCribs = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--crib=")) {
+                    String crib = arg.substring("--crib=".length());
+                    int at = crib.lastIndexOf('@');
+                    if (at < 0) {
+                        draggedCribs.add(crib);
+                        continue;
+                    }
+                    try {
+                        int offset = Integer.parseInt(crib.substring(at + 1));
+                        // Rejects the offsets where the crib does not fit, or could not have been ciphered
+                        new Bombe(input, crib.substring(0, at), offset);
+                        cribs.add(crib.substring(0, at));
+                        cribOffsets.add(offset);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid crib offset: " + arg);
+                        System.err.println(USAGE);
+                        return;
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage() + ": " + arg);
+                        System.err.println(USAGE);
+                        return;
+                    }
+                }
+            }
+            if (!cribs.isEmpty()) {
+                decryptor.setCribs(cribs.toArray(new String[0]), cribOffsets.stream().mapToInt(Integer::intValue).toArray());
+            }
+            if (!draggedCribs.isEmpty()) {
+                decryptor.setDraggedCribs(draggedCribs.toArray(new String[0]));
+            }
             decryptor.decrypt();
         } catch (IOException e) {
             e.printStackTrace();
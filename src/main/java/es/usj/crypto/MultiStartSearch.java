@@ -0,0 +1,250 @@
+package es.usj.crypto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import es.usj.crypto.enigma.Rotor;
+
+/**
+ * Runs one plugboard search per rotor candidate concurrently, within a global wall-clock budget.
+ *
+ * Searches share the evaluation pool, so each running search gets an equal slice of its threads. The budget is
+ * split into checkpoints; at each one the running searches are ranked by their best fitness, and the worst half
+ * together with those that did not improve since the previous checkpoint are stopped. The threads they used go to
+ * the remaining searches.
+ *
+ * With a checkpoint file, a background thread periodically asks every search for a snapshot of its state, taken by
+ * the search itself between two steps, and writes the latest snapshots with the pruning state and the elapsed time.
+ * A final checkpoint is written when the searches stop. A search resumed from a checkpoint keeps the pruned
+ * candidates stopped and continues with the rest of the budget.
+ */
+public class MultiStartSearch {
+
+    private static final int CHECKPOINTS = 10;
+
+    private final List<Rotor[]> candidates;
+    private final Function<Rotor[], EnigmaHeuristic> heuristicFactory;
+    private final Duration budget;
+    private final List<EnigmaHeuristic> searches;
+    // Candidates stopped by pruning, and their best fitness at the previous checkpoint; guarded by searches
+    private final boolean[] stopped;
+    private final float[] lastFitness;
+    private final CompletableFuture<Void> finished;
+    private volatile long start;
+
+    private Path checkpointFile;
+    private long checkpointTag;
+    private Duration checkpointInterval;
+    private SearchCheckpoint resumed;
+
+    public MultiStartSearch(List<Rotor[]> candidates, Function<Rotor[], EnigmaHeuristic> heuristicFactory, Duration budget) {
+        this.candidates = candidates;
+        this.heuristicFactory = heuristicFactory;
+        this.budget = budget;
+        this.searches = new ArrayList<>();
+        this.stopped = new boolean[candidates.size()];
+        this.lastFitness = new float[candidates.size()];
+        Arrays.fill(lastFitness, Float.NEGATIVE_INFINITY);
+        this.finished = new CompletableFuture<>();
+    }
+
+    // Writes the state of the searches to a file every interval; the tag is kept to check it on resume
+    public void setCheckpoint(Path file, long tag, Duration interval) {
+        this.checkpointFile = file;
+        this.checkpointTag = tag;
+        this.checkpointInterval = interval;
+    }
+
+    // Continues the searches of a checkpoint, whose rotors should be the candidates of this search
+    public void resume(SearchCheckpoint checkpoint) {
+        this.resumed = checkpoint;
+    }
+
+    // Best search once every search stopped, or null when there are no candidates
+    public EnigmaHeuristic run() {
+        if (candidates.isEmpty()) {
+            finished.complete(null);
+            return null;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(candidates.size());
+        ScheduledExecutorService writer = null;
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                EnigmaHeuristic search = heuristicFactory.apply(candidates.get(i));
+                synchronized (searches) {
+                    if (resumed != null) {
+                        search.restore(resumed.getStates().get(i));
+                        stopped[i] = resumed.isPruned(i);
+                        lastFitness[i] = resumed.getLastFitness(i);
+                    }
+                    searches.add(search);
+                }
+                futures.add(stopped[i] ? CompletableFuture.completedFuture(null) : CompletableFuture.runAsync(search::optimize, executor));
+            }
+            CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+
+            // A resumed search continues from the checkpoint that follows its elapsed time
+            long elapsed = resumed == null ? 0 : resumed.getElapsedNanos();
+            start = System.nanoTime() - elapsed;
+            writer = startCheckpoints();
+            for (int checkpoint = (int) (elapsed * CHECKPOINTS / budget.toNanos()) + 1; checkpoint <= CHECKPOINTS && !all.isDone(); checkpoint++) {
+                long wait = start + budget.toNanos() * checkpoint / CHECKPOINTS - System.nanoTime();
+                try {
+                    all.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (checkpoint < CHECKPOINTS) {
+                        prune(futures);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // Out of budget: stop every search and keep the best result
+            stopAll();
+            all.join();
+            if (writer != null) {
+                writer.shutdown();
+                try {
+                    writer.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // Every search captured its final state when optimize() returned
+                writeCheckpoint();
+            }
+        } finally {
+            // A failed search stops the others too, so that no thread is left running and interrupt() never waits
+            stopAll();
+            executor.shutdown();
+            if (writer != null) {
+                writer.shutdown();
+            }
+            finished.complete(null);
+        }
+        return getBest();
+    }
+
+    // Stops every search, as when the budget runs out, and waits until run() returns
+    public void interrupt(Duration timeout) {
+        stopAll();
+        try {
+            finished.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("Searches did not stop in " + timeout);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void stopAll() {
+        synchronized (searches) {
+            for (EnigmaHeuristic search : searches) {
+                search.stop();
+            }
+        }
+    }
+
+    private ScheduledExecutorService startCheckpoints() {
+        if (checkpointFile == null) {
+            return null;
+        }
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Snapshots requested at one tick are written at the next one, so the searches never wait for the disk
+        long interval = checkpointInterval.toNanos();
+        writer.scheduleWithFixedDelay(() -> {
+            writeCheckpoint();
+            synchronized (searches) {
+                for (EnigmaHeuristic search : searches) {
+                    search.requestSnapshot();
+                }
+            }
+        }, 0, interval, TimeUnit.NANOSECONDS);
+        return writer;
+    }
+
+    private void writeCheckpoint() {
+        SearchCheckpoint checkpoint;
+        synchronized (searches) {
+            List<SearchCheckpoint.State> states = new ArrayList<>();
+            for (EnigmaHeuristic search : searches) {
+                SearchCheckpoint.State state = search.getSnapshot();
+                if (state == null) {
+                    return;
+                }
+                states.add(state);
+            }
+            checkpoint = new SearchCheckpoint(checkpointTag, System.nanoTime() - start, states, stopped.clone(), lastFitness.clone());
+        }
+        try {
+            checkpoint.write(checkpointFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void prune(List<CompletableFuture<Void>> futures) {
+        synchronized (searches) {
+            List<Integer> running = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                if (!stopped[i] && !futures.get(i).isDone()) {
+                    running.add(i);
+                }
+            }
+            float[] fitness = new float[futures.size()];
+            for (int i : running) {
+                fitness[i] = searches.get(i).getBestFitness();
+            }
+            running.sort((a, b) -> Float.compare(fitness[b], fitness[a]));
+
+            // The best running search is always kept
+            for (int rank = 1; rank < running.size(); rank++) {
+                int i = running.get(rank);
+                if (rank >= (running.size() + 1) / 2 || fitness[i] <= lastFitness[i]) {
+                    searches.get(i).stop();
+                    stopped[i] = true;
+                    System.out.println("Search stopped for rotors " + Arrays.toString(candidates.get(i)) +
+                            " with fitness " + fitness[i]);
+                }
+            }
+            for (int i : running) {
+                lastFitness[i] = fitness[i];
+            }
+        }
+    }
+
+    public EnigmaHeuristic getBest() {
+        synchronized (searches) {
+            EnigmaHeuristic best = null;
+            for (EnigmaHeuristic search : searches) {
+                if (best == null || search.getBestFitness() > best.getBestFitness()) {
+                    best = search;
+                }
+            }
+            return best;
+        }
+    }
+
+    public Rotor[] getBestRotors() {
+        synchronized (searches) {
+            EnigmaHeuristic best = getBest();
+            return best == null ? null : candidates.get(searches.indexOf(best));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package es.usj.crypto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+
+/**
+ * Persistent set of evaluated plugboards with the best score seen for each one.
+ *
+ * The store is a memory-mapped open-addressing table of fixed capacity (a power of two) with linear probing. Each
+ * 16-byte slot holds a 64-bit fingerprint (0 when free) and the bits of the best score; scores are stored XOR the
+ * bits of NaN, so a zeroed slot reads as "not scored". Lookups and inserts are lock-free: a slot is claimed with a
+ * compare-and-set of its fingerprint, and scores are raised with a compare-and-set loop. The file is sparse, so only
+ * used pages take disk space, and it is shared by every run that opens the same path.
+ *
+ * Fingerprints mix the plugboard key with an optional namespace (for example a hash of the rotor setting and the
+ * ciphertext), so the same file can hold plugboards of several searches. New keys are rejected once the table is
+ * three quarters full. An optional in-memory Bloom filter, rebuilt on open, answers most lookups of unseen
+ * plugboards without touching the mapped pages.
+ */
+public class PlugboardStore implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 22;
+
+    private static final int MAGIC = 0x50425354;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final int SIZE_OFFSET = 8;
+    private static final int NAN_BITS = Float.floatToRawIntBits(Float.NaN);
+    private static final int BLOOM_HASHES = 3;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    // Bits of the Bloom filter, or null when disabled
+    private final AtomicLongArray bloom;
+
+    private PlugboardStore(FileChannel channel, MappedByteBuffer buffer, int capacity, boolean bloomFilter) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.bloom = bloomFilter ? new AtomicLongArray(capacity / 4) : null;
+        if (bloom != null) {
+            for (int slot = 0; slot < capacity; slot++) {
+                long fingerprint = (long) LONGS.getVolatile(buffer, offset(slot));
+                if (fingerprint != 0) {
+                    addToBloom(fingerprint);
+                }
+            }
+        }
+    }
+
+    public static PlugboardStore open(Path path, int capacity, boolean bloomFilter) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity should be a power of two: " + capacity);
+        }
+        boolean exists = Files.exists(path);
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        if (!exists) {
+            // Sparse file: pages are only allocated once a slot is written
+            file.setLength(HEADER_BYTES + (long) capacity * SLOT_BYTES);
+        }
+        FileChannel channel = file.getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        if (!exists) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, capacity);
+        } else if (buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a plugboard store: " + path);
+        }
+        // An existing store keeps the capacity it was created with
+        return new PlugboardStore(channel, buffer, buffer.getInt(4), bloomFilter);
+    }
+
+    public static long fingerprint(PlugboardWiring plugboard, long namespace) {
+        long fingerprint = mix(plugboard.key() * 0x9E3779B97F4A7C15L + namespace);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    // Records a plugboard, and raises its best score; returns true if it was not in the store
+    public boolean record(long fingerprint, float score) {
+        if (bloom == null || mightContain(fingerprint)) {
+            int slot = find(fingerprint);
+            if (slot >= 0) {
+                raiseScore(slot, score);
+                return false;
+            }
+        }
+        if (isFull()) {
+            return false;
+        }
+        for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+            long current = (long) LONGS.getVolatile(buffer, offset(slot));
+            if (current == 0 && LONGS.compareAndSet(buffer, offset(slot), 0L, fingerprint)) {
+                INTS.getAndAdd(buffer, SIZE_OFFSET, 1);
+                if (bloom != null) {
+                    addToBloom(fingerprint);
+                }
+                raiseScore(slot, score);
+                return true;
+            }
+            // Claimed by another thread, possibly for the same fingerprint
+            if ((long) LONGS.getVolatile(buffer, offset(slot)) == fingerprint) {
+                raiseScore(slot, score);
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(long fingerprint) {
+        return (bloom == null || mightContain(fingerprint)) && find(fingerprint) >= 0;
+    }
+
+    // Best score recorded for a plugboard, NaN if it was never scored or is not in the store
+    public float getScore(long fingerprint) {
+        int slot = find(fingerprint);
+        return slot < 0 ? Float.NaN : score(slot);
+    }
+
+    public int size() {
+        return (int) INTS.getVolatile(buffer, SIZE_OFFSET);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Whether new plugboards are rejected, the table being three quarters full
+    public boolean isFull() {
+        return size() >= capacity / 4 * 3;
+    }
+
+    // Imports every plugboard of a text file (one per line, as written by PlugboardWiring.toString) and renames it
+    public int migrate(Path textFile, long namespace) throws IOException {
+        int imported = 0;
+        for (String line : Files.readAllLines(textFile)) {
+            if (!line.isEmpty() && record(fingerprint(PlugboardWiring.parse(line), namespace), Float.NaN)) {
+                imported++;
+            }
+        }
+        Files.move(textFile, Paths.get(textFile + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        return imported;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int find(long fingerprint) {
+        for (int slot = (int) fingerprint & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            long current = (long) LONGS.getVolatile(buffer, offset(slot));
+            if (current == fingerprint) {
+                return slot;
+            }
+            if (current == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private float score(int slot) {
+        return Float.intBitsToFloat((int) INTS.getVolatile(buffer, offset(slot) + 8) ^ NAN_BITS);
+    }
+
+    private void raiseScore(int slot, float score) {
+        if (Float.isNaN(score)) {
+            return;
+        }
+        int offset = offset(slot) + 8;
+        while (true) {
+            int stored = (int) INTS.getVolatile(buffer, offset);
+            float current = Float.intBitsToFloat(stored ^ NAN_BITS);
+            if ((!Float.isNaN(current) && current >= score) ||
+                    INTS.compareAndSet(buffer, offset, stored, Float.floatToRawIntBits(score) ^ NAN_BITS)) {
+                return;
+            }
+        }
+    }
+
+    private boolean mightContain(long fingerprint) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(fingerprint, i);
+            if ((bloom.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addToBloom(long fingerprint) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = bloomBit(fingerprint, i);
+            long mask = 1L << bit;
+            bloom.getAndAccumulate(bit >>> 6, mask, (bits, value) -> bits | value);
+        }
+    }
+
+    // One bit out of 16 per slot, taken from a different part of the fingerprint for each hash
+    private int bloomBit(long fingerprint, int hash) {
+        return (int) (mix(fingerprint + hash) >>> 1) & (capacity * 16 - 1);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+}
@@ -0,0 +1,276 @@
+package es.usj.crypto;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.usj.crypto.enigma.Rotor;
+
+/**
+ * Reports the improvements found by the heuristics from a single writer thread.
+ *
+ * {@link #submit(String, float, String, String)} never blocks: it keeps the best result of each search in a
+ * concurrent map and offers it to a bounded queue. When the queue is full the improvement is not logged, but it is
+ * still the best of its search, so it is reported by the next improvement or by the summary. The writer drains the
+ * queue in batches, keeps only the best result of each search in a batch, prints it and appends it as one JSON
+ * object per line to the log. Every interval, and when the sink is closed, it rewrites the summary with the best
+ * result overall and the best result of every search.
+ *
+ * {@link #DISCARD} ignores every result, for heuristics run outside a decryption (benchmarks).
+ */
+public class ResultSink implements Closeable {
+
+    public static final ResultSink DISCARD = new ResultSink();
+
+    private static final int QUEUE_CAPACITY = 1024;
+    // Wakes up a writer waiting for results when the sink is closed
+    private static final Result CLOSE = new Result(0, Instant.EPOCH, "", Float.NEGATIVE_INFINITY, "", "");
+
+    private final Path log;
+    private final Path summary;
+    private final long interval;
+    private final BlockingQueue<Result> queue;
+    // Best result of each search
+    private final Map<String, Result> bests;
+    private final AtomicLong sequence;
+    private final AtomicLong coalesced;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private ResultSink() {
+        this.log = null;
+        this.summary = null;
+        this.interval = 0;
+        this.queue = null;
+        this.bests = null;
+        this.sequence = null;
+        this.coalesced = null;
+        this.writer = null;
+    }
+
+    public ResultSink(Path log, Path summary, Duration interval) {
+        this(log, summary, interval, QUEUE_CAPACITY);
+    }
+
+    ResultSink(Path log, Path summary, Duration interval, int capacity) {
+        this.log = log;
+        this.summary = summary;
+        this.interval = interval.toNanos();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.bests = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.coalesced = new AtomicLong();
+        this.writer = new Thread(this::write, "result-sink");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Identifies the search of a rotor setting in the reports
+    public static String searchName(Rotor[] rotors) {
+        StringBuilder name = new StringBuilder();
+        for (Rotor rotor : rotors) {
+            if (name.length() > 0) {
+                name.append(' ');
+            }
+            name.append(rotor.getRotorConfiguration().name().substring("ROTOR_".length()))
+                    .append(':').append(rotor.getRotorPosition()).append(rotor.getRingSetting());
+        }
+        return name.toString();
+    }
+
+    public void submit(String search, float fitness, String plugboard, String decryptedMessage) {
+        if (this == DISCARD) {
+            return;
+        }
+        Result result = new Result(sequence.incrementAndGet(), Instant.now(), search, fitness, plugboard, decryptedMessage);
+        bests.merge(search, result, (current, candidate) -> candidate.fitness > current.fitness ? candidate : current);
+        if (!queue.offer(result)) {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    // Results waiting for the writer
+    public int getQueueDepth() {
+        return this == DISCARD ? 0 : queue.size();
+    }
+
+    public long getCoalesced() {
+        return this == DISCARD ? 0 : coalesced.get();
+    }
+
+    // Writes the pending results and the summary, and stops the writer
+    @Override
+    public void close() {
+        if (this == DISCARD || closed) {
+            return;
+        }
+        closed = true;
+        // A full queue means the writer is busy, and it checks closed before waiting again
+        queue.offer(CLOSE);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        Map<String, Float> logged = new LinkedHashMap<>();
+        long nextSummary = System.nanoTime() + interval;
+        List<Result> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Result first = queue.poll(Math.max(0, nextSummary - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            batch.remove(CLOSE);
+            logBatch(batch, logged);
+            batch.clear();
+            if (System.nanoTime() >= nextSummary) {
+                writeSummary();
+                nextSummary = System.nanoTime() + interval;
+            }
+        }
+        // Results dropped by a full queue are still the best of their search
+        logBatch(new ArrayList<>(bests.values()), logged);
+        writeSummary();
+    }
+
+    private void logBatch(List<Result> batch, Map<String, Float> logged) {
+        Map<String, Result> improvements = new LinkedHashMap<>();
+        for (Result result : batch) {
+            Float previous = logged.get(result.search);
+            Result current = improvements.get(result.search);
+            if ((previous == null || result.fitness > previous) && (current == null || result.fitness > current.fitness)) {
+                improvements.put(result.search, result);
+            }
+        }
+        if (improvements.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Result result : improvements.values()) {
+                logged.put(result.search, result.fitness);
+                out.write(result.toJson());
+                out.newLine();
+                System.out.println("New best machine found for rotors " + result.search + ":");
+                System.out.println("Plugboard: " + result.plugboard);
+                System.out.println("Score (Fitness): " + result.fitness);
+                System.out.println("Decrypted Message: " + result.decryptedMessage);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeSummary() {
+        List<Result> results = new ArrayList<>(bests.values());
+        if (results.isEmpty()) {
+            return;
+        }
+        results.sort(Comparator.comparingDouble((Result result) -> result.fitness).reversed());
+        Result best = results.get(0);
+        StringBuilder text = new StringBuilder();
+        text.append("Plugboard: ").append(best.plugboard).append('\n');
+        text.append("Score (Fitness): ").append(best.fitness).append('\n');
+        text.append("Rotors: ").append(best.search).append('\n');
+        text.append("Decrypted Message: ").append(best.decryptedMessage).append('\n');
+        text.append('\n');
+        text.append("Best of each search (updated ").append(Instant.now()).append("):\n");
+        for (Result result : results) {
+            text.append(String.format("%-24s %12.4f  %s%n", result.search, result.fitness, result.plugboard));
+        }
+        try {
+            Path temporary = summary.resolveSibling(summary.getFileName() + ".tmp");
+            Files.write(temporary, text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, summary, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // JSON string literal of a value, or null
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class Result {
+        private final long sequence;
+        private final Instant time;
+        private final String search;
+        private final float fitness;
+        private final String plugboard;
+        private final String decryptedMessage;
+
+        private Result(long sequence, Instant time, String search, float fitness, String plugboard, String decryptedMessage) {
+            this.sequence = sequence;
+            this.time = time;
+            this.search = search;
+            this.fitness = fitness;
+            this.plugboard = plugboard;
+            this.decryptedMessage = decryptedMessage;
+        }
+
+        private String toJson() {
+            return "{\"sequence\":" + sequence +
+                    ",\"time\":\"" + time + "\"" +
+                    ",\"rotors\":" + quote(search) +
+                    ",\"fitness\":" + fitness +
+                    ",\"plugboard\":" + quote(plugboard) +
+                    ",\"message\":" + quote(decryptedMessage) + "}";
+        }
+    }
+}
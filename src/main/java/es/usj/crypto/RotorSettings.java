@@ -0,0 +1,72 @@
+package es.usj.crypto;
+
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+/**
+ * Enumerates every rotor setting (rotor order and rotor positions) through a dense index in [0, COUNT).
+ *
+ * Settings are decoded on demand, so ranking the whole keyspace never stores it. Indexes follow the order in which
+ * settings were listed as "L%d-%c M%d-%c R%d-%c": rotor order first, then left, middle and right positions.
+ */
+public class RotorSettings {
+
+    public static final int POSITIONS = 26 * 26 * 26;
+    public static final int ROTOR_ORDERS = 60;
+    public static final int COUNT = ROTOR_ORDERS * POSITIONS;
+
+    // Rotor types {left, middle, right} of each rotor order
+    private static final int[][] ORDERS = createOrders();
+
+    private RotorSettings() {
+    }
+
+    public static int getRotorOrder(int index) {
+        return index / POSITIONS;
+    }
+
+    public static char getLeftPosition(int index) {
+        return (char) ('A' + index % POSITIONS / (26 * 26));
+    }
+
+    public static char getMiddlePosition(int index) {
+        return (char) ('A' + index % (26 * 26) / 26);
+    }
+
+    public static char getRightPosition(int index) {
+        return (char) ('A' + index % 26);
+    }
+
+    public static Rotor[] getRotors(int index) {
+        int[] types = ORDERS[getRotorOrder(index)];
+        return new Rotor[]{
+            new Rotor(RotorConfiguration.getRotorConfiguration(types[0]), getLeftPosition(index)),
+            new Rotor(RotorConfiguration.getRotorConfiguration(types[1]), getMiddlePosition(index)),
+            new Rotor(RotorConfiguration.getRotorConfiguration(types[2]), getRightPosition(index))
+        };
+    }
+
+    public static String toString(int index) {
+        int[] types = ORDERS[getRotorOrder(index)];
+        return String.format("L%d-%c M%d-%c R%d-%c",
+                types[0], getLeftPosition(index),
+                types[1], getMiddlePosition(index),
+                types[2], getRightPosition(index));
+    }
+
+    private static int[][] createOrders() {
+        int[][] orders = new int[ROTOR_ORDERS][];
+        int order = 0;
+        for (int leftRotor = 1; leftRotor <= 5; leftRotor++) {
+            for (int middleRotor = 1; middleRotor <= 5; middleRotor++) {
+                for (int rightRotor = 1; rightRotor <= 5; rightRotor++) {
+                    // Asegurarse de que los rotores sean diferentes
+                    if (leftRotor != middleRotor && middleRotor != rightRotor && leftRotor != rightRotor) {
+                        orders[order++] = new int[]{leftRotor, middleRotor, rightRotor};
+                    }
+                }
+            }
+        }
+        return orders;
+    }
+}
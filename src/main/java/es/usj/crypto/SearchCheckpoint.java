@@ -0,0 +1,196 @@
+package es.usj.crypto;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+/**
+ * Binary snapshot of a {@link MultiStartSearch}, used to resume it after a restart.
+ *
+ * A checkpoint holds the elapsed time of the search and, for each rotor candidate, the state captured by its
+ * heuristic at a safe point together with the pruning state of the candidate. Plugboards are stored as their 64-bit
+ * keys. Files are written to a temporary file and renamed, so a crash while writing keeps the previous checkpoint.
+ * The tag identifies the search (for example the algorithm and the ciphertext), so a checkpoint is not resumed by
+ * a different one.
+ */
+public class SearchCheckpoint {
+
+    private static final int MAGIC = 0x454E4350;
+    private static final int VERSION = 2;
+
+    private final long tag;
+    private final long elapsedNanos;
+    private final List<State> states;
+    private final boolean[] pruned;
+    private final float[] lastFitness;
+
+    public SearchCheckpoint(long tag, long elapsedNanos, List<State> states, boolean[] pruned, float[] lastFitness) {
+        this.tag = tag;
+        this.elapsedNanos = elapsedNanos;
+        this.states = states;
+        this.pruned = pruned;
+        this.lastFitness = lastFitness;
+    }
+
+    public long getTag() {
+        return tag;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public List<State> getStates() {
+        return states;
+    }
+
+    public List<Rotor[]> getRotors() {
+        List<Rotor[]> rotors = new ArrayList<>();
+        for (State state : states) {
+            rotors.add(state.getRotors());
+        }
+        return rotors;
+    }
+
+    public boolean isPruned(int search) {
+        return pruned[search];
+    }
+
+    public float getLastFitness(int search) {
+        return lastFitness[search];
+    }
+
+    public void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(tag);
+            out.writeLong(elapsedNanos);
+            out.writeInt(states.size());
+            for (int i = 0; i < states.size(); i++) {
+                out.writeBoolean(pruned[i]);
+                out.writeFloat(lastFitness[i]);
+                states.get(i).write(out);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static SearchCheckpoint read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a search checkpoint: " + path);
+            }
+            long tag = in.readLong();
+            long elapsedNanos = in.readLong();
+            int count = in.readInt();
+            List<State> states = new ArrayList<>();
+            boolean[] pruned = new boolean[count];
+            float[] lastFitness = new float[count];
+            for (int i = 0; i < count; i++) {
+                pruned[i] = in.readBoolean();
+                lastFitness[i] = in.readFloat();
+                states.add(State.read(in));
+            }
+            return new SearchCheckpoint(tag, elapsedNanos, states, pruned, lastFitness);
+        }
+    }
+
+    /**
+     * State of one heuristic: its rotors, its best plugboard and the plugboards it still has to explore.
+     *
+     * Pending plugboards are the stack of a hill climbing, the population of a genetic algorithm or the current
+     * plugboards of the annealing chains. Iterations count tested plugboards, generations or annealing steps.
+     */
+    public static final class State {
+
+        private final Rotor[] rotors;
+        private final PlugboardWiring bestPlugboard;
+        private final float bestFitness;
+        private final long iterations;
+        private final long[] pending;
+
+        public State(Rotor[] rotors, PlugboardWiring bestPlugboard, float bestFitness, long iterations, long[] pending) {
+            this.rotors = rotors;
+            this.bestPlugboard = bestPlugboard;
+            this.bestFitness = bestFitness;
+            this.iterations = iterations;
+            this.pending = pending;
+        }
+
+        public Rotor[] getRotors() {
+            return rotors;
+        }
+
+        // Null when no plugboard was scored yet
+        public PlugboardWiring getBestPlugboard() {
+            return bestPlugboard;
+        }
+
+        public float getBestFitness() {
+            return bestFitness;
+        }
+
+        public long getIterations() {
+            return iterations;
+        }
+
+        public long[] getPending() {
+            return pending;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            for (Rotor rotor : rotors) {
+                out.writeByte(rotor.getRotorConfiguration().ordinal());
+                out.writeByte(rotor.getRotorPosition());
+                out.writeByte(rotor.getRingSetting());
+            }
+            out.writeLong(bestPlugboard == null ? -1 : bestPlugboard.key());
+            out.writeFloat(bestFitness);
+            out.writeLong(iterations);
+            writeKeys(out, pending);
+        }
+
+        private static State read(DataInputStream in) throws IOException {
+            Rotor[] rotors = new Rotor[3];
+            for (int i = 0; i < rotors.length; i++) {
+                RotorConfiguration configuration = RotorConfiguration.values()[in.readByte()];
+                char position = (char) in.readByte();
+                char ringSetting = (char) in.readByte();
+                rotors[i] = new Rotor(configuration, position, ringSetting);
+            }
+            long bestKey = in.readLong();
+            float bestFitness = in.readFloat();
+            long iterations = in.readLong();
+            return new State(rotors, bestKey < 0 ? null : PlugboardWiring.fromKey(bestKey), bestFitness, iterations,
+                    readKeys(in));
+        }
+
+        private static void writeKeys(DataOutputStream out, long[] keys) throws IOException {
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+        }
+
+        private static long[] readKeys(DataInputStream in) throws IOException {
+            long[] keys = new long[in.readInt()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = in.readLong();
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package es.usj.crypto;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+
+/**
+ * Counters, timers and gauges of the decryption, published through Micrometer.
+ *
+ * Counters updated by the evaluation loops are LongAdders bound to function counters, so the loops only pay for an
+ * uncontended add per batch and Micrometer reads them when the registry is polled; through JMX each counter also
+ * shows its mean and 1, 5 and 15 minute rates per second. Timers are recorded once per batch of neighbors or
+ * generation, not per plugboard. Meters live in the global registry, which ignores them until a registry is added:
+ * {@link #enableJmx()} publishes them as MBeans of the "metrics" domain, together with the JVM memory, GC and thread
+ * metrics.
+ *
+ * <ul>
+ *     <li>{@code enigma.settings.ranked} (tag stage: rotors, rings): rotor and ring settings scored.</li>
+ *     <li>{@code enigma.plugboards.evaluated}: plugboards scored by the heuristics.</li>
+ *     <li>{@code enigma.improvements}: new best plugboards of any search.</li>
+ *     <li>{@code enigma.fitness.best}: best fitness of the current decryption.</li>
+ *     <li>{@code enigma.neighbors.latency}, {@code enigma.generation.latency}: time to score the neighbors of a
+ *     plugboard, and to build a generation, with a percentile histogram.</li>
+ *     <li>{@code enigma.queue.depth} (tag queue): tasks waiting in the evaluation pool and results waiting to be
+ *     written.</li>
+ *     <li>{@code enigma.cache.requests} (tag result: hit, miss), {@code enigma.cache.hit.ratio},
+ *     {@code enigma.cache.size}: lookups of the fitness cache of the current decryption.</li>
+ *     <li>{@code enigma.phase.duration}, {@code enigma.phase.allocated} (tag phase): time and bytes allocated by
+ *     every thread during each phase of the decryption.</li>
+ * </ul>
+ */
+public final class SearchMetrics {
+
+    private static final SearchMetrics INSTANCE = new SearchMetrics(Metrics.globalRegistry);
+
+    // Total bytes allocated by the JVM, including threads that already ended (JDK 14+), or null
+    private static final MethodHandle TOTAL_ALLOCATED_BYTES = totalAllocatedBytes();
+
+    private final MeterRegistry registry;
+    private final LongAdder rotorSettings;
+    private final LongAdder ringSettings;
+    private final LongAdder plugboards;
+    private final LongAdder improvements;
+    private final DoubleAccumulator bestFitness;
+    private final Timer neighborBatches;
+    private final Timer generations;
+    private final Map<String, IntSupplier> queues;
+    private final AtomicReference<FitnessCache> fitnessCache;
+    private boolean jmx;
+
+    private SearchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.rotorSettings = new LongAdder();
+        this.ringSettings = new LongAdder();
+        this.plugboards = new LongAdder();
+        this.improvements = new LongAdder();
+        this.bestFitness = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+        this.queues = new ConcurrentHashMap<>();
+        this.fitnessCache = new AtomicReference<>(new FitnessCache(8));
+
+        FunctionCounter.builder("enigma.settings.ranked", rotorSettings, LongAdder::sum)
+                .tag("stage", "rotors").baseUnit("settings").register(registry);
+        FunctionCounter.builder("enigma.settings.ranked", ringSettings, LongAdder::sum)
+                .tag("stage", "rings").baseUnit("settings").register(registry);
+        FunctionCounter.builder("enigma.plugboards.evaluated", plugboards, LongAdder::sum)
+                .baseUnit("plugboards").register(registry);
+        FunctionCounter.builder("enigma.improvements", improvements, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("enigma.fitness.best", bestFitness, DoubleAccumulator::get)
+                .register(registry);
+        this.neighborBatches = Timer.builder("enigma.neighbors.latency")
+                .publishPercentileHistogram().register(registry);
+        this.generations = Timer.builder("enigma.generation.latency")
+                .publishPercentileHistogram().register(registry);
+        FunctionCounter.builder("enigma.cache.requests", fitnessCache, cache -> cache.get().getHits())
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("enigma.cache.requests", fitnessCache, cache -> cache.get().getMisses())
+                .tag("result", "miss").register(registry);
+        Gauge.builder("enigma.cache.hit.ratio", fitnessCache, cache -> cache.get().getHitRate())
+                .register(registry);
+        Gauge.builder("enigma.cache.size", fitnessCache, cache -> cache.get().size())
+                .baseUnit("plugboards").register(registry);
+    }
+
+    public static SearchMetrics get() {
+        return INSTANCE;
+    }
+
+    // Publishes the metrics as MBeans, along with the JVM metrics
+    public synchronized void enableJmx() {
+        if (!jmx) {
+            Metrics.addRegistry(new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM));
+            new JvmMemoryMetrics().bindTo(registry);
+            new JvmGcMetrics().bindTo(registry);
+            new JvmThreadMetrics().bindTo(registry);
+            jmx = true;
+        }
+    }
+
+    public void rotorSettingsRanked(int count) {
+        rotorSettings.add(count);
+    }
+
+    public void ringSettingsRanked(int count) {
+        ringSettings.add(count);
+    }
+
+    public void plugboardsEvaluated(int count) {
+        plugboards.add(count);
+    }
+
+    public void improvement(float fitness) {
+        improvements.increment();
+        bestFitness.accumulate(fitness);
+    }
+
+    // The best fitness gauge follows the decryption that starts
+    public void resetBestFitness() {
+        bestFitness.reset();
+    }
+
+    public void neighborBatch(long nanos) {
+        neighborBatches.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void generation(long nanos) {
+        generations.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Reports the depth of a queue; a later call with the same name replaces the queue
+    public void queue(String name, IntSupplier depth) {
+        if (queues.put(name, depth) == null) {
+            Gauge.builder("enigma.queue.depth", queues, map -> map.getOrDefault(name, () -> 0).getAsInt())
+                    .tag("queue", name).register(registry);
+        }
+    }
+
+    // The cache meters follow the cache of the decryption that starts
+    public void fitnessCache(FitnessCache cache) {
+        fitnessCache.set(cache);
+    }
+
+    // Measures a phase of the decryption while it runs
+    public void phase(String name, Runnable task) {
+        Phase phase = new Phase(name);
+        try {
+            task.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    // Measures a phase of the decryption while it computes its result
+    public <T> T phase(String name, Supplier<T> task) {
+        Phase phase = new Phase(name);
+        try {
+            return task.get();
+        } finally {
+            phase.close();
+        }
+    }
+
+    private final class Phase {
+        private final String name;
+        private final long start;
+        private final long allocated;
+
+        private Phase(String name) {
+            this.name = name;
+            this.start = System.nanoTime();
+            this.allocated = allocatedBytes();
+        }
+
+        void close() {
+            Timer.builder("enigma.phase.duration").tag("phase", name).register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            long end = allocatedBytes();
+            if (allocated >= 0 && end >= 0) {
+                DistributionSummary.builder("enigma.phase.allocated").tag("phase", name).baseUnit("bytes")
+                        .register(registry).record(end - allocated);
+            }
+        }
+    }
+
+    // Bytes allocated so far, -1 when the JVM does not measure them
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        if (TOTAL_ALLOCATED_BYTES != null) {
+            try {
+                return (long) TOTAL_ALLOCATED_BYTES.invoke(allocations);
+            } catch (Throwable e) {
+                return -1;
+            }
+        }
+        // Before JDK 14 only live threads can be measured, so threads ended during the phase are missed
+        long total = 0;
+        for (long bytes : allocations.getThreadAllocatedBytes(allocations.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static MethodHandle totalAllocatedBytes() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(com.sun.management.ThreadMXBean.class,
+                    "getTotalThreadAllocatedBytes", MethodType.methodType(long.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.ScramblerTrace;
+
+/**
+ * Simulated annealing over the plugboards of one rotor setting.
+ *
+ * Independent chains run in parallel on the pool of an {@link EvaluationScheduler}, one per thread of the pool by
+ * default; a search run beside others should ask for its share of the pool instead. Each step of a chain proposes a random single-cable
+ * move (exchanging the partners of two plugged letters, moving one end of a cable to a free letter, or replacing a
+ * cable with one between two free letters) and scores it with its own {@link IncrementalScorer}, which only rescores
+ * the n-grams the changed letters touch. Better moves are always accepted, worse ones with probability
+ * exp(delta / temperature). The temperature cools geometrically after every step; when it reaches the final
+ * temperature, or the chain did not improve its best plugboard for a number of steps, the chain reheats and goes
+ * back to its best plugboard.
+ *
+ * Chains start from the best of the initial plugboards and run in rounds of a fixed number of steps, so stop() and
+ * snapshot requests are honoured between rounds.
+ */
+public class SimulatedAnnealing implements EnigmaHeuristic {
+
+    private static final int ROUND_STEPS = 4096;
+    private static final long MAX_ROUNDS = 100000;
+    private static final int INITIAL_SAMPLE = 1024;
+
+    /**
+     * Temperature schedule of every chain, in units of fitness.
+     */
+    public static final class Schedule {
+        private final double initialTemperature;
+        private final double finalTemperature;
+        private final double cooling;
+        private final long reheatAfter;
+
+        /**
+         * @param initialTemperature Temperature of a chain when it starts or reheats.
+         * @param finalTemperature Temperature at which a chain reheats.
+         * @param cooling Factor applied to the temperature after every step, below 1.
+         * @param reheatAfter Steps without improving the best plugboard of a chain after which it reheats.
+         */
+        public Schedule(double initialTemperature, double finalTemperature, double cooling, long reheatAfter) {
+            this.initialTemperature = initialTemperature;
+            this.finalTemperature = finalTemperature;
+            this.cooling = cooling;
+            this.reheatAfter = reheatAfter;
+        }
+    }
+
+    public static final Schedule DEFAULT_SCHEDULE = new Schedule(10.0, 0.2, 0.9999, 50000);
+
+    private final Rotor[] rotors;
+    private List<PlugboardWiring> initialPlugboards;
+    private final String encryptedMessage;
+    private final Entropy entropy;
+    private final CompiledMachine machine;
+    private final ScramblerTrace scramblerTrace;
+    private final EvaluationScheduler scheduler;
+    private final int chainCount;
+    private Schedule schedule;
+    private List<Chain> chains;
+    private PlugboardWiring bestPlugboard;
+    private volatile float bestFitness;
+    private String bestDecryptedMessage;
+    private ResultSink resultSink;
+    private SearchMetrics metrics;
+    private volatile long steps;
+    private volatile boolean stopped;
+    private volatile boolean snapshotRequested;
+    private volatile SearchCheckpoint.State snapshot;
+
+    public SimulatedAnnealing(Rotor[] rotors, List<PlugboardWiring> initialPlugboards, String encryptedMessage) {
+        this(rotors, initialPlugboards, encryptedMessage, new EvaluationScheduler());
+    }
+
+    public SimulatedAnnealing(Rotor[] rotors, List<PlugboardWiring> initialPlugboards, String encryptedMessage, EvaluationScheduler scheduler) {
+        this(rotors, initialPlugboards, encryptedMessage, scheduler, scheduler.getThreads());
+    }
+
+    public SimulatedAnnealing(Rotor[] rotors, List<PlugboardWiring> initialPlugboards, String encryptedMessage,
+                              EvaluationScheduler scheduler, int chains) {
+        this.rotors = rotors;
+        this.initialPlugboards = initialPlugboards;
+        this.encryptedMessage = encryptedMessage;
+        this.entropy = new Entropy();
+        this.machine = new CompiledMachine(new Plugboard(PlugboardWiring.EMPTY), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+        this.scramblerTrace = machine.trace(CompiledMachine.normalize(encryptedMessage));
+        this.scheduler = scheduler;
+        this.chainCount = chains;
+        this.schedule = DEFAULT_SCHEDULE;
+        this.bestFitness = Float.NEGATIVE_INFINITY;
+        this.resultSink = ResultSink.DISCARD;
+        this.metrics = SearchMetrics.get();
+    }
+
+    public void setSchedule(Schedule schedule) {
+        this.schedule = schedule;
+    }
+
+    public void optimize() {
+        if (chains == null) {
+            chains = startChains(initialStarts());
+        }
+        for (long round = 0; round < SimulatedAnnealing.MAX_ROUNDS && !stopped; round++) {
+            if (snapshotRequested) {
+                captureSnapshot();
+            }
+            scheduler.forEach(chains, chain -> chain.run(SimulatedAnnealing.ROUND_STEPS));
+            steps += (long) chains.size() * SimulatedAnnealing.ROUND_STEPS;
+            metrics.plugboardsEvaluated(chains.size() * SimulatedAnnealing.ROUND_STEPS);
+
+            for (Chain chain : chains) {
+                synchronized (this) {
+                    if (chain.bestFitness > bestFitness) {
+                        bestPlugboard = chain.best;
+                        bestFitness = chain.bestFitness;
+                        bestDecryptedMessage = machine.withPlugboard(bestPlugboard).getCipheredText(encryptedMessage);
+                        metrics.improvement(bestFitness);
+                        resultSink.submit(ResultSink.searchName(rotors), bestFitness, bestPlugboard.toString(), bestDecryptedMessage);
+                    }
+                }
+            }
+        }
+        captureSnapshot();
+    }
+
+    // The best initial plugboards, one per chain
+    private List<PlugboardWiring> initialStarts() {
+        List<PlugboardWiring> sample = initialPlugboards.subList(0, Math.min(INITIAL_SAMPLE, initialPlugboards.size()));
+        float[] scores = new BatchEvaluator(entropy, scramblerTrace).score(sample);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < sample.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Float.compare(scores[b], scores[a]));
+        List<PlugboardWiring> starts = new ArrayList<>();
+        for (int i = 0; i < Math.min(chainCount, order.size()); i++) {
+            starts.add(sample.get(order.get(i)));
+        }
+        return starts;
+    }
+
+    private List<Chain> startChains(List<PlugboardWiring> starts) {
+        SplittableRandom random = new SplittableRandom();
+        List<Chain> started = new ArrayList<>();
+        for (int i = 0; i < chainCount; i++) {
+            PlugboardWiring start = i < starts.size() ? starts.get(i) : PlugboardWiring.random(new Random(random.nextLong()), 10);
+            started.add(new Chain(start, random.split()));
+        }
+        return started;
+    }
+
+    public void stop() {
+        this.stopped = true;
+    }
+
+    public void requestSnapshot() {
+        this.snapshotRequested = true;
+    }
+
+    public SearchCheckpoint.State getSnapshot() {
+        return snapshot;
+    }
+
+    // Chains continue from their plugboards at the checkpoint, with a fresh temperature schedule
+    public void restore(SearchCheckpoint.State state) {
+        List<PlugboardWiring> starts = new ArrayList<>();
+        for (long key : state.getPending()) {
+            starts.add(PlugboardWiring.fromKey(key));
+        }
+        this.initialPlugboards = new ArrayList<>();
+        this.chains = startChains(starts);
+        if (state.getBestPlugboard() != null) {
+            this.bestPlugboard = state.getBestPlugboard();
+            this.bestFitness = state.getBestFitness();
+            this.bestDecryptedMessage = machine.withPlugboard(bestPlugboard).getCipheredText(encryptedMessage);
+        }
+        this.steps = state.getIterations();
+        this.snapshot = state;
+    }
+
+    // Called from the optimizing thread, between two rounds
+    private void captureSnapshot() {
+        this.snapshotRequested = false;
+        long[] pending = new long[chains == null ? 0 : chains.size()];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = chains.get(i).current.key();
+        }
+        this.snapshot = new SearchCheckpoint.State(rotors, bestPlugboard, bestFitness, steps, pending);
+    }
+
+    public float getBestFitness() {
+        return bestFitness;
+    }
+
+    public String getBestPlugboard() {
+        return bestPlugboard == null ? null : bestPlugboard.toString();
+    }
+
+    public String getBestDecryptedMessage() {
+        return bestDecryptedMessage;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public void setResultSink(ResultSink resultSink) {
+        this.resultSink = resultSink;
+    }
+
+    // A random move of one cable, keeping the number of cables
+    static PlugboardWiring propose(PlugboardWiring plugboard, SplittableRandom random) {
+        int cables = plugboard.cables();
+        int free = 26 - 2 * cables;
+        if (cables == 0) {
+            return plugboard;
+        }
+        int first = plugged(plugboard, -1, random);
+        int move = random.nextInt(3);
+        if (move == 0 && cables >= 2 || free == 0) {
+            return cables >= 2 ? plugboard.swap(first, plugged(plugboard, first, random)) : plugboard;
+        }
+        if (move == 1 || free == 1) {
+            return plugboard.replace(first, first, unplugged(plugboard, -1, random));
+        }
+        int letter = unplugged(plugboard, -1, random);
+        return plugboard.replace(first, letter, unplugged(plugboard, letter, random));
+    }
+
+    // A random plugged letter outside the cable of another one
+    private static int plugged(PlugboardWiring plugboard, int other, SplittableRandom random) {
+        int c;
+        do {
+            c = random.nextInt(26);
+        } while (!plugboard.isPlugged(c) || (other >= 0 && (c == other || c == plugboard.partner(other))));
+        return c;
+    }
+
+    // A random free letter other than the given one
+    private static int unplugged(PlugboardWiring plugboard, int other, SplittableRandom random) {
+        int c;
+        do {
+            c = random.nextInt(26);
+        } while (plugboard.isPlugged(c) || c == other);
+        return c;
+    }
+
+    /**
+     * One annealing chain, only run by one thread at a time.
+     */
+    private final class Chain {
+        private final IncrementalScorer scorer;
+        private final SplittableRandom random;
+        private PlugboardWiring current;
+        private float currentFitness;
+        private PlugboardWiring best;
+        private float bestFitness;
+        private double temperature;
+        private long sinceImprovement;
+
+        private Chain(PlugboardWiring start, SplittableRandom random) {
+            this.scorer = new IncrementalScorer(entropy, scramblerTrace);
+            this.random = random;
+            reset(start);
+            this.best = start;
+            this.bestFitness = currentFitness;
+        }
+
+        private void reset(PlugboardWiring plugboard) {
+            scorer.setPlugboard(plugboard.getMapping());
+            current = plugboard;
+            currentFitness = scorer.getFitness();
+            temperature = schedule.initialTemperature;
+            sinceImprovement = 0;
+        }
+
+        private void run(int steps) {
+            for (int step = 0; step < steps; step++) {
+                PlugboardWiring candidate = propose(current, random);
+                float fitness = scorer.getFitness(candidate.getMapping());
+                if (fitness >= currentFitness || random.nextDouble() < Math.exp((fitness - currentFitness) / temperature)) {
+                    scorer.accept(candidate.getMapping());
+                    current = candidate;
+                    currentFitness = fitness;
+                }
+                if (currentFitness > bestFitness) {
+                    best = current;
+                    bestFitness = currentFitness;
+                    sinceImprovement = 0;
+                } else {
+                    sinceImprovement++;
+                }
+                temperature *= schedule.cooling;
+                if (temperature < schedule.finalTemperature || sinceImprovement >= schedule.reheatAfter) {
+                    reset(best);
+                }
+            }
+        }
+    }
+}
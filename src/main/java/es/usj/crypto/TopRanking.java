@@ -0,0 +1,127 @@
+package es.usj.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the K best scored candidates seen so far, identified by a {@code long} key.
+ *
+ * Candidates are stored in a bounded min-heap of primitive arrays, so offering a candidate never allocates and the
+ * memory used only depends on K. Rankings can be filled by several threads, or filled per worker and merged.
+ */
+public class TopRanking {
+
+    private final long[] keys;
+    private final float[] scores;
+    private int size;
+
+    public TopRanking(int capacity) {
+        this.keys = new long[capacity];
+        this.scores = new float[capacity];
+        this.size = 0;
+    }
+
+    public synchronized boolean offer(long key, float score) {
+        if (size < keys.length) {
+            keys[size] = key;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (size == 0 || score <= scores[0]) {
+            return false;
+        }
+        // Replace the worst kept candidate
+        keys[0] = key;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    public void merge(TopRanking other) {
+        long[] otherKeys;
+        float[] otherScores;
+        synchronized (other) {
+            otherKeys = Arrays.copyOf(other.keys, other.size);
+            otherScores = Arrays.copyOf(other.scores, other.size);
+        }
+        for (int i = 0; i < otherKeys.length; i++) {
+            offer(otherKeys[i], otherScores[i]);
+        }
+    }
+
+    public synchronized float threshold() {
+        return size < keys.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Keys sorted by descending score
+    public synchronized long[] getKeys() {
+        Integer[] order = sortedOrder();
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = keys[order[i]];
+        }
+        return sorted;
+    }
+
+    // Scores sorted in descending order
+    public synchronized float[] getScores() {
+        Integer[] order = sortedOrder();
+        float[] sorted = new float[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = scores[order[i]];
+        }
+        return sorted;
+    }
+
+    private Integer[] sortedOrder() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+        return order;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,579 @@
+package es.usj.crypto.enigma;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static es.usj.crypto.enigma.RotorWiring.SIZE;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Represents an Enigma machine compiled into integer lookup tables.
+ *
+ * It produces exactly the same output as {@link Machine}, but every component is resolved once at construction time:
+ * <ul>
+ *   <li>Plugboard and Reflector pairings become 26-entry arrays.</li>
+ *   <li>Each rotor becomes a pair of forward/backward tables indexed by rotor position and character.</li>
+ *   <li>Rotor stepping is an odometer over three integers, compared against the notch of each rotor.</li>
+ * </ul>
+ *
+ * The machine works on pre-normalized text (see {@link #normalize(String)}), where the characters of the ALPHABET are
+ * stored as values 0 to 25 and any other character is stored as its negated code. Non-alphabet characters are copied
+ * unchanged and do not step the rotors.
+ *
+ * Instances hold no mutable state: every call to {@link #encrypt(byte[], byte[])} starts from the initial rotor
+ * positions, so a single instance can be shared by any number of threads.
+ */
+public class CompiledMachine {
+
+    // Plugboard and reflector substitutions
+    private final int[] plugboard;
+    private final int[] reflector;
+
+    // Rotor tables
+    private final RotorWiring rightRotor;
+    private final RotorWiring middleRotor;
+    private final RotorWiring leftRotor;
+
+    // Initial rotor positions, expressed as indexes in the ring sequence
+    private final int rightHead;
+    private final int middleHead;
+    private final int leftHead;
+
+    // Head values at which the right and middle rotors make the rotor to their left turn over
+    private final int rightNotch;
+    private final int middleNotch;
+
+    /**
+     * Compiles an Enigma machine with the specified components.
+     *
+     * No rotor configuration repetition is allowed; each rotor must have a unique configuration.
+     * Rotors are compiled from their initial position.
+     *
+     * @param plugboard Pair mapping for the alphabet characters (only 10 pairings are allowed).
+     * @param rightRotor The rotor to be placed in the right position.
+     * @param middleRotor The rotor to be placed in the middle position.
+     * @param leftRotor The rotor to be placed in the left position.
+     * @param reflector Pair mapping for the alphabet characters (13 pairings are required for the reflector).
+     */
+    public CompiledMachine(
+            Plugboard plugboard,
+            Rotor rightRotor,
+            Rotor middleRotor,
+            Rotor leftRotor,
+            Reflector reflector) {
+        assertTrue("Each rotor configuration should be different",
+                !leftRotor.equals(rightRotor) && !rightRotor.equals(middleRotor) && !middleRotor.equals(leftRotor));
+        this.plugboard = toIntArray(plugboard.getWiring());
+        this.reflector = new int[SIZE];
+        for (int c = 0; c < SIZE; c++) {
+            this.reflector[c] = reflector.getReflection((char) ('A' + c)) - 'A';
+        }
+        this.rightRotor = rightRotor.getWiring();
+        this.middleRotor = middleRotor.getWiring();
+        this.leftRotor = leftRotor.getWiring();
+        this.rightHead = rightRotor.getHead();
+        this.middleHead = middleRotor.getHead();
+        this.leftHead = leftRotor.getHead();
+        this.rightNotch = rightRotor.getNotchHead();
+        this.middleNotch = middleRotor.getNotchHead();
+    }
+
+    /**
+     * Constructs a copy of a compiled machine with a different plugboard, ring settings or rotor positions.
+     *
+     * @param machine The compiled machine whose rotors and reflector are reused.
+     * @param plugboard The plugboard substitution table.
+     * @param rightNotch The head value at which the right rotor makes the middle rotor turn over.
+     * @param middleNotch The head value at which the middle rotor makes the left rotor turn over.
+     * @param rightHead The initial head of the right rotor.
+     * @param middleHead The initial head of the middle rotor.
+     * @param leftHead The initial head of the left rotor.
+     */
+    private CompiledMachine(CompiledMachine machine, int[] plugboard, int rightNotch, int middleNotch,
+                            int rightHead, int middleHead, int leftHead) {
+        this.plugboard = plugboard;
+        this.reflector = machine.reflector;
+        this.rightRotor = machine.rightRotor;
+        this.middleRotor = machine.middleRotor;
+        this.leftRotor = machine.leftRotor;
+        this.rightHead = rightHead;
+        this.middleHead = middleHead;
+        this.leftHead = leftHead;
+        this.rightNotch = rightNotch;
+        this.middleNotch = middleNotch;
+    }
+
+    /**
+     * Creates a compiled machine with the same rotors and reflector as this one, and a different plugboard.
+     *
+     * No validation nor rotor compilation is performed, so this is the cheapest way to try many plugboards.
+     *
+     * @param plugboard The cables of the new plugboard.
+     * @return The compiled machine with the given plugboard.
+     */
+    public CompiledMachine withPlugboard(PlugboardWiring plugboard) {
+        return new CompiledMachine(this, toIntArray(plugboard), rightNotch, middleNotch, rightHead, middleHead, leftHead);
+    }
+
+    /**
+     * Creates a compiled machine with the same components as this one, and different ring settings for the right and
+     * middle rotors. The ring setting of the left rotor has no effect, as no rotor depends on its notch.
+     *
+     * The compiled rotor tables are reused, so sweeping every ring setting does not compile any rotor.
+     *
+     * @param rightRingSetting The ring setting of the right rotor (A-Z).
+     * @param middleRingSetting The ring setting of the middle rotor (A-Z).
+     * @return The compiled machine with the given ring settings.
+     */
+    public CompiledMachine withRingSettings(char rightRingSetting, char middleRingSetting) {
+        return new CompiledMachine(this, plugboard,
+                rightRotor.notchHead(rightRingSetting), middleRotor.notchHead(middleRingSetting),
+                rightHead, middleHead, leftHead);
+    }
+
+    /**
+     * Creates a compiled machine with the same components as this one, and different initial rotor positions.
+     *
+     * The compiled rotor tables are reused, so enumerating every rotor position does not compile any rotor.
+     *
+     * @param rightPosition The initial position of the right rotor (A-Z).
+     * @param middlePosition The initial position of the middle rotor (A-Z).
+     * @param leftPosition The initial position of the left rotor (A-Z).
+     * @return The compiled machine with the given rotor positions.
+     */
+    public CompiledMachine withPositions(char rightPosition, char middlePosition, char leftPosition) {
+        return new CompiledMachine(this, plugboard, rightNotch, middleNotch,
+                rightRotor.head(rightPosition), middleRotor.head(middlePosition), leftRotor.head(leftPosition));
+    }
+
+    /**
+     * Ciphers a pre-normalized text into the supplied buffer.
+     *
+     * No memory is allocated while ciphering. The output buffer must be at least as long as the input.
+     *
+     * @param input The normalized text to be ciphered.
+     * @param output The buffer that receives the normalized ciphered text.
+     */
+    public void encrypt(byte[] input, byte[] output) {
+        final int[] plug = this.plugboard;
+        final int[] reflect = this.reflector;
+        final int[] rightForward = rightRotor.forward;
+        final int[] rightBackward = rightRotor.backward;
+        final int[] middleForward = middleRotor.forward;
+        final int[] middleBackward = middleRotor.backward;
+        final int[] leftForward = leftRotor.forward;
+        final int[] leftBackward = leftRotor.backward;
+        final int rightNotch = this.rightNotch;
+        final int middleNotch = this.middleNotch;
+
+        int right = rightHead;
+        int middle = middleHead;
+        int left = leftHead;
+
+        for (int i = 0; i < input.length; i++) {
+            int c = input[i];
+            if (c < 0) {
+                output[i] = (byte) c;
+                continue;
+            }
+
+            // Update the rotor positions before encrypting the character
+            right = right == 0 ? SIZE - 1 : right - 1;
+            if (right == rightNotch) {
+                middle = middle == 0 ? SIZE - 1 : middle - 1;
+            }
+            if (middle == middleNotch) {
+                left = left == 0 ? SIZE - 1 : left - 1;
+            }
+
+            c = plug[c];
+            c = rightForward[right * SIZE + c];
+            c = middleForward[middle * SIZE + c];
+            c = leftForward[left * SIZE + c];
+            c = reflect[c];
+            c = leftBackward[left * SIZE + c];
+            c = middleBackward[middle * SIZE + c];
+            c = rightBackward[right * SIZE + c];
+            output[i] = (byte) plug[c];
+        }
+    }
+
+    /**
+     * Counts the letters of the ciphered text of a pre-normalized text, without writing the ciphered text.
+     *
+     * This is the cheapest way to compute statistics that only depend on letter frequencies, such as the index of
+     * coincidence, since the ciphered text is neither stored nor read again. No memory is allocated.
+     *
+     * @param input The normalized text to be ciphered.
+     * @param counts The buffer of at least 26 counters that receives the number of times each letter (0-25) appears
+     *               in the ciphered text. It is cleared first.
+     */
+    public void countLetters(byte[] input, int[] counts) {
+        final int[] plug = this.plugboard;
+        final int[] reflect = this.reflector;
+        final int[] rightForward = rightRotor.forward;
+        final int[] rightBackward = rightRotor.backward;
+        final int[] middleForward = middleRotor.forward;
+        final int[] middleBackward = middleRotor.backward;
+        final int[] leftForward = leftRotor.forward;
+        final int[] leftBackward = leftRotor.backward;
+        final int rightNotch = this.rightNotch;
+        final int middleNotch = this.middleNotch;
+
+        int right = rightHead;
+        int middle = middleHead;
+        int left = leftHead;
+
+        Arrays.fill(counts, 0, SIZE, 0);
+        for (int i = 0; i < input.length; i++) {
+            int c = input[i];
+            if (c < 0) {
+                continue;
+            }
+
+            // Update the rotor positions before encrypting the character
+            right = right == 0 ? SIZE - 1 : right - 1;
+            if (right == rightNotch) {
+                middle = middle == 0 ? SIZE - 1 : middle - 1;
+            }
+            if (middle == middleNotch) {
+                left = left == 0 ? SIZE - 1 : left - 1;
+            }
+
+            c = plug[c];
+            c = rightForward[right * SIZE + c];
+            c = middleForward[middle * SIZE + c];
+            c = leftForward[left * SIZE + c];
+            c = reflect[c];
+            c = leftBackward[left * SIZE + c];
+            c = middleBackward[middle * SIZE + c];
+            c = rightBackward[right * SIZE + c];
+            counts[plug[c]]++;
+        }
+    }
+
+    /**
+     * Counts the letters of the ciphered text of a pre-normalized text with a scrambler table, without writing the
+     * ciphered text.
+     *
+     * Each letter costs a single table lookup through the scrambler, so this is the cheapest way to compute letter
+     * frequency statistics for many rotor positions of the same rotor order. No memory is allocated.
+     *
+     * @param input The normalized text to be ciphered.
+     * @param counts The buffer of at least 26 counters that receives the number of times each letter (0-25) appears
+     *               in the ciphered text. It is cleared first.
+     * @param table The scrambler table of a machine with the same rotors and reflector as this one (see
+     *              {@link #scramblerTable()}).
+     */
+    public void countLetters(byte[] input, int[] counts, ScramblerTable table) {
+        final int[] plug = this.plugboard;
+        final byte[] scrambler = table.table;
+        final int rightNotch = this.rightNotch;
+        final int middleNotch = this.middleNotch;
+
+        int right = rightHead;
+        int middle = middleHead;
+        int left = leftHead;
+
+        Arrays.fill(counts, 0, SIZE, 0);
+        for (int i = 0; i < input.length; i++) {
+            int c = input[i];
+            if (c < 0) {
+                continue;
+            }
+
+            // Update the rotor positions before encrypting the character
+            right = right == 0 ? SIZE - 1 : right - 1;
+            if (right == rightNotch) {
+                middle = middle == 0 ? SIZE - 1 : middle - 1;
+            }
+            if (middle == middleNotch) {
+                left = left == 0 ? SIZE - 1 : left - 1;
+            }
+
+            counts[plug[scrambler[((left * SIZE + middle) * SIZE + right) * SIZE + plug[c]]]]++;
+        }
+    }
+
+    /**
+     * Records the rotor and reflector substitution of every rotor state of this machine.
+     *
+     * The plugboard, ring settings and rotor positions of this machine are not part of the table, so the resulting table
+     * can be used by any machine with the same rotors and reflector (see {@link ScramblerTable}).
+     *
+     * @return The scrambler table of the rotors and reflector of this machine.
+     */
+    public ScramblerTable scramblerTable() {
+        final int[] reflect = this.reflector;
+        final int[] rightForward = rightRotor.forward;
+        final int[] rightBackward = rightRotor.backward;
+        final int[] middleForward = middleRotor.forward;
+        final int[] middleBackward = middleRotor.backward;
+        final int[] leftForward = leftRotor.forward;
+        final int[] leftBackward = leftRotor.backward;
+
+        byte[] table = new byte[SIZE * SIZE * SIZE * SIZE];
+        int position = 0;
+        for (int left = 0; left < SIZE; left++) {
+            for (int middle = 0; middle < SIZE; middle++) {
+                for (int right = 0; right < SIZE; right++) {
+                    for (int c = 0; c < SIZE; c++) {
+                        int output = rightForward[right * SIZE + c];
+                        output = middleForward[middle * SIZE + output];
+                        output = leftForward[left * SIZE + output];
+                        output = reflect[output];
+                        output = leftBackward[left * SIZE + output];
+                        output = middleBackward[middle * SIZE + output];
+                        table[position++] = (byte) rightBackward[right * SIZE + output];
+                    }
+                }
+            }
+        }
+        return new ScramblerTable(table);
+    }
+
+    /**
+     * Records the rotor and reflector substitution applied at every letter of a normalized text.
+     *
+     * The plugboard of this machine is not part of the trace, so the resulting trace can be used to cipher the same
+     * text under any plugboard (see {@link ScramblerTrace}).
+     *
+     * @param input The normalized text.
+     * @return The scrambler trace of the text for the rotor settings of this machine.
+     */
+    public ScramblerTrace trace(byte[] input) {
+        final int[] reflect = this.reflector;
+        final int[] rightForward = rightRotor.forward;
+        final int[] rightBackward = rightRotor.backward;
+        final int[] middleForward = middleRotor.forward;
+        final int[] middleBackward = middleRotor.backward;
+        final int[] leftForward = leftRotor.forward;
+        final int[] leftBackward = leftRotor.backward;
+        final int rightNotch = this.rightNotch;
+        final int middleNotch = this.middleNotch;
+
+        int letters = 0;
+        for (byte c : input) {
+            if (c >= 0) {
+                letters++;
+            }
+        }
+        byte[] trace = new byte[letters * SIZE];
+
+        int right = rightHead;
+        int middle = middleHead;
+        int left = leftHead;
+
+        for (int position = 0; position < trace.length; position += SIZE) {
+            // Update the rotor positions before encrypting the character
+            right = right == 0 ? SIZE - 1 : right - 1;
+            if (right == rightNotch) {
+                middle = middle == 0 ? SIZE - 1 : middle - 1;
+            }
+            if (middle == middleNotch) {
+                left = left == 0 ? SIZE - 1 : left - 1;
+            }
+
+            for (int c = 0; c < SIZE; c++) {
+                int output = rightForward[right * SIZE + c];
+                output = middleForward[middle * SIZE + output];
+                output = leftForward[left * SIZE + output];
+                output = reflect[output];
+                output = leftBackward[left * SIZE + output];
+                output = middleBackward[middle * SIZE + output];
+                output = rightBackward[right * SIZE + output];
+                trace[position + c] = (byte) output;
+            }
+        }
+
+        return new ScramblerTrace(input, trace);
+    }
+
+    /**
+     * Creates a compiled machine with the same components as this one, and the ring setting of the right rotor that
+     * makes the middle rotor turn over when a given letter is ciphered (and every 26 letters before and after it).
+     *
+     * @param letter The index of the letter, not counting blank spaces.
+     * @return The compiled machine with the right ring setting for that turnover.
+     */
+    public CompiledMachine withRightTurnover(int letter) {
+        int notch = Math.floorMod(rightHead - (letter + 1), SIZE);
+        return new CompiledMachine(this, plugboard, notch, middleNotch, rightHead, middleHead, leftHead);
+    }
+
+    /**
+     * Gets the ring setting of the right rotor, the one that sets when the middle rotor turns over.
+     *
+     * @return The ring setting of the right rotor (A-Z).
+     */
+    public char getRightRingSetting() {
+        return (char) ('A' + Math.floorMod(rightRotor.notch - rightNotch, SIZE));
+    }
+
+    /**
+     * Creates a compiled machine with the same components as this one, and the ring setting of the middle rotor that
+     * makes the left rotor turn over at every letter ciphered while the middle rotor is at a given head.
+     *
+     * @param head The head of the middle rotor, as recorded by {@link #positions(int, int[])}.
+     * @return The compiled machine with the middle ring setting for that turnover.
+     */
+    public CompiledMachine withMiddleTurnover(int head) {
+        return new CompiledMachine(this, plugboard, rightNotch, head, rightHead, middleHead, leftHead);
+    }
+
+    /**
+     * Gets the ring setting of the middle rotor, the one that sets when the left rotor turns over.
+     *
+     * @return The ring setting of the middle rotor (A-Z).
+     */
+    public char getMiddleRingSetting() {
+        return (char) ('A' + Math.floorMod(middleRotor.notch - middleNotch, SIZE));
+    }
+
+    /**
+     * Creates a compiled machine with the same components as this one, and the initial position of the left rotor
+     * that puts it at a given head when a letter is ciphered.
+     *
+     * @param letter The index of the letter, not counting blank spaces.
+     * @param head The head of the left rotor at that letter, as recorded by {@link #positions(int, int[])}.
+     * @return The compiled machine with that initial left rotor position.
+     */
+    public CompiledMachine withLeftHead(int letter, int head) {
+        int[] positions = new int[3];
+        positions(letter, positions);
+        return new CompiledMachine(this, plugboard, rightNotch, middleNotch, rightHead, middleHead,
+                Math.floorMod(leftHead + head - positions[2], SIZE));
+    }
+
+    /**
+     * Gets the initial position of the left rotor.
+     *
+     * @return The initial position of the left rotor (A-Z).
+     */
+    public char getLeftPosition() {
+        return (char) ('A' + leftRotor.forward[leftHead * SIZE]);
+    }
+
+    /**
+     * Records the rotor positions used at a window of consecutive letters, so that single characters of the window
+     * can be scrambled with {@link #scramble(int[], int, int)} without tracing the whole window.
+     *
+     * The rotors come back to their initial positions every 26 * 26 letters, so the cost does not grow with the index
+     * of the first letter.
+     *
+     * @param first The index of the first letter of the window, not counting blank spaces.
+     * @param positions The buffer that receives the right, middle and left rotor positions of each letter of the
+     *                  window; its length divided by 3 is the number of letters.
+     */
+    public void positions(int first, int[] positions) {
+        final int rightNotch = this.rightNotch;
+        final int middleNotch = this.middleNotch;
+
+        int right = rightHead;
+        int middle = middleHead;
+        int left = leftHead;
+
+        int steps = first % (SIZE * SIZE);
+        for (int step = 0, position = -3; position < positions.length - 3; step++) {
+            // Update the rotor positions before encrypting the character
+            right = right == 0 ? SIZE - 1 : right - 1;
+            if (right == rightNotch) {
+                middle = middle == 0 ? SIZE - 1 : middle - 1;
+            }
+            if (middle == middleNotch) {
+                left = left == 0 ? SIZE - 1 : left - 1;
+            }
+            if (step >= steps) {
+                position += 3;
+                positions[position] = right;
+                positions[position + 1] = middle;
+                positions[position + 2] = left;
+            }
+        }
+    }
+
+    /**
+     * Gets the rotor and reflector substitution of a single character at a letter of a window.
+     *
+     * @param positions The rotor positions of the window (see {@link #positions(int, int[])}).
+     * @param letter The index of the letter in the window.
+     * @param c The character index (0-25) entering the rotors.
+     * @return The character index (0-25) leaving the rotors.
+     */
+    public int scramble(int[] positions, int letter, int c) {
+        int right = positions[letter * 3];
+        int middle = positions[letter * 3 + 1];
+        int left = positions[letter * 3 + 2];
+        c = rightRotor.forward[right * SIZE + c];
+        c = middleRotor.forward[middle * SIZE + c];
+        c = leftRotor.forward[left * SIZE + c];
+        c = reflector[c];
+        c = leftRotor.backward[left * SIZE + c];
+        c = middleRotor.backward[middle * SIZE + c];
+        return rightRotor.backward[right * SIZE + c];
+    }
+
+    /**
+     * Ciphers a given plaintext string into ciphertext.
+     *
+     * Convenience method with the same contract as {@link Machine#getCipheredText(String)}.
+     *
+     * @param plainText A string containing the plaintext (letters and spaces) to be encrypted.
+     * @return The ciphertext resulting from the encryption process.
+     */
+    public String getCipheredText(String plainText) {
+        byte[] input = normalize(plainText);
+        byte[] output = new byte[input.length];
+        encrypt(input, output);
+        return denormalize(output);
+    }
+
+    /**
+     * Converts a plugboard wiring into an integer substitution table.
+     *
+     * @param wiring The plugboard wiring.
+     * @return The plugged character index of each character index.
+     */
+    private static int[] toIntArray(PlugboardWiring wiring) {
+        int[] table = new int[SIZE];
+        for (int c = 0; c < SIZE; c++) {
+            table[c] = wiring.partner(c);
+        }
+        return table;
+    }
+
+    /**
+     * Converts a text into the normalized form used by the compiled machine.
+     *
+     * The text is converted to uppercase, and it must consist of characters from the ALPHABET and blank spaces.
+     *
+     * @param text A string containing letters and blank spaces.
+     * @return The normalized text.
+     */
+    public static byte[] normalize(String text) {
+        text = text.toUpperCase(Locale.ROOT);
+        assertTrue("Plaintext contains characters not in the ALPHABET or not considered blank space", text.matches("[A-Z\\t\\n\\f\\r\\s]+"));
+        byte[] normalized = new byte[text.length()];
+        for (int i = 0; i < normalized.length; i++) {
+            char c = text.charAt(i);
+            normalized[i] = (byte) (c >= 'A' && c <= 'Z' ? c - 'A' : -c);
+        }
+        return normalized;
+    }
+
+    /**
+     * Converts a normalized text back into a string.
+     *
+     * @param normalized The normalized text.
+     * @return The text as a string of uppercase letters and blank spaces.
+     */
+    public static String denormalize(byte[] normalized) {
+        char[] text = new char[normalized.length];
+        for (int i = 0; i < text.length; i++) {
+            int c = normalized[i];
+            text[i] = (char) (c >= 0 ? 'A' + c : -c);
+        }
+        return new String(text);
+    }
+
+}
@@ -22,6 +22,10 @@ import static org.junit.Assert.assertTrue;
  *   <li>The middle and left rotors rotate only if the rotor to their right is in the notch position.</li>
  * </ul>
  *
+ * Rotor positions are kept in {@link RotorState} instances owned by the machine, so the {@link Rotor} instances can be
+ * shared between machines. Consecutive calls to {@link #getCipheredText(String)} continue from the current rotor
+ * positions, and {@link #reset()} moves the rotors back to their initial positions.
+ *
  * Encryption follows this flow:
  * <pre>
  * plainText >>
@@ -40,9 +44,9 @@ public class Machine {
 
     // Components of the Enigma machine
     private final Plugboard plugboard;
-    private final Rotor rightRotor;
-    private final Rotor middleRotor;
-    private final Rotor leftRotor;
+    private final RotorState rightRotor;
+    private final RotorState middleRotor;
+    private final RotorState leftRotor;
     private final Reflector reflector;
 
     /**
@@ -65,12 +69,21 @@ public class Machine {
         assertTrue("Each rotor configuration should be different",
                 !leftRotor.equals(rightRotor) && !rightRotor.equals(middleRotor) && !middleRotor.equals(rightRotor));
         this.plugboard = plugboard;
-        this.leftRotor = leftRotor;
-        this.middleRotor = middleRotor;
-        this.rightRotor = rightRotor;
+        this.leftRotor = leftRotor.newState();
+        this.middleRotor = middleRotor.newState();
+        this.rightRotor = rightRotor.newState();
         this.reflector = reflector;
     }
 
+    /**
+     * Moves every rotor back to its initial position.
+     */
+    public void reset() {
+        rightRotor.reset();
+        middleRotor.reset();
+        leftRotor.reset();
+    }
+
     /**
      * Ciphers a given plaintext string into ciphertext.
      *
@@ -1,8 +1,5 @@
 package es.usj.crypto.enigma;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -13,6 +10,9 @@ import static org.junit.Assert.assertTrue;
  * Each character can only be swapped with another character, and a character can never be replaced by itself.
  * A standard machine was equipped with a set of 10 cables, allowing up to 10 character pairings.
  * Characters without a pairing in the plugboard pass through unchanged.
+ *
+ * Pairings are stored as a {@link PlugboardWiring}. Searches that already work with wirings can build a Plugboard
+ * directly from one, skipping the parsing and validation of the string form.
  */
 public class Plugboard {
 
@@ -20,7 +20,7 @@ public class Plugboard {
     private static final int PLUGBOARD_PAIRINGS = 10;
 
     // Stores the character-to-character mapping for the plugboard
-    private final Map<Character, Character> mapping;
+    private final PlugboardWiring wiring;
 
     /**
      * Constructs the plugboard with the provided pairings.
@@ -30,8 +30,6 @@ public class Plugboard {
      */
     public Plugboard(String input) {
 
-        mapping = new HashMap<>();
-
         if (!input.isEmpty()) {
             // Validate that no character from the ALPHABET appears more than once in the input
             for (int i = 0; i < Machine.ALPHABET.length(); i++) {
@@ -42,14 +40,21 @@ public class Plugboard {
 
             // Validate that exactly 10 pairs of characters are provided
             assertEquals("Plugboard accepts exactly " + PLUGBOARD_PAIRINGS + " mappings", PLUGBOARD_PAIRINGS, input.split(":").length);
-
-            // Populate the character-to-character mappings
-            for (String reflection : input.split(":")) {
-                assertEquals("Mapping " + reflection + " should contain 2 characters", 2, reflection.length());
-                mapping.put(reflection.charAt(0), reflection.charAt(1));
-                mapping.put(reflection.charAt(1), reflection.charAt(0));
-            }
         }
+
+        // Populate the character-to-character mappings, validating that each mapping contains 2 characters
+        wiring = PlugboardWiring.parse(input);
+    }
+
+    /**
+     * Constructs the plugboard from an existing wiring, without further validation.
+     *
+     * Any number of cables is accepted, so partial plugboards can be used while searching.
+     *
+     * @param wiring The cables of the plugboard.
+     */
+    public Plugboard(PlugboardWiring wiring) {
+        this.wiring = wiring;
     }
 
     /**
@@ -62,7 +67,29 @@ public class Plugboard {
      * @return The swapped character, or the original character if it is not part of the ALPHABET or not paired.
      */
     public char getPlug(char input) {
-        return mapping.get(input) == null ? input : mapping.get(input);
+        int index = input - 'A';
+        return index >= 0 && index < Machine.ALPHABET.length() ? (char) ('A' + wiring.partner(index)) : input;
+    }
+
+    /**
+     * Gets the plugboard pairings as an array of character indexes.
+     *
+     * Position {@code i} of the array holds the index (0-25) of the character the i-th character of the ALPHABET is
+     * swapped with; characters without a pairing are mapped to themselves.
+     *
+     * @return A new 26-entry array with the plugboard substitution.
+     */
+    public byte[] toArray() {
+        return wiring.getMapping().clone();
+    }
+
+    /**
+     * Gets the cables of the plugboard.
+     *
+     * @return The plugboard wiring.
+     */
+    public PlugboardWiring getWiring() {
+        return wiring;
     }
 
 }
@@ -0,0 +1,355 @@
+package es.usj.crypto.enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static es.usj.crypto.enigma.Machine.ALPHABET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Represents a set of plugboard cables as a compact, immutable value.
+ *
+ * The wiring is stored as a 26-byte involution: position {@code i} holds the index (0-25) of the character the i-th
+ * character of the ALPHABET is plugged to, or {@code i} itself when it has no cable. Every operation returns a new
+ * wiring in constant time, so plugboard searches can explore neighbors without parsing or building strings.
+ *
+ * Each wiring has a canonical 64-bit {@link #key()}, which is the same for every way of writing the same cables.
+ * Strings are only produced by {@link #toString()}, in the same colon-separated format accepted by {@link Plugboard}.
+ */
+public final class PlugboardWiring {
+
+    // Number of characters on the plugboard
+    private static final int SIZE = ALPHABET.length();
+    // Bits used by the set of plugged characters in the key
+    private static final int MASK_BITS = SIZE;
+
+    // Wiring without cables
+    public static final PlugboardWiring EMPTY = new PlugboardWiring(identity());
+
+    // Plugged character of each character of the ALPHABET
+    private final byte[] mapping;
+
+    /**
+     * Constructs a wiring from a mapping that is known to be an involution.
+     *
+     * @param mapping The plugged character of each character. It is not copied.
+     */
+    private PlugboardWiring(byte[] mapping) {
+        this.mapping = mapping;
+    }
+
+    /**
+     * Parses a wiring from a colon-separated list of pairs, as used by {@link Plugboard}.
+     *
+     * Any number of cables is accepted, but no character can be plugged twice.
+     *
+     * @param pairs A string of character pairs separated by ':' (for example "AB:CD"), or an empty string.
+     * @return The wiring with the given cables.
+     */
+    public static PlugboardWiring parse(String pairs) {
+        byte[] mapping = identity();
+        if (!pairs.isEmpty()) {
+            for (String pair : pairs.split(":")) {
+                assertEquals("Mapping " + pair + " should contain 2 characters", 2, pair.length());
+                int first = pair.charAt(0) - 'A';
+                int second = pair.charAt(1) - 'A';
+                assertTrue("Characters of mapping " + pair + " should be different characters of the ALPHABET",
+                        first >= 0 && first < SIZE && second >= 0 && second < SIZE && first != second);
+                assertTrue("Character " + pair.charAt(0) + " is expected to be plugged only once", mapping[first] == first);
+                assertTrue("Character " + pair.charAt(1) + " is expected to be plugged only once", mapping[second] == second);
+                mapping[first] = (byte) second;
+                mapping[second] = (byte) first;
+            }
+        }
+        return new PlugboardWiring(mapping);
+    }
+
+    /**
+     * Builds a wiring with randomly chosen cables.
+     *
+     * @param random The source of randomness.
+     * @param cables The number of cables (0-13).
+     * @return A random wiring with the given number of cables.
+     */
+    public static PlugboardWiring random(Random random, int cables) {
+        byte[] letters = identity();
+        for (int i = SIZE - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte swap = letters[i];
+            letters[i] = letters[j];
+            letters[j] = swap;
+        }
+        byte[] mapping = identity();
+        for (int i = 0; i < 2 * cables; i += 2) {
+            mapping[letters[i]] = letters[i + 1];
+            mapping[letters[i + 1]] = letters[i];
+        }
+        return new PlugboardWiring(mapping);
+    }
+
+    /**
+     * Rebuilds a wiring from its canonical key.
+     *
+     * @param key A key previously obtained from {@link #key()}.
+     * @return The wiring with the given key.
+     */
+    public static PlugboardWiring fromKey(long key) {
+        int remaining = (int) (key & ((1L << MASK_BITS) - 1));
+        long rank = key >>> MASK_BITS;
+
+        // Recover the choice made for each cable, from the last one to the first one
+        int plugged = Integer.bitCount(remaining);
+        int[] choices = new int[plugged / 2];
+        for (int i = choices.length - 1; i >= 0; i--) {
+            int options = plugged - 1 - 2 * i;
+            choices[i] = (int) (rank % options);
+            rank /= options;
+        }
+
+        byte[] mapping = identity();
+        for (int choice : choices) {
+            int first = Integer.numberOfTrailingZeros(remaining);
+            remaining &= ~(1 << first);
+            int second = remaining;
+            for (int skip = 0; skip < choice; skip++) {
+                second &= second - 1;
+            }
+            second = Integer.numberOfTrailingZeros(second);
+            remaining &= ~(1 << second);
+            mapping[first] = (byte) second;
+            mapping[second] = (byte) first;
+        }
+        return new PlugboardWiring(mapping);
+    }
+
+    /**
+     * Gets the character plugged to a given character.
+     *
+     * @param c The character index (0-25).
+     * @return The plugged character index, or {@code c} when it has no cable.
+     */
+    public int partner(int c) {
+        return mapping[c];
+    }
+
+    /**
+     * Checks whether a character has a cable.
+     *
+     * @param c The character index (0-25).
+     * @return {@code true} if the character is plugged to another one, otherwise {@code false}.
+     */
+    public boolean isPlugged(int c) {
+        return mapping[c] != c;
+    }
+
+    /**
+     * Counts the cables of the wiring.
+     *
+     * @return The number of cables.
+     */
+    public int cables() {
+        int plugged = 0;
+        for (int c = 0; c < SIZE; c++) {
+            if (mapping[c] != c) {
+                plugged++;
+            }
+        }
+        return plugged / 2;
+    }
+
+    /**
+     * Lists the cables of the wiring, each one identified by its lowest character.
+     *
+     * @return The lowest character index of each cable, in ascending order.
+     */
+    public int[] getCables() {
+        int[] cables = new int[cables()];
+        int i = 0;
+        for (int c = 0; c < SIZE; c++) {
+            if (mapping[c] > c) {
+                cables[i++] = c;
+            }
+        }
+        return cables;
+    }
+
+    /**
+     * Adds a cable between two characters without cables.
+     *
+     * @param first The first character index (0-25).
+     * @param second The second character index (0-25).
+     * @return The wiring with the new cable.
+     */
+    public PlugboardWiring plug(int first, int second) {
+        assertTrue("Only characters without cables can be plugged", first != second && !isPlugged(first) && !isPlugged(second));
+        byte[] plugged = mapping.clone();
+        plugged[first] = (byte) second;
+        plugged[second] = (byte) first;
+        return new PlugboardWiring(plugged);
+    }
+
+    /**
+     * Removes the cable of a character, if any.
+     *
+     * @param c The character index (0-25).
+     * @return The wiring without the cable of the character.
+     */
+    public PlugboardWiring unplug(int c) {
+        if (!isPlugged(c)) {
+            return this;
+        }
+        byte[] unplugged = mapping.clone();
+        int partner = mapping[c];
+        unplugged[partner] = (byte) partner;
+        unplugged[c] = (byte) c;
+        return new PlugboardWiring(unplugged);
+    }
+
+    /**
+     * Replaces the cable of a character with a cable between two other characters.
+     *
+     * The characters of the new cable must be free once the old cable is removed.
+     *
+     * @param c The character index (0-25) whose cable is removed.
+     * @param first The first character index (0-25) of the new cable.
+     * @param second The second character index (0-25) of the new cable.
+     * @return The wiring with the replaced cable.
+     */
+    public PlugboardWiring replace(int c, int first, int second) {
+        byte[] replaced = mapping.clone();
+        int old = replaced[c];
+        replaced[c] = (byte) c;
+        replaced[old] = (byte) old;
+        assertTrue("Only characters without cables can be plugged",
+                first != second && replaced[first] == first && replaced[second] == second);
+        replaced[first] = (byte) second;
+        replaced[second] = (byte) first;
+        return new PlugboardWiring(replaced);
+    }
+
+    /**
+     * Exchanges the cables of two characters: each character ends up plugged to the former partner of the other one.
+     *
+     * @param first The first character index (0-25).
+     * @param second The second character index (0-25).
+     * @return The wiring with the exchanged cables.
+     */
+    public PlugboardWiring swap(int first, int second) {
+        int firstPartner = mapping[first];
+        int secondPartner = mapping[second];
+        if (first == second || firstPartner == second) {
+            return this;
+        }
+        byte[] swapped = mapping.clone();
+        // Release both cables, then plug each character to the other one's former partner
+        swapped[firstPartner] = (byte) firstPartner;
+        swapped[secondPartner] = (byte) secondPartner;
+        swapped[first] = (byte) first;
+        swapped[second] = (byte) second;
+        if (secondPartner != second) {
+            swapped[first] = (byte) secondPartner;
+            swapped[secondPartner] = (byte) first;
+        }
+        if (firstPartner != first) {
+            swapped[second] = (byte) firstPartner;
+            swapped[firstPartner] = (byte) second;
+        }
+        return new PlugboardWiring(swapped);
+    }
+
+    /**
+     * Computes the canonical 64-bit key of the wiring.
+     *
+     * The lowest 26 bits hold the set of plugged characters. The remaining bits hold the rank of the pairing among
+     * those characters: taking plugged characters in ascending order, the partner of each unpaired one is encoded as
+     * its index among the characters still unpaired. The key is unique for up to 11 cables.
+     *
+     * @return The key of the wiring.
+     */
+    public long key() {
+        int remaining = 0;
+        for (int c = 0; c < SIZE; c++) {
+            if (mapping[c] != c) {
+                remaining |= 1 << c;
+            }
+        }
+        long key = remaining;
+        long rank = 0;
+        while (remaining != 0) {
+            int first = Integer.numberOfTrailingZeros(remaining);
+            remaining &= ~(1 << first);
+            int second = mapping[first];
+            rank = rank * Integer.bitCount(remaining) + Integer.bitCount(remaining & ((1 << second) - 1));
+            remaining &= ~(1 << second);
+        }
+        return rank << MASK_BITS | key;
+    }
+
+    /**
+     * Gets the wiring as an array of character indexes.
+     *
+     * The returned array is shared with the wiring and must not be modified.
+     *
+     * @return The plugged character index of each character of the ALPHABET.
+     */
+    public byte[] getMapping() {
+        return mapping;
+    }
+
+    /**
+     * Checks if this wiring has the same cables as another wiring.
+     *
+     * @param o The object to be compared with this wiring.
+     * @return {@code true} if the objects are equal, otherwise {@code false}.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(mapping, ((PlugboardWiring) o).mapping);
+    }
+
+    /**
+     * Returns the hash code for this wiring, based on its cables.
+     *
+     * @return The hash code of this wiring.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mapping);
+    }
+
+    /**
+     * Returns the cables as a colon-separated list of pairs, ordered by their lowest character.
+     *
+     * @return A string representation of the wiring accepted by {@link Plugboard}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder pairs = new StringBuilder();
+        for (int c = 0; c < SIZE; c++) {
+            if (mapping[c] > c) {
+                if (pairs.length() > 0) {
+                    pairs.append(':');
+                }
+                pairs.append(ALPHABET.charAt(c)).append(ALPHABET.charAt(mapping[c]));
+            }
+        }
+        return pairs.toString();
+    }
+
+    /**
+     * Builds a mapping where every character is plugged to itself.
+     *
+     * @return A new identity mapping.
+     */
+    private static byte[] identity() {
+        byte[] mapping = new byte[SIZE];
+        for (int c = 0; c < SIZE; c++) {
+            mapping[c] = (byte) c;
+        }
+        return mapping;
+    }
+
+}
@@ -15,15 +15,31 @@ import static org.junit.Assert.assertTrue;
  * - A 26-character sequence for the ring, containing every character from the ALPHABET without repetitions.
  * - The Notch position, which triggers the rotation of the adjacent rotor.
  * - The Rotor Position, the initial character of the ring sequence, is set to one character from the ALPHABET.
+ * - The Ring Setting, which moves the notch relative to the ring sequence. With ring setting 'A' the notch is at the
+ *   position given by the configuration; each letter after 'A' makes the rotor to the left turn over one step later.
+ *
+ * A Rotor is an immutable specification: it never rotates. The current position of a rotor inside a machine is kept
+ * by a {@link RotorState}, so the same Rotor instance can be shared by any number of machines and threads, and every
+ * machine built from it starts ciphering from the initial rotor position.
  */
 public class Rotor {
 
-    // 26-character sequence including ALPHABET characters in random order with no repetition
-    private String ringSequence;
+    // Configuration the rotor was built from
+    private final RotorConfiguration rotorConfiguration;
+    // 26-character sequence including ALPHABET characters in random order with no repetition, at the initial position
+    private final String ringSequence;
     // Position of the notch in the rotor (enables rotation of the rotor to the left)
     private final char notch;
     // Initial position of the rotor
     private final char rotorPosition;
+    // Ring setting of the rotor (offset of the notch, 'A' means no offset)
+    private final char ringSetting;
+    // Precomputed substitution tables shared by every rotor with the same configuration
+    private final RotorWiring wiring;
+    // Index in the configuration ring sequence of the initial rotor position
+    private final int head;
+    // Index in the configuration ring sequence of the position that makes the rotor to the left turn over
+    private final int notchHead;
 
     /**
      * Constructs a Rotor with the provided configuration and starting position.
@@ -32,10 +48,24 @@ public class Rotor {
      * @param rotorPosition The initial position of the rotor (A-Z).
      */
     public Rotor(RotorConfiguration rotorConfiguration, char rotorPosition) {
+        this(rotorConfiguration, rotorPosition, 'A');
+    }
+
+    /**
+     * Constructs a Rotor with the provided configuration, starting position and ring setting.
+     *
+     * @param rotorConfiguration Contains the ring sequence and notch position.
+     * @param rotorPosition The initial position of the rotor (A-Z).
+     * @param ringSetting The ring setting of the rotor (A-Z), where 'A' keeps the notch of the configuration.
+     */
+    public Rotor(RotorConfiguration rotorConfiguration, char rotorPosition, char ringSetting) {
 
-        // Validate rotor position is within A-Z
+        // Validate rotor position and ring setting are within A-Z
         assertTrue("Initial position should be A to Z", ALPHABET.indexOf(rotorPosition) != -1);
+        assertTrue("Ring setting should be A to Z", ALPHABET.indexOf(ringSetting) != -1);
         this.rotorPosition = rotorPosition;
+        this.ringSetting = ringSetting;
+        this.rotorConfiguration = rotorConfiguration;
 
         // Validate that the ring sequence contains each character from the ALPHABET exactly once
         String input = rotorConfiguration.getRingSequence();
@@ -44,71 +74,85 @@ public class Rotor {
             long count = input.chars().filter(ch -> ch == c).count();
             assertEquals("Character " + c + " is expected to appear exactly 1 time", 1, count);
         }
-        this.ringSequence = input;
 
-        // Rotate the rotor to the initial rotor position
-        while (this.ringSequence.charAt(0) != this.rotorPosition) {
-            this.ringSequence = rotate(this.ringSequence);
-        }
+        // Rotate the ring sequence to the initial rotor position
+        this.wiring = RotorWiring.of(rotorConfiguration);
+        this.head = wiring.head(rotorPosition);
+        this.ringSequence = input.substring(head) + input.substring(0, head);
 
         // Validate notch position is within A-Z
         assertTrue("Notch position should be A to Z", ALPHABET.indexOf(rotorConfiguration.getNotch()) != -1);
         this.notch = rotorConfiguration.getNotch();
+        this.notchHead = wiring.notchHead(ringSetting);
     }
 
     /**
-     * Substitutes a character when passing through the rotor from left to right.
+     * Gets the configuration this rotor was built from.
      *
-     * @param c The plain character to be substituted.
-     * @return The substituted character.
+     * @return The rotor configuration.
      */
-    public char forward(char c) {
-        int index = ALPHABET.indexOf(c);
-        if (index >= 0) {
-            return ringSequence.charAt(index);
-        } else {
-            return c;
-        }
+    public RotorConfiguration getRotorConfiguration() {
+        return rotorConfiguration;
     }
 
     /**
-     * Substitutes a character when passing through the rotor from right to left.
+     * Gets the initial position of the rotor.
      *
-     * @param c The plain character to be substituted.
-     * @return The substituted character.
+     * @return The initial rotor position (A-Z).
      */
-    public char backward(char c) {
-        int index = ringSequence.indexOf(c);
-        if (index >= 0) {
-            return ALPHABET.charAt(index);
-        } else {
-            return c;
-        }
+    public char getRotorPosition() {
+        return rotorPosition;
     }
 
     /**
-     * Rotates the rotor if the rotor to its right is at the notch position.
+     * Gets the ring setting of the rotor.
      *
-     * @param rightRotor The rotor immediately to the right of this rotor.
+     * @return The ring setting (A-Z).
      */
-    public void update(Rotor rightRotor) {
-        if (rightRotor == null || rightRotor.ringSequence.charAt(0) == rightRotor.notch) {
-            ringSequence = rotate(ringSequence);
-        }
+    public char getRingSetting() {
+        return ringSetting;
+    }
+
+    /**
+     * Creates a new state for this rotor, placed at the initial rotor position.
+     *
+     * States are cheap and are not meant to be shared between threads: each machine owns its own states.
+     *
+     * @return A new rotor state.
+     */
+    public RotorState newState() {
+        return new RotorState(this);
+    }
+
+    /**
+     * Gets the precomputed substitution tables of this rotor.
+     *
+     * @return The rotor tables.
+     */
+    RotorWiring getWiring() {
+        return wiring;
+    }
+
+    /**
+     * Gets the index in the configuration ring sequence of the initial rotor position.
+     *
+     * @return The initial head of the rotor.
+     */
+    int getHead() {
+        return head;
     }
 
     /**
-     * Rotates the ring sequence of the rotor by one position.
+     * Gets the index in the configuration ring sequence of the position that makes the rotor to the left turn over.
      *
-     * @param original The current ring sequence of the rotor.
-     * @return The rotated ring sequence.
+     * @return The notch head of the rotor, including the ring setting.
      */
-    private static String rotate(String original) {
-        return original.substring(original.length() - 1) + original.substring(0, original.length() - 1);
+    int getNotchHead() {
+        return notchHead;
     }
 
     /**
-     * Checks if this rotor is equal to another rotor based on the ring sequence, notch, and rotor position.
+     * Checks if this rotor is equal to another rotor based on the ring sequence, notch, rotor position and ring setting.
      *
      * @param o The object to be compared with this rotor.
      * @return {@code true} if the objects are equal, otherwise {@code false}.
@@ -119,22 +163,23 @@ public class Rotor {
         if (o == null || getClass() != o.getClass()) return false;
         Rotor rotor = (Rotor) o;
         return rotorPosition == rotor.rotorPosition &&
+                ringSetting == rotor.ringSetting &&
                 Objects.equals(ringSequence, rotor.ringSequence) &&
                 Objects.equals(notch, rotor.notch);
     }
 
     /**
-     * Returns the hash code for this rotor, based on the ring sequence, notch, and rotor position.
+     * Returns the hash code for this rotor, based on the ring sequence, notch, rotor position and ring setting.
      *
      * @return The hash code of this rotor.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(ringSequence, notch, rotorPosition);
+        return Objects.hash(ringSequence, notch, rotorPosition, ringSetting);
     }
 
     /**
-     * Returns a string representation of the rotor, including the ring sequence, notch, and rotor position.
+     * Returns a string representation of the rotor, including the ring sequence, notch, rotor position and ring setting.
      *
      * @return A string representation of the rotor.
      */
@@ -144,6 +189,7 @@ public class Rotor {
                 "ringSequence='" + ringSequence + '\'' +
                 ", notch=" + notch +
                 ", rotorPosition=" + rotorPosition +
+                ", ringSetting=" + ringSetting +
                 '}';
     }
 }
@@ -0,0 +1,110 @@
+package es.usj.crypto.enigma;
+
+import static es.usj.crypto.enigma.RotorWiring.SIZE;
+
+/**
+ * Represents the current position of a rotor inside a running Enigma machine.
+ *
+ * The rotor itself ({@link Rotor}) is immutable; a RotorState only stores how far the rotor has rotated from its
+ * initial position, so creating or resetting a state is an O(1) operation. A state is owned by a single machine and
+ * must not be shared between threads.
+ */
+public class RotorState {
+
+    // The rotor specification this state belongs to
+    private final Rotor rotor;
+    // Precomputed substitution tables of the rotor
+    private final RotorWiring wiring;
+    // Head value at which the rotor to the left turns over
+    private final int notch;
+    // Index in the configuration ring sequence of the character shown at position 0
+    private int head;
+
+    /**
+     * Constructs a state placed at the initial position of the rotor.
+     *
+     * @param rotor The rotor specification.
+     */
+    RotorState(Rotor rotor) {
+        this.rotor = rotor;
+        this.wiring = rotor.getWiring();
+        this.notch = rotor.getNotchHead();
+        this.head = rotor.getHead();
+    }
+
+    /**
+     * Moves the rotor back to its initial position.
+     */
+    public void reset() {
+        head = rotor.getHead();
+    }
+
+    /**
+     * Substitutes a character when passing through the rotor from left to right.
+     *
+     * @param c The plain character to be substituted.
+     * @return The substituted character.
+     */
+    public char forward(char c) {
+        int index = c - 'A';
+        if (index >= 0 && index < SIZE) {
+            return (char) ('A' + wiring.forward[head * SIZE + index]);
+        } else {
+            return c;
+        }
+    }
+
+    /**
+     * Substitutes a character when passing through the rotor from right to left.
+     *
+     * @param c The plain character to be substituted.
+     * @return The substituted character.
+     */
+    public char backward(char c) {
+        int index = c - 'A';
+        if (index >= 0 && index < SIZE) {
+            return (char) ('A' + wiring.backward[head * SIZE + index]);
+        } else {
+            return c;
+        }
+    }
+
+    /**
+     * Rotates the rotor if the rotor to its right is at the notch position.
+     *
+     * @param rightRotor The state of the rotor immediately to the right of this rotor.
+     */
+    public void update(RotorState rightRotor) {
+        if (rightRotor == null || rightRotor.isAtNotch()) {
+            head = head == 0 ? SIZE - 1 : head - 1;
+        }
+    }
+
+    /**
+     * Checks whether the notch of the rotor is at the current position.
+     *
+     * @return {@code true} if the rotor will make the rotor to its left rotate, otherwise {@code false}.
+     */
+    public boolean isAtNotch() {
+        return head == notch;
+    }
+
+    /**
+     * Gets the character currently shown at the rotor position.
+     *
+     * @return The current rotor position (A-Z).
+     */
+    public char getPosition() {
+        return rotor.getRotorConfiguration().getRingSequence().charAt(head);
+    }
+
+    /**
+     * Gets the rotor specification this state belongs to.
+     *
+     * @return The rotor.
+     */
+    public Rotor getRotor() {
+        return rotor;
+    }
+
+}
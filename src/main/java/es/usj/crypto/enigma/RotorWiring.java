@@ -0,0 +1,101 @@
+package es.usj.crypto.enigma;
+
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static es.usj.crypto.enigma.Machine.ALPHABET;
+
+/**
+ * Precomputed lookup tables for a rotor configuration.
+ *
+ * A rotor in this machine is a ring sequence that rotates one position per step, so its state is fully described by the
+ * index in the original ring sequence of the character shown at position 0 (the "head"). Rotating the rotor decrements
+ * the head. For every head value, the forward and backward substitutions are stored as flat {@code int} tables indexed
+ * by {@code head * 26 + character}, so passing through a rotor costs a single array read.
+ *
+ * Tables are built once per {@link RotorConfiguration} and shared by every compiled machine.
+ */
+final class RotorWiring {
+
+    // Number of characters on a rotor
+    static final int SIZE = ALPHABET.length();
+
+    // Shared tables for each available rotor configuration
+    private static final Map<RotorConfiguration, RotorWiring> WIRINGS = new EnumMap<>(RotorConfiguration.class);
+
+    static {
+        for (RotorConfiguration rotorConfiguration : RotorConfiguration.values()) {
+            WIRINGS.put(rotorConfiguration, new RotorWiring(rotorConfiguration));
+        }
+    }
+
+    // Position of each character in the ring sequence
+    private final int[] inverse;
+    // Substitution from right to left, indexed by head * SIZE + character
+    final int[] forward;
+    // Substitution from left to right, indexed by head * SIZE + character
+    final int[] backward;
+    // Head value at which the notch is shown at position 0
+    final int notch;
+
+    /**
+     * Builds the lookup tables for the given configuration.
+     *
+     * @param rotorConfiguration Contains the ring sequence and notch position.
+     */
+    private RotorWiring(RotorConfiguration rotorConfiguration) {
+        String ringSequence = rotorConfiguration.getRingSequence();
+        int[] sequence = new int[SIZE];
+        this.inverse = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            sequence[i] = ringSequence.charAt(i) - 'A';
+            inverse[sequence[i]] = i;
+        }
+
+        this.forward = new int[SIZE * SIZE];
+        this.backward = new int[SIZE * SIZE];
+        for (int head = 0; head < SIZE; head++) {
+            for (int c = 0; c < SIZE; c++) {
+                forward[head * SIZE + c] = sequence[(c + head) % SIZE];
+                backward[head * SIZE + c] = (inverse[c] - head + SIZE) % SIZE;
+            }
+        }
+        this.notch = ringSequence.indexOf(rotorConfiguration.getNotch());
+    }
+
+    /**
+     * Retrieves the shared tables of a rotor configuration.
+     *
+     * @param rotorConfiguration The rotor configuration.
+     * @return The precomputed tables for the configuration.
+     */
+    static RotorWiring of(RotorConfiguration rotorConfiguration) {
+        return WIRINGS.get(rotorConfiguration);
+    }
+
+    /**
+     * Computes the head value of a rotor whose ring shows the given character at position 0.
+     *
+     * @param rotorPosition The rotor position (A-Z).
+     * @return The index of the rotor position in the ring sequence.
+     */
+    int head(char rotorPosition) {
+        return inverse[rotorPosition - 'A'];
+    }
+
+    /**
+     * Computes the head value at which a rotor with the given ring setting makes the rotor to its left turn over.
+     *
+     * Each letter after 'A' delays the turnover by one step. As the head decreases at every step, the notch head
+     * decreases by the ring offset.
+     *
+     * @param ringSetting The ring setting (A-Z).
+     * @return The notch head for the ring setting.
+     */
+    int notchHead(char ringSetting) {
+        return (notch - (ringSetting - 'A') + SIZE) % SIZE;
+    }
+
+}
@@ -0,0 +1,106 @@
+package es.usj.crypto.enigma;
+
+import static es.usj.crypto.enigma.RotorWiring.SIZE;
+
+/**
+ * Represents the scrambler (rotors and reflector) substitutions recorded for a fixed text and rotor setting.
+ *
+ * While searching for a plugboard, the rotors stay fixed and only the plugboard changes. The trace stores, for every
+ * letter of the text, the permutation applied by the rotors and the reflector at that position as 26 bytes. Ciphering
+ * the text under a plugboard then costs two plugboard lookups and one trace lookup per character:
+ * <pre>
+ * output = plugboard[trace[position][plugboard[input]]]
+ * </pre>
+ *
+ * Traces are created with {@link CompiledMachine#trace(byte[])}. They are immutable and can be shared by any number of
+ * threads.
+ */
+public class ScramblerTrace {
+
+    // Normalized text the trace was recorded for
+    private final byte[] text;
+    // Scrambler substitution at each letter of the text, indexed by letter * SIZE + character
+    private final byte[] trace;
+
+    /**
+     * Constructs a trace for the given text.
+     *
+     * @param text The normalized text.
+     * @param trace The scrambler substitution at each letter of the text.
+     */
+    ScramblerTrace(byte[] text, byte[] trace) {
+        this.text = text;
+        this.trace = trace;
+    }
+
+    /**
+     * Ciphers the traced text with the given plugboard into the supplied buffer.
+     *
+     * No memory is allocated while ciphering. The output buffer must be at least as long as the text.
+     *
+     * @param plugboard The plugboard substitution as an array of character indexes (see {@link Plugboard#toArray()}).
+     * @param output The buffer that receives the normalized ciphered text.
+     */
+    public void decrypt(byte[] plugboard, byte[] output) {
+        final byte[] text = this.text;
+        final byte[] trace = this.trace;
+        int position = 0;
+        for (int i = 0; i < text.length; i++) {
+            int c = text[i];
+            if (c < 0) {
+                output[i] = (byte) c;
+            } else {
+                output[i] = plugboard[trace[position + plugboard[c]]];
+                position += SIZE;
+            }
+        }
+    }
+
+    /**
+     * Gets the scrambler substitution of a character at a given letter of the text.
+     *
+     * @param letter The index of the letter in the text, not counting blank spaces.
+     * @param c The character index (0-25) entering the rotors.
+     * @return The character index (0-25) leaving the rotors.
+     */
+    public int scramble(int letter, int c) {
+        return trace[letter * SIZE + c];
+    }
+
+    /**
+     * Gets the normalized text the trace was recorded for.
+     *
+     * @return The normalized text. It must not be modified.
+     */
+    public byte[] getText() {
+        return text;
+    }
+
+    /**
+     * Gets the scrambler substitutions of the whole text, indexed by letter * 26 + character.
+     *
+     * @return The substitutions at each letter of the text. They must not be modified.
+     */
+    public byte[] getSubstitutions() {
+        return trace;
+    }
+
+    /**
+     * Gets the length of the traced text, including blank spaces.
+     *
+     * @return The length of the text.
+     */
+    public int length() {
+        return text.length;
+    }
+
+    /**
+     * Gets the number of letters of the traced text.
+     *
+     * @return The number of letters of the text.
+     */
+    public int letters() {
+        return trace.length / SIZE;
+    }
+
+}
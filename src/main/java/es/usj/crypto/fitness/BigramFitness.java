@@ -1,35 +1,16 @@
 package es.usj.crypto.fitness;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.stream.Stream;
-
 public class BigramFitness extends FitnessFunction {
-    private float[] bigrams;
+    private final NgramTable bigrams;
 
     private static int biIndex(int a, int b) {
-        return (a << 5) | b;
+        return a * 26 + b;
     }
 
 
     public BigramFitness() {
-        // Bigrams
-        this.bigrams = new float[826];
-        Arrays.fill(this.bigrams, (float)Math.log10(epsilon));
-        try (final InputStream is = BigramFitness.class.getResourceAsStream("/data/bigrams");
-             final Reader r = new InputStreamReader(is, StandardCharsets.UTF_8);
-             final BufferedReader br = new BufferedReader(r);
-             final Stream<String> lines = br.lines()) {
-            lines.map(line -> line.split(","))
-                    .forEach(s -> {
-                        String key = s[0];
-                        int i = biIndex(key.charAt(0) - 65, key.charAt(1) - 65);
-                        this.bigrams[i] = Float.parseFloat(s[1]);
-                    });
-        } catch (IOException e) {
-            this.bigrams = null;
-        }
+        // Shared, memory-mapped table, densely indexed in base 26
+        this.bigrams = NgramTables.get(NgramTables.Table.BIGRAMS);
     }
 
     @Override
@@ -40,8 +21,12 @@ public class BigramFitness extends FitnessFunction {
         for (int i = 1; i < text.length; i++) {
             current = next;
             next = text[i] - 65;
-            fitness += this.bigrams[biIndex(current, next)];
+            fitness += this.bigrams.get(biIndex(current, next));
         }
         return fitness;
     }
+
+    public float score(int a, int b) {
+        return this.bigrams.get(biIndex(a, b));
+    }
 }
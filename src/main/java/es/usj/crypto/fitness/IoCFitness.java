@@ -11,12 +11,17 @@ public class IoCFitness extends FitnessFunction {
         for (char c : text) {
             histogram[c - 65]++;
         }
+        return score(histogram);
+    }
 
-        int n = text.length;
+    // Index of coincidence of a text given by the number of times each letter appears
+    public float score(int[] histogram) {
+        int n = 0;
         float total = 0.0f;
 
         for (int v : histogram) {
             total += (v * (v - 1));
+            n += v;
         }
 
         return total / (n * (n-1));
@@ -0,0 +1,62 @@
+package es.usj.crypto.fitness;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Read-only log-probabilities of the n-grams of one order, indexed in base 26.
+ *
+ * A process only loads tables of one {@link NgramTables.Format}, so calls to {@link #get(int)} stay monomorphic.
+ */
+public abstract class NgramTable {
+
+    public abstract float get(int index);
+
+    static final class FloatTable extends NgramTable {
+        private final FloatBuffer values;
+
+        FloatTable(FloatBuffer values) {
+            this.values = values;
+        }
+
+        @Override
+        public float get(int index) {
+            return values.get(index);
+        }
+    }
+
+    static final class ShortTable extends NgramTable {
+        private final ShortBuffer values;
+        private final float offset;
+        private final float scale;
+
+        ShortTable(ShortBuffer values, float offset, float scale) {
+            this.values = values;
+            this.offset = offset;
+            this.scale = scale;
+        }
+
+        @Override
+        public float get(int index) {
+            return offset + (values.get(index) & 0xFFFF) * scale;
+        }
+    }
+
+    static final class ByteTable extends NgramTable {
+        private final ByteBuffer values;
+        private final float offset;
+        private final float scale;
+
+        ByteTable(ByteBuffer values, float offset, float scale) {
+            this.values = values;
+            this.offset = offset;
+            this.scale = scale;
+        }
+
+        @Override
+        public float get(int index) {
+            return offset + (values.get(index) & 0xFF) * scale;
+        }
+    }
+}
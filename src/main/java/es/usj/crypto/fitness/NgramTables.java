@@ -0,0 +1,259 @@
+package es.usj.crypto.fitness;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Binary n-gram tables, shared by every fitness function of the process.
+ *
+ * At build time {@link #main(String[])} compiles the CSV files of /data into /data/<table>-<format>.bin: a
+ * little-endian header (magic, order, entries, format, offset, scale) followed by the log-probability of every
+ * n-gram, densely indexed in base 26 (26^4 entries for quadgrams). At run time each table is memory-mapped read-only
+ * once per process; tables packed in a jar are first extracted to a cache directory under java.io.tmpdir, so every
+ * JVM of the host maps the same pages. Extracted files are named after the checksum of the packed table, so a jar
+ * with different data or generator never maps a stale one. When the binary tables are missing, the CSV files are
+ * parsed instead.
+ *
+ * The format is chosen with the system property {@code enigma.ngrams}:
+ * <ul>
+ *     <li>{@code float} (default): exact log-probabilities, 1.8 MB for quadgrams.</li>
+ *     <li>{@code short}: 16-bit quantized, 0.9 MB for quadgrams. Each n-gram is off by at most 6e-5; the fitness
+ *     of the sample ciphertext (about -1455) moves by 1e-4, so rankings are practically unchanged.</li>
+ *     <li>{@code byte}: 8-bit quantized, 0.45 MB for quadgrams, small enough to stay in L2. Each n-gram is off by
+ *     at most 0.016 (0.2% of the range); the fitness of the sample ciphertext moves by 0.12. That can reorder
+ *     candidates whose fitness is almost equal, but not hide a real improvement.</li>
+ * </ul>
+ * Quantized values are {@code offset + q * scale}, with q unsigned and offset the lowest value of the table.
+ */
+public final class NgramTables {
+
+    private static final int MAGIC = 0x4E47524D;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final String CACHE_DIRECTORY = "breaking-enigma-ngrams";
+
+    public enum Format {
+        FLOAT(Float.BYTES, 0),
+        SHORT(Short.BYTES, 0xFFFF),
+        BYTE(Byte.BYTES, 0xFF);
+
+        private final int bytes;
+        // Highest quantized value, 0 when not quantized
+        private final int levels;
+
+        Format(int bytes, int levels) {
+            this.bytes = bytes;
+            this.levels = levels;
+        }
+    }
+
+    public static final Format FORMAT = Format.valueOf(System.getProperty("enigma.ngrams", "float").toUpperCase(Locale.ROOT));
+
+    public enum Table {
+        SINGLE("single", 1, 0f),
+        BIGRAMS("bigrams", 2, (float) Math.log10(FitnessFunction.epsilon)),
+        TRIGRAMS("trigrams", 3, (float) Math.log10(FitnessFunction.epsilon)),
+        QUADGRAMS("quadgrams", 4, (float) Math.log10(FitnessFunction.epsilon));
+
+        private final String name;
+        private final int order;
+        private final int entries;
+        // Log-probability of the n-grams missing from the CSV file
+        private final float floor;
+
+        Table(String name, int order, float floor) {
+            this.name = name;
+            this.order = order;
+            this.entries = (int) Math.pow(26, order);
+            this.floor = floor;
+        }
+
+        public int getOrder() {
+            return order;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        private int index(String ngram) {
+            int index = 0;
+            for (int i = 0; i < order; i++) {
+                index = index * 26 + ngram.charAt(i) - 65;
+            }
+            return index;
+        }
+    }
+
+    private static final Map<Table, NgramTable> TABLES = new EnumMap<>(Table.class);
+
+    private NgramTables() {
+    }
+
+    // Compiles every CSV table into <output directory>/data/<table>-<format>.bin, in every format
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args[0], "data");
+        Files.createDirectories(directory);
+        for (Table table : Table.values()) {
+            float[] values = parse(table);
+            for (Format format : Format.values()) {
+                write(table, format, values, directory.resolve(fileName(table, format)));
+            }
+        }
+    }
+
+    public static synchronized NgramTable get(Table table) {
+        return TABLES.computeIfAbsent(table, NgramTables::load);
+    }
+
+    private static String fileName(Table table, Format format) {
+        return table.name + "-" + format.name().toLowerCase(Locale.ROOT) + ".bin";
+    }
+
+    private static long fileSize(Table table, Format format) {
+        return HEADER_BYTES + (long) table.entries * format.bytes;
+    }
+
+    private static NgramTable load(Table table) {
+        try {
+            URL resource = NgramTables.class.getResource("/data/" + fileName(table, FORMAT));
+            if (resource != null) {
+                Path path = "file".equals(resource.getProtocol()) ? Paths.get(resource.toURI()) : extract(table, resource);
+                return map(table, path);
+            }
+        } catch (IOException | URISyntaxException | IllegalStateException e) {
+            e.printStackTrace();
+        }
+        float[] values = parse(table);
+        if (FORMAT == Format.FLOAT) {
+            return new NgramTable.FloatTable(FloatBuffer.wrap(values));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize(table, FORMAT)).order(ByteOrder.LITTLE_ENDIAN);
+        write(table, FORMAT, values, buffer);
+        return read(table, FORMAT, buffer);
+    }
+
+    private static Path extract(Table table, URL resource) throws IOException {
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"), CACHE_DIRECTORY);
+        String checksum = Long.toHexString(checksum(resource));
+        Path path = directory.resolve(fileName(table, FORMAT).replace(".bin", "-" + checksum + ".bin"));
+        Files.createDirectories(directory);
+        if (!Files.exists(path) || Files.size(path) != fileSize(table, FORMAT)) {
+            // Other JVMs may extract the same table concurrently, so the file only appears once complete
+            Path temporary = Files.createTempFile(directory, table.name, ".tmp");
+            try (InputStream is = resource.openStream()) {
+                Files.copy(is, temporary, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return path;
+    }
+
+    // CRC-32 of a packed table, read from its jar entry when the jar records it
+    private static long checksum(URL resource) throws IOException {
+        URLConnection connection = resource.openConnection();
+        if (connection instanceof JarURLConnection) {
+            long crc = ((JarURLConnection) connection).getJarEntry().getCrc();
+            if (crc >= 0) {
+                return crc;
+            }
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream is = resource.openStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static NgramTable map(Table table, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != fileSize(table, FORMAT)) {
+                throw new IllegalStateException("Invalid n-gram table " + path);
+            }
+            return read(table, FORMAT, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    static NgramTable read(Table table, Format format, ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != table.order || buffer.getInt(8) != table.entries ||
+                buffer.getInt(12) != format.ordinal()) {
+            throw new IllegalStateException("Invalid n-gram table " + table.name);
+        }
+        float offset = buffer.getFloat(16);
+        float scale = buffer.getFloat(20);
+        buffer.position(HEADER_BYTES);
+        ByteBuffer body = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        switch (format) {
+            case SHORT:
+                return new NgramTable.ShortTable(body.asShortBuffer(), offset, scale);
+            case BYTE:
+                return new NgramTable.ByteTable(body, offset, scale);
+            default:
+                return new NgramTable.FloatTable(body.asFloatBuffer());
+        }
+    }
+
+    private static void write(Table table, Format format, float[] values, Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize(table, format)).order(ByteOrder.LITTLE_ENDIAN);
+        write(table, format, values, buffer);
+        Files.write(path, buffer.array());
+    }
+
+    static void write(Table table, Format format, float[] values, ByteBuffer buffer) {
+        float offset = Float.POSITIVE_INFINITY;
+        float highest = Float.NEGATIVE_INFINITY;
+        for (float value : values) {
+            offset = Math.min(offset, value);
+            highest = Math.max(highest, value);
+        }
+        float scale = format.levels == 0 || highest == offset ? 1f : (highest - offset) / format.levels;
+        buffer.putInt(MAGIC).putInt(table.order).putInt(table.entries).putInt(format.ordinal())
+                .putFloat(offset).putFloat(scale);
+        for (float value : values) {
+            switch (format) {
+                case SHORT:
+                    buffer.putShort((short) Math.round((value - offset) / scale));
+                    break;
+                case BYTE:
+                    buffer.put((byte) Math.round((value - offset) / scale));
+                    break;
+                default:
+                    buffer.putFloat(value);
+            }
+        }
+        buffer.flip();
+    }
+
+    static float[] parse(Table table) {
+        float[] values = new float[table.entries];
+        Arrays.fill(values, table.floor);
+        try (final InputStream is = NgramTables.class.getResourceAsStream("/data/" + table.name);
+             final Reader r = new InputStreamReader(is, StandardCharsets.UTF_8);
+             final BufferedReader br = new BufferedReader(r);
+             final Stream<String> lines = br.lines()) {
+            lines.map(line -> line.split(","))
+                    .forEach(s -> values[table.index(s[0])] = Float.parseFloat(s[1]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return values;
+    }
+}
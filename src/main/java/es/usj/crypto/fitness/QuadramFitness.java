@@ -1,34 +1,15 @@
 package es.usj.crypto.fitness;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.stream.Stream;
-
 public class QuadramFitness extends FitnessFunction {
-    private float[] quadgrams;
+    private final NgramTable quadgrams;
 
     private static int quadIndex(int a, int b, int c, int d) {
-        return (a << 15) | (b << 10) | (c << 5) | d;
+        return ((a * 26 + b) * 26 + c) * 26 + d;
     }
 
     public QuadramFitness() {
-        // Quadgrams
-        this.quadgrams = new float[845626];
-        Arrays.fill(this.quadgrams, (float)Math.log10(epsilon));
-        try (final InputStream is = QuadramFitness.class.getResourceAsStream("/data/quadgrams");
-             final Reader r = new InputStreamReader(is, StandardCharsets.UTF_8);
-             final BufferedReader br = new BufferedReader(r);
-             final Stream<String> lines = br.lines()) {
-            lines.map(line -> line.split(","))
-                    .forEach(s -> {
-                        String key = s[0];
-                        int i = quadIndex(key.charAt(0) - 65,key.charAt(1) - 65,key.charAt(2) - 65,key.charAt(3) - 65);
-                        this.quadgrams[i] = Float.parseFloat(s[1]);
-                    });
-        } catch (IOException e) {
-            this.quadgrams = null;
-        }
+        // Shared, memory-mapped table, densely indexed in base 26
+        this.quadgrams = NgramTables.get(NgramTables.Table.QUADGRAMS);
     }
 
     @Override
@@ -43,8 +24,12 @@ public class QuadramFitness extends FitnessFunction {
             next1 = next2;
             next2 = next3;
             next3 = text[i] - 65;
-            fitness += this.quadgrams[quadIndex(current, next1, next2, next3)];
+            fitness += this.quadgrams.get(quadIndex(current, next1, next2, next3));
         }
         return fitness;
     }
+
+    public float score(int a, int b, int c, int d) {
+        return this.quadgrams.get(quadIndex(a, b, c, d));
+    }
 }
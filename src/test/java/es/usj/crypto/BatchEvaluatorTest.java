@@ -0,0 +1,73 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Reflector;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.ScramblerTrace;
+import es.usj.crypto.enigma.constant.ReflectorConfiguration;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the BatchEvaluator class.
+ *
+ * This class contains test cases to validate that scoring plugboards by blocks gives each plugboard the fitness of
+ * {@link Entropy#getTraceFitness(ScramblerTrace, byte[])}, including in the last, partial block.
+ */
+public class BatchEvaluatorTest {
+
+    private static final String CIPHER_TEXT = "KS HGLYDQMB KNESHP YDK ZF IDKLJE JRM QRESG F RGXM WVAVRT IXUDO NAY KPMPUTL\n" +
+            "MAQ TXYNI RVI BZGSO MVHB BG ZKC YMPT XSR VUMCRZRG IBJ NOVMDUFVCDAC BFW";
+    private static final float TOLERANCE = 1e-3f;
+
+    private final Entropy entropy = new Entropy();
+    private final ScramblerTrace trace = new CompiledMachine(new Plugboard(""),
+            new Rotor(RotorConfiguration.ROTOR_I, 'C'),
+            new Rotor(RotorConfiguration.ROTOR_IV, 'Q'),
+            new Rotor(RotorConfiguration.ROTOR_II, 'Z'),
+            new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT)).trace(CompiledMachine.normalize(CIPHER_TEXT));
+
+    /**
+     * Tests that a batch of two full blocks and a partial one scores every plugboard as Entropy does.
+     */
+    @Test
+    public void scoreMatchesEntropy() {
+        List<PlugboardWiring> plugboards = plugboards(2 * BatchEvaluator.BLOCK + 5);
+        float[] scores = new BatchEvaluator(entropy, trace).score(plugboards);
+        assertEquals(plugboards.size(), scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            assertEquals(entropy.getTraceFitness(trace, plugboards.get(i).getMapping()), scores[i], TOLERANCE);
+        }
+    }
+
+    /**
+     * Tests that scoring a range of a batch only writes the scores of that range, at the same positions.
+     */
+    @Test
+    public void scoreRange() {
+        List<PlugboardWiring> plugboards = plugboards(40);
+        float[] scores = new float[plugboards.size()];
+        new BatchEvaluator(entropy, trace).score(plugboards, 3, 24, scores);
+        for (int i = 0; i < scores.length; i++) {
+            float expected = i >= 3 && i < 24 ? entropy.getTraceFitness(trace, plugboards.get(i).getMapping()) : 0f;
+            assertEquals(expected, scores[i], TOLERANCE);
+        }
+    }
+
+    private static List<PlugboardWiring> plugboards(int count) {
+        Random random = new Random(5);
+        List<PlugboardWiring> plugboards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            plugboards.add(PlugboardWiring.random(random, 10));
+        }
+        return plugboards;
+    }
+}
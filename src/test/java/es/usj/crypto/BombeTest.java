@@ -0,0 +1,152 @@
+package es.usj.crypto;
+
+import java.util.List;
+import java.util.Random;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the Bombe class.
+ *
+ * This class contains test cases to validate that the stops of the bombe, and the ring settings of those stops,
+ * include the key a message was ciphered with, whatever the ring setting of the middle rotor is, that a wrong rotor
+ * order or a long crib leaves almost no stop, that the completed plugboards of a stop keep what the menu implies,
+ * and that cribs that cannot be at their offset are rejected.
+ */
+public class BombeTest {
+
+    private static final String PLAIN_TEXT = "THE WEATHER REPORT FOR THE NORTHERN SECTOR IS CLEAR WITH LIGHT WINDS FROM THE " +
+            "WEST AND THE CONVOY WILL LEAVE THE HARBOUR AT DAWN TOMORROW UNDER ESCORT OF TWO DESTROYERS AND ONE CRUISER " +
+            "ALL UNITS ARE TO KEEP RADIO SILENCE UNTIL THE CONVOY HAS PASSED THE MINEFIELDS AND REACHED THE OPEN SEA";
+    private static final String CRIB = "CONVOY WILL LEAVE THE HARBOUR";
+    private static final String LONG_CRIB = "CONVOY WILL LEAVE THE HARBOUR AT DAWN TOMORROW UNDER ESCORT";
+    private static final String SHORT_CRIB = "WEATHER REPORT";
+    private static final String PLUGBOARD = "IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK";
+    private static final int ORDER = 7;
+
+    /**
+     * Tests that the key of a message is among the ring settings of the stops of its rotor order, for middle ring
+     * settings that make the left rotor turn over inside the crib, before it, or never.
+     */
+    @Test
+    public void recoversKey() {
+        for (char middleRing : new char[]{'A', 'D', 'E', 'X'}) {
+            Rotor[] key = key(middleRing);
+            String message = machine(key, PLUGBOARD).getCipheredText(PLAIN_TEXT);
+            Bombe bombe = new Bombe(message, CRIB, PLAIN_TEXT.indexOf(CRIB));
+            assertTrue("Middle ring " + middleRing, recovers(bombe, message));
+        }
+    }
+
+    /**
+     * Tests that a rotor order other than the one of the key leaves almost no stop, and that a long crib on the right
+     * rotor order leaves almost no stop besides the one that agrees with the plugboard.
+     */
+    @Test
+    public void fewStops() {
+        String message = machine(key('D'), PLUGBOARD).getCipheredText(PLAIN_TEXT);
+        Bombe bombe = new Bombe(message, CRIB, PLAIN_TEXT.indexOf(CRIB));
+        assertTrue(bombe.run(0, 1).size() <= 2);
+
+        Bombe longBombe = new Bombe(message, LONG_CRIB, PLAIN_TEXT.indexOf(LONG_CRIB));
+        List<Bombe.Stop> stops = longBombe.run(ORDER, ORDER + 1);
+        assertTrue("Stops " + stops.size(), !stops.isEmpty() && stops.size() <= 2);
+        byte[] mapping = PlugboardWiring.parse(PLUGBOARD).getMapping();
+        assertTrue(stops.stream().anyMatch(stop -> agrees(stop, mapping)));
+    }
+
+    /**
+     * Tests that the completed plugboards of the stops of a short crib keep the cables of the stop, leave its
+     * unplugged letters out, and add cables between the other letters up to 10 cables.
+     */
+    @Test
+    public void completeRespectsUnplugged() {
+        String message = machine(key('D'), PLUGBOARD).getCipheredText(PLAIN_TEXT);
+        List<Bombe.Stop> stops = new Bombe(message, SHORT_CRIB, PLAIN_TEXT.indexOf(SHORT_CRIB)).run(ORDER, ORDER + 1);
+        Random random = new Random(17);
+        int withUnplugged = 0;
+        for (Bombe.Stop stop : stops) {
+            PlugboardWiring cables = stop.getPlugboard();
+            int free = 0;
+            for (int c = 0; c < 26; c++) {
+                if (!cables.isPlugged(c) && !stop.isUnplugged(c)) {
+                    free++;
+                }
+                withUnplugged += stop.isUnplugged(c) ? 1 : 0;
+            }
+            PlugboardWiring completed = stop.complete(random, 10);
+            assertEquals(Math.min(10, cables.cables() + free / 2), completed.cables());
+            for (int c = 0; c < 26; c++) {
+                if (cables.isPlugged(c)) {
+                    assertEquals(cables.partner(c), completed.partner(c));
+                }
+                if (stop.isUnplugged(c)) {
+                    assertFalse(completed.isPlugged(c));
+                }
+            }
+        }
+        assertTrue(withUnplugged > 0);
+    }
+
+    /**
+     * Tests that a crib is rejected when a letter would be ciphered to itself, when its blanks do not match the
+     * message, when it does not fit in the message at its offset, or when it has no letters.
+     */
+    @Test
+    public void rejectsImpossibleCribs() {
+        String message = machine(key('D'), PLUGBOARD).getCipheredText(PLAIN_TEXT);
+        int blank = message.indexOf(' ');
+        assertThrows(IllegalArgumentException.class, () -> new Bombe(message, message.substring(0, 1), 0));
+        assertThrows(IllegalArgumentException.class, () -> new Bombe(message, "A", blank));
+        assertThrows(IllegalArgumentException.class, () -> new Bombe(message, CRIB, -1));
+        assertThrows(IllegalArgumentException.class, () -> new Bombe(message, CRIB, message.length() - CRIB.length() + 1));
+        assertThrows(IllegalArgumentException.class, () -> new Bombe(message, " ", blank));
+        // The same crib at its offset is accepted
+        assertEquals(CRIB, new Bombe(message, CRIB.toLowerCase(), PLAIN_TEXT.indexOf(CRIB)).getCrib());
+    }
+
+    // Whether some ring setting of a stop that agrees with the plugboard deciphers the message
+    private static boolean recovers(Bombe bombe, String message) {
+        byte[] mapping = PlugboardWiring.parse(PLUGBOARD).getMapping();
+        for (Bombe.Stop stop : bombe.run(ORDER, ORDER + 1)) {
+            if (!agrees(stop, mapping)) {
+                continue;
+            }
+            List<Bombe.Stop> stops = bombe.rings(stop);
+            for (Bombe.Stop ring : stops) {
+                if (machine(ring.getRotors(), PLUGBOARD).getCipheredText(message).equals(PLAIN_TEXT)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean agrees(Bombe.Stop stop, byte[] mapping) {
+        byte[] cables = stop.getPlugboard().getMapping();
+        for (int c = 0; c < mapping.length; c++) {
+            if (cables[c] != c && cables[c] != mapping[c] || stop.isUnplugged(c) && mapping[c] != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Rotor[] key(char middleRing) {
+        int index = ORDER * RotorSettings.POSITIONS + ('K' - 'A') * 26 * 26 + ('C' - 'A') * 26 + ('F' - 'A');
+        Rotor[] rotors = RotorSettings.getRotors(index);
+        rotors[0] = new Rotor(rotors[0].getRotorConfiguration(), rotors[0].getRotorPosition(), 'K');
+        rotors[1] = new Rotor(rotors[1].getRotorConfiguration(), rotors[1].getRotorPosition(), middleRing);
+        return rotors;
+    }
+
+    private static CompiledMachine machine(Rotor[] rotors, String plugboard) {
+        return new CompiledMachine(new Plugboard(plugboard), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR);
+    }
+}
@@ -0,0 +1,88 @@
+package es.usj.crypto;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the CribDragger class.
+ *
+ * This class contains test cases to validate that dragging cribs over a ciphertext read in chunks finds every offset
+ * where they can be exactly once, whatever the chunk size, including the offsets that straddle two chunks.
+ */
+public class CribDraggerTest {
+
+    private static final String CRIB = "WETTER";
+    private static final String SHORT_CRIB = "KEIN";
+    private static final int KEEP = 1000;
+
+    /**
+     * Tests that a crib at an offset straddling two tiny chunks is found once, as every other offset where it fits.
+     */
+    @Test
+    public void cribStraddlingChunks() throws IOException {
+        // Offset 5 is read from chunks [0, 7) and [7, 14)
+        StringBuilder text = new StringBuilder("EEEEEEEEEEEEEEEEEEEEEEEE");
+        for (int i = 0; i < CRIB.length(); i++) {
+            text.setCharAt(5 + i, (char) ('A' + (CRIB.charAt(i) - 'A' + 1) % 26));
+        }
+        Set<Long> expected = new HashSet<>();
+        for (int offset = 0; offset + CRIB.length() <= text.length(); offset++) {
+            if (CribDragger.fits(text.toString().toCharArray(), offset, CRIB)) {
+                expected.add((long) offset);
+            }
+        }
+        assertTrue(expected.contains(5L));
+
+        CribDragger dragger = new CribDragger(KEEP, CRIB);
+        dragger.setChunkSize(7);
+        List<CribDragger.Offset> offsets = dragger.drag(new StringReader(text.toString()));
+        assertEquals(expected.size(), offsets.size());
+        assertEquals(expected, offsets.stream().map(CribDragger.Offset::getOffset).collect(Collectors.toSet()));
+    }
+
+    /**
+     * Tests that tiny chunks, read a few characters at a time, give the same offsets as a single chunk, each one once.
+     */
+    @Test
+    public void chunksMatchSingleChunk() throws IOException {
+        String text = "KS HGLYDQMB KNESHP YDK ZF IDKLJE JRM QRESG F RGXM WVAVRT IXUDO NAY KPMPUTL\n" +
+                "MAQ TXYNI RVI BZGSO MVHB BG ZKC YMPT XSR VUMCRZRG IBJ NOVMDUFVCDAC BFW";
+        Set<String> expected = offsets(new CribDragger(KEEP, CRIB, SHORT_CRIB).drag(text));
+        assertFalse(expected.isEmpty());
+        for (int chunkSize : new int[]{1, 2, 5, 7, 64}) {
+            CribDragger dragger = new CribDragger(KEEP, CRIB, SHORT_CRIB);
+            dragger.setChunkSize(chunkSize);
+            List<CribDragger.Offset> offsets = dragger.drag(new SlowReader(new StringReader(text)));
+            assertEquals("Chunk size " + chunkSize, expected.size(), offsets.size());
+            assertEquals("Chunk size " + chunkSize, expected, offsets(offsets));
+        }
+    }
+
+    private static Set<String> offsets(List<CribDragger.Offset> offsets) {
+        return offsets.stream().map(CribDragger.Offset::toString).collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * Reader that returns at most 3 characters per read, as a slow stream would.
+     */
+    private static final class SlowReader extends FilterReader {
+        private SlowReader(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the EvaluationScheduler class.
+ *
+ * This class contains test cases to validate that the best candidate of a batch is its true arg-max, the first one
+ * among ties, on the common pool and on a dedicated pool, that the scores of a batch come back in its order, and that
+ * an empty batch has no best candidate.
+ */
+public class EvaluationSchedulerTest {
+
+    /**
+     * Tests that the best candidate of batches of several sizes is the first one with the highest score.
+     */
+    @Test
+    public void bestIsArgMax() {
+        assertArgMax(new EvaluationScheduler());
+        EvaluationScheduler dedicated = new EvaluationScheduler(3);
+        try {
+            assertEquals(3, dedicated.getThreads());
+            assertArgMax(dedicated);
+        } finally {
+            dedicated.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a batch of a single candidate returns it with its score, even when the score is -Infinity.
+     */
+    @Test
+    public void singleCandidate() {
+        EvaluationScheduler scheduler = new EvaluationScheduler(2);
+        try {
+            Pair<String, Float> best = scheduler.best(Collections.singletonList("AB"), candidate -> Float.NEGATIVE_INFINITY);
+            assertEquals("AB", best.getFirst());
+            assertEquals(Float.NEGATIVE_INFINITY, best.getSecond(), 0f);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Tests that an empty batch has no best candidate and does not evaluate anything.
+     */
+    @Test
+    public void emptyBatch() {
+        assertNull(new EvaluationScheduler().best(new ArrayList<Integer>(), candidate -> {
+            throw new AssertionError("Nothing to evaluate");
+        }));
+    }
+
+    /**
+     * Tests that the scores of batches of several sizes, on a dedicated pool, are those of their candidates in order.
+     */
+    @Test
+    public void scoresInOrder() {
+        EvaluationScheduler scheduler = new EvaluationScheduler(3);
+        try {
+            assertEquals(0, scheduler.scores(new ArrayList<Integer>(), candidate -> {
+                throw new AssertionError("Nothing to evaluate");
+            }).length);
+            for (int size : new int[]{1, 2, 7, 100, 5000}) {
+                List<Integer> candidates = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    candidates.add(i);
+                }
+                float[] scores = scheduler.scores(candidates, candidate -> candidate * 0.5f - 3);
+                assertEquals(size, scores.length);
+                for (int i = 0; i < size; i++) {
+                    assertEquals("Size " + size, i * 0.5f - 3, scores[i], 0f);
+                }
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void assertArgMax(EvaluationScheduler scheduler) {
+        Random random = new Random(3);
+        for (int size : new int[]{1, 2, 7, 100, 5000}) {
+            // Few distinct scores, so that the best one is tied
+            float[] scores = new float[size];
+            List<Integer> candidates = new ArrayList<>();
+            int expected = 0;
+            for (int i = 0; i < size; i++) {
+                scores[i] = random.nextInt(20) - 30;
+                candidates.add(i);
+                if (scores[i] > scores[expected]) {
+                    expected = i;
+                }
+            }
+            Pair<Integer, Float> best = scheduler.best(candidates, candidate -> scores[candidate]);
+            assertEquals("Size " + size, expected, (int) best.getFirst());
+            assertEquals(scores[expected], best.getSecond(), 0f);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package es.usj.crypto;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the FitnessCache class.
+ *
+ * This class contains test cases to validate that the cache answers the scores it holds, counts its hits, misses and
+ * entries, and evicts with CLOCK the entries of a full set that were not used since the hand last passed them.
+ */
+public class FitnessCacheTest {
+
+    // A single set of 8 ways, so that every fingerprint competes for the same slots
+    private static final int CAPACITY = 8;
+
+    /**
+     * Tests that a cached score is returned, that a missing one is NaN, and that both are counted.
+     */
+    @Test
+    public void hitsAndMisses() {
+        FitnessCache cache = new FitnessCache(CAPACITY);
+        assertEquals(0, cache.getHitRate(), 0);
+        assertTrue(Float.isNaN(cache.get(1)));
+        cache.put(1, -12.5f);
+        assertEquals(-12.5f, cache.get(1), 0f);
+        assertEquals(-12.5f, cache.get(1), 0f);
+        assertTrue(Float.isNaN(cache.get(2)));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    /**
+     * Tests that putting a fingerprint again replaces its score without taking another slot.
+     */
+    @Test
+    public void overwrite() {
+        FitnessCache cache = new FitnessCache(CAPACITY);
+        cache.put(1, -20f);
+        cache.put(1, -10f);
+        assertEquals(-10f, cache.get(1), 0f);
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Tests that a full set evicts the first entry after the hand that was not referenced, clearing the referenced
+     * ones on the way, and that the size stays at the capacity.
+     */
+    @Test
+    public void clockEviction() {
+        FitnessCache cache = new FitnessCache(CAPACITY);
+        for (long fingerprint = 1; fingerprint <= CAPACITY; fingerprint++) {
+            cache.put(fingerprint, -fingerprint);
+            assertEquals(fingerprint, cache.size());
+        }
+        for (long fingerprint = 1; fingerprint <= 4; fingerprint++) {
+            cache.get(fingerprint);
+        }
+
+        // The hand passes the 4 referenced entries and evicts the 5th, then the 6th
+        cache.put(9, -9f);
+        cache.put(10, -10f);
+        assertEquals(CAPACITY, cache.size());
+        assertTrue(Float.isNaN(cache.get(5)));
+        assertTrue(Float.isNaN(cache.get(6)));
+        for (long fingerprint : new long[]{1, 2, 3, 4, 7, 8, 9, 10}) {
+            assertEquals(-fingerprint, cache.get(fingerprint), 0f);
+        }
+
+        // Every entry is referenced now, so the hand goes round once and evicts the entry after the last eviction
+        cache.put(11, -11f);
+        assertTrue(Float.isNaN(cache.get(7)));
+        assertEquals(-11f, cache.get(11), 0f);
+        assertEquals(CAPACITY, cache.size());
+    }
+
+    /**
+     * Tests that capacities that are not a power of two, or smaller than a set, are rejected.
+     */
+    @Test
+    public void rejectsCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new FitnessCache(12));
+        assertThrows(IllegalArgumentException.class, () -> new FitnessCache(4));
+        assertEquals(16, new FitnessCache(16).capacity());
+    }
+}
@@ -0,0 +1,66 @@
+package es.usj.crypto;
+
+import java.util.Random;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Reflector;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.ReflectorConfiguration;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the FitnessKernel class.
+ *
+ * This class contains test cases to validate that the kernel scores decryptions as
+ * {@link Entropy#getFitness(String, boolean)} does, in both modes, when words are separated by spaces, tabs and
+ * newlines.
+ */
+public class FitnessKernelTest {
+
+    private static final String CIPHER_TEXT = "KS HGLYDQMB KNESHP\tYDK ZF IDKLJE JRM QRESG F RGXM WVAVRT IXUDO NAY KPMPUTL\n" +
+            "MAQ TXYNI\tRVI BZGSO  MVHB BG ZKC\n\nYMPT XSR VUMCRZRG IBJ NOVMDUFVCDAC\t\tBFW A";
+    private static final float TOLERANCE = 1e-3f;
+
+    /**
+     * Tests that the decryptions of several plugboards and rotor positions get the same fitness from the kernel as
+     * from Entropy, with n-grams of the word length.
+     */
+    @Test
+    public void wordsMatchEntropy() {
+        assertMatchesEntropy(false);
+    }
+
+    /**
+     * Tests that the decryptions of several plugboards and rotor positions get the same fitness from the kernel as
+     * from Entropy, with the unigrams and bigrams used to rank rotors.
+     */
+    @Test
+    public void rotorsMatchEntropy() {
+        assertMatchesEntropy(true);
+    }
+
+    private static void assertMatchesEntropy(boolean rotorsAnalysis) {
+        Entropy entropy = new Entropy();
+        byte[] cipherText = CompiledMachine.normalize(CIPHER_TEXT);
+        FitnessKernel kernel = new FitnessKernel(entropy, cipherText);
+        byte[] decrypted = new byte[cipherText.length];
+        Random random = new Random(11);
+
+        for (int i = 0; i < 20; i++) {
+            PlugboardWiring plugboard = PlugboardWiring.random(random, 10);
+            CompiledMachine machine = new CompiledMachine(new Plugboard(plugboard.toString()),
+                    new Rotor(RotorConfiguration.ROTOR_II, (char) ('A' + random.nextInt(26))),
+                    new Rotor(RotorConfiguration.ROTOR_IV, (char) ('A' + random.nextInt(26))),
+                    new Rotor(RotorConfiguration.ROTOR_I, (char) ('A' + random.nextInt(26))),
+                    new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+            machine.encrypt(cipherText, decrypted);
+            String text = CompiledMachine.denormalize(decrypted);
+            assertEquals(entropy.getFitness(text, rotorsAnalysis), kernel.score(decrypted, rotorsAnalysis), TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the GeneticalPopulations class.
+ *
+ * This class contains test cases to validate that the islands of a search evolve on threads of their own, so that
+ * they migrate and answer snapshot requests while every worker of the common pool is busy.
+ */
+public class GeneticalPopulationsTest {
+
+    private static final String CIPHER_TEXT = "KS HGLYDQMB KNESHP YDK ZF IDKLJE JRM QRESG F RGXM WVAVRT IXUDO NAY KPMPUTL\n" +
+            "MAQ TXYNI RVI BZGSO MVHB BG ZKC YMPT XSR VUMCRZRG IBJ NOVMDUFVCDAC BFW";
+    private static final int ISLANDS = 4;
+    private static final int POPULATION = 4 * 40;
+
+    /**
+     * Tests that four islands, with the common pool saturated, migrate and give a mid-run snapshot with the
+     * population of every island, and that the search ends once stopped.
+     */
+    @Test
+    public void islandsSnapshotAndMigrate() throws InterruptedException {
+        // Other searches keep every worker of the common pool busy
+        CountDownLatch release = new CountDownLatch(1);
+        int workers = ForkJoinPool.commonPool().getParallelism();
+        for (int i = 0; i < workers; i++) {
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            Random random = new Random(13);
+            List<PlugboardWiring> population = new ArrayList<>();
+            Set<Long> keys = new HashSet<>();
+            while (population.size() < POPULATION) {
+                PlugboardWiring plugboard = PlugboardWiring.random(random, 10);
+                if (keys.add(plugboard.key())) {
+                    population.add(plugboard);
+                }
+            }
+            GeneticalPopulations genetical = new GeneticalPopulations(population, rotors(), CIPHER_TEXT);
+            genetical.setIslands(ISLANDS);
+            Thread thread = new Thread(genetical::optimize);
+            thread.start();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (genetical.getMigrations() < ISLANDS && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(genetical.getMigrations() >= ISLANDS);
+
+            genetical.requestSnapshot();
+            while (genetical.getSnapshot() == null && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            SearchCheckpoint.State snapshot = genetical.getSnapshot();
+            assertNotNull(snapshot);
+            assertTrue(thread.isAlive());
+            assertEquals(POPULATION, snapshot.getPending().length);
+            // Every island had evolved past its first migration
+            assertTrue(snapshot.getIterations() > 10);
+
+            genetical.stop();
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            assertFalse(thread.isAlive());
+            assertEquals(POPULATION, genetical.getSnapshot().getPending().length);
+            assertNotNull(genetical.getBestPlugboard());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static Rotor[] rotors() {
+        return new Rotor[]{
+                new Rotor(RotorConfiguration.ROTOR_III, 'K'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'D'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'R')
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package es.usj.crypto;
+
+import java.util.HashSet;
+import java.util.List;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the GreedyPlugboards class.
+ *
+ * This class contains test cases to validate that, with the rotors a long message was ciphered with, the cables
+ * placed one by one recover its plugboard, and that the seeds are distinct plugboards of 10 cables sharing most of
+ * them with it.
+ */
+public class GreedyPlugboardsTest {
+
+    private static final String PLAIN_TEXT = "THE WEATHER REPORT FOR THE NORTHERN SECTOR IS CLEAR WITH LIGHT WINDS FROM THE " +
+            "WEST AND THE CONVOY WILL LEAVE THE HARBOUR AT DAWN TOMORROW UNDER ESCORT OF TWO DESTROYERS AND ONE CRUISER " +
+            "ALL UNITS ARE TO KEEP RADIO SILENCE UNTIL THE CONVOY HAS PASSED THE MINEFIELDS AND REACHED THE OPEN SEA " +
+            "SUPPLY SHIPS WILL FOLLOW THE SECOND GROUP AND WAIT FOR ORDERS NEAR THE COAST WHERE THE AIR PATROLS CAN " +
+            "PROTECT THEM FROM ATTACK BY SUBMARINES REPORT ANY CONTACT WITH THE ENEMY TO HEADQUARTERS AT ONCE";
+    private static final String PLUGBOARD = "IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK";
+    private static final int SEEDS = 8;
+
+    /**
+     * Tests that the best seed of messages ciphered with several rotor settings is their plugboard, and that every
+     * seed is a distinct plugboard of 10 cables with most of them right.
+     */
+    @Test
+    public void seedsRecoverPlugboard() {
+        PlugboardWiring truth = PlugboardWiring.parse(PLUGBOARD);
+        EvaluationScheduler scheduler = new EvaluationScheduler(2);
+        try {
+            for (int index : new int[]{20000, 3 * RotorSettings.POSITIONS + 9000, 7 * RotorSettings.POSITIONS + 1234}) {
+                Rotor[] rotors = RotorSettings.getRotors(index);
+                GreedyPlugboards greedy = new GreedyPlugboards(rotors, cipher(rotors), new Entropy(), scheduler);
+                List<PlugboardWiring> seeds = greedy.seeds(SEEDS);
+
+                assertFalse(seeds.isEmpty());
+                assertTrue(seeds.size() <= SEEDS);
+                assertEquals(seeds.size(), new HashSet<>(seeds).size());
+                assertEquals("Rotors " + index, truth, seeds.get(0));
+                for (PlugboardWiring seed : seeds) {
+                    assertEquals(10, seed.cables());
+                    assertTrue(seed + " against " + truth, common(seed, truth) >= 6);
+                }
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Tests that completing a plugboard keeps its cables, and that completing the right first cables gives the
+     * plugboard of the message.
+     */
+    @Test
+    public void completeKeepsCables() {
+        PlugboardWiring truth = PlugboardWiring.parse(PLUGBOARD);
+        Rotor[] rotors = RotorSettings.getRotors(20000);
+        GreedyPlugboards greedy = new GreedyPlugboards(rotors, cipher(rotors), new Entropy(), new EvaluationScheduler());
+        PlugboardWiring start = PlugboardWiring.parse("IR:HQ:NT");
+        assertEquals(truth, greedy.complete(start));
+
+        PlugboardWiring wrong = PlugboardWiring.parse("AB:CD");
+        PlugboardWiring completed = greedy.complete(wrong);
+        assertEquals(10, completed.cables());
+        assertEquals(2, common(completed, wrong));
+    }
+
+    private static String cipher(Rotor[] rotors) {
+        return new CompiledMachine(new Plugboard(PLUGBOARD), rotors[0], rotors[1], rotors[2], HeuristicDecryptor.REFLECTOR)
+                .getCipheredText(PLAIN_TEXT);
+    }
+
+    // Cables of the first plugboard that are in the second one as well
+    private static int common(PlugboardWiring first, PlugboardWiring second) {
+        int plugged = 0;
+        for (int c = 0; c < 26; c++) {
+            if (first.isPlugged(c) && first.getMapping()[c] == second.getMapping()[c]) {
+                plugged++;
+            }
+        }
+        return plugged / 2;
+    }
+}
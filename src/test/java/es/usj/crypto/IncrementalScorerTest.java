@@ -0,0 +1,78 @@
+package es.usj.crypto;
+
+import java.util.Random;
+
+import es.usj.crypto.enigma.CompiledMachine;
+import es.usj.crypto.enigma.Plugboard;
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Reflector;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.ScramblerTrace;
+import es.usj.crypto.enigma.constant.ReflectorConfiguration;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the IncrementalScorer class.
+ *
+ * This class contains test cases to validate that the fitness kept by the scorer, and the fitness of candidates
+ * scored as a delta over it, match the full rescoring of {@link Entropy#getTraceFitness(ScramblerTrace, byte[])}.
+ */
+public class IncrementalScorerTest {
+
+    private static final String CIPHER_TEXT = "KS HGLYDQMB KNESHP YDK ZF IDKLJE JRM QRESG F RGXM WVAVRT IXUDO NAY KPMPUTL\n" +
+            "MAQ TXYNI RVI BZGSO MVHB BG ZKC YMPT XSR VUMCRZRG IBJ NOVMDUFVCDAC BFW";
+    private static final float TOLERANCE = 1e-3f;
+
+    /**
+     * Tests that a chain of cable swaps and replacements, scored as deltas and accepted one by one, keeps the same
+     * fitness and decryption as rescoring every plugboard of the chain.
+     */
+    @Test
+    public void deltasMatchEntropy() {
+        Entropy entropy = new Entropy();
+        ScramblerTrace trace = new CompiledMachine(new Plugboard(""),
+                new Rotor(RotorConfiguration.ROTOR_III, 'K'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'D'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'R'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT)).trace(CompiledMachine.normalize(CIPHER_TEXT));
+        IncrementalScorer scorer = new IncrementalScorer(entropy, trace);
+        Random random = new Random(7);
+
+        PlugboardWiring current = PlugboardWiring.random(random, 10);
+        scorer.setPlugboard(current.getMapping());
+        assertEquals(entropy.getTraceFitness(trace, current.getMapping()), scorer.getFitness(), TOLERANCE);
+
+        for (int step = 0; step < 200; step++) {
+            PlugboardWiring candidate;
+            if (step % 2 == 0) {
+                candidate = current.swap(random.nextInt(26), random.nextInt(26));
+            } else {
+                int[] cables = current.getCables();
+                int cable = cables[random.nextInt(cables.length)];
+                PlugboardWiring unplugged = current.unplug(cable);
+                int first;
+                int second;
+                do {
+                    first = random.nextInt(26);
+                    second = random.nextInt(26);
+                } while (first == second || unplugged.isPlugged(first) || unplugged.isPlugged(second));
+                candidate = current.replace(cable, first, second);
+            }
+            float expected = entropy.getTraceFitness(trace, candidate.getMapping());
+            assertEquals(expected, scorer.getFitness(candidate.getMapping()), TOLERANCE);
+
+            // Accept two candidates out of three, so that deltas are also scored over accepted plugboards
+            if (step % 3 != 0) {
+                scorer.accept(candidate.getMapping());
+                current = candidate;
+                assertEquals(expected, scorer.getFitness(), TOLERANCE);
+                byte[] decryption = new byte[trace.length()];
+                trace.decrypt(current.getMapping(), decryption);
+                assertArrayEquals(decryption, scorer.getDecryption());
+            }
+        }
+    }
+}
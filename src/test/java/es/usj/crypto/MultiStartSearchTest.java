@@ -0,0 +1,228 @@
+package es.usj.crypto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import es.usj.crypto.enigma.Rotor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MultiStartSearch class.
+ *
+ * This class contains test cases to validate, with stub heuristics whose fitness grows at a fixed pace, that the
+ * searches stop within the budget, that the worst and stagnating searches are pruned at the checkpoints, that the
+ * best search is kept, and that a resumed search keeps its pruned candidates and elapsed time.
+ */
+public class MultiStartSearchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that every search is stopped, and run() returns, once the budget is spent.
+     */
+    @Test
+    public void stopsWithinBudget() {
+        List<StubSearch> stubs = stubs(new float[]{0, 10, 20}, new float[]{1, 1, 1});
+        long start = System.nanoTime();
+        EnigmaHeuristic best = search(stubs, Duration.ofMillis(500)).run();
+        long elapsed = System.nanoTime() - start;
+        assertTrue("Elapsed " + elapsed, elapsed >= Duration.ofMillis(450).toNanos());
+        assertTrue("Elapsed " + elapsed, elapsed < Duration.ofMillis(2500).toNanos());
+        for (StubSearch stub : stubs) {
+            assertTrue(stub.returned);
+        }
+        assertSame(stubs.get(2), best);
+    }
+
+    /**
+     * Tests that the worst half of the running searches is pruned at a checkpoint, that a search in the best half
+     * that did not improve since the previous checkpoint is pruned too, and that the best search runs to the end.
+     */
+    @Test
+    public void prunesWorstAndStagnating() {
+        // Search 1 is the second best but never improves; searches 4 to 7 are the worst half
+        List<StubSearch> stubs = stubs(new float[]{1000, 900, 800, 700, 600, 500, 400, 300},
+                new float[]{1, 0, 1, 1, 1, 1, 1, 1});
+        MultiStartSearch search = search(stubs, Duration.ofMillis(2000));
+        long start = System.nanoTime();
+        search.run();
+
+        // Checkpoints come every 200 ms: the worst half goes at the first one, the stagnating search at the second
+        for (int i = 4; i < 8; i++) {
+            assertTrue("Search " + i, stubs.get(i).stoppedAt - start < Duration.ofMillis(1000).toNanos());
+        }
+        // By the third checkpoint the stagnating search would be in the worst half as well
+        assertTrue(stubs.get(1).stoppedAt - start < Duration.ofMillis(550).toNanos());
+        assertTrue(stubs.get(0).stoppedAt - start >= Duration.ofMillis(1800).toNanos());
+        assertSame(stubs.get(0), search.getBest());
+        assertArrayEquals(RotorSettings.getRotors(0), search.getBestRotors());
+    }
+
+    /**
+     * Tests that a search resumed from a checkpoint restores its searches, keeps the pruned ones stopped, and only
+     * runs for the rest of the budget.
+     */
+    @Test
+    public void resumesCheckpoint() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("checkpoint.bin");
+        Duration budget = Duration.ofMillis(1000);
+        List<SearchCheckpoint.State> states = Arrays.asList(
+                new StubSearch(RotorSettings.getRotors(0), 0, 1).state(-50, 7),
+                new StubSearch(RotorSettings.getRotors(1), 0, 1).state(-80, 3));
+        new SearchCheckpoint(42, budget.toNanos() * 6 / 10, states, new boolean[]{false, true},
+                new float[]{-60, -80}).write(path);
+
+        List<StubSearch> stubs = stubs(new float[]{0, 0}, new float[]{1, 1});
+        MultiStartSearch search = search(stubs, budget);
+        search.setCheckpoint(path, 42, Duration.ofMinutes(1));
+        search.resume(SearchCheckpoint.read(path));
+        long start = System.nanoTime();
+        search.run();
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue("Elapsed " + elapsed, elapsed < Duration.ofMillis(800).toNanos());
+        assertEquals(7, stubs.get(0).restored.getIterations());
+        assertTrue(stubs.get(0).started);
+        assertTrue(stubs.get(0).getBestFitness() > -50);
+        assertFalse(stubs.get(1).started);
+        assertEquals(-80, stubs.get(1).getBestFitness(), 0f);
+
+        // The final checkpoint keeps the pruned search and adds the time of this run
+        SearchCheckpoint checkpoint = SearchCheckpoint.read(path);
+        assertFalse(checkpoint.isPruned(0));
+        assertTrue(checkpoint.isPruned(1));
+        assertTrue(checkpoint.getElapsedNanos() >= budget.toNanos() * 6 / 10);
+    }
+
+    /**
+     * Tests that a search without candidates returns no best search.
+     */
+    @Test
+    public void noCandidates() {
+        MultiStartSearch search = new MultiStartSearch(Collections.emptyList(), rotors -> {
+            throw new AssertionError("No search to create");
+        }, Duration.ofSeconds(1));
+        assertNull(search.run());
+        assertNull(search.getBestRotors());
+        search.interrupt(Duration.ofSeconds(1));
+    }
+
+    private static List<StubSearch> stubs(float[] initial, float[] steps) {
+        List<StubSearch> stubs = new ArrayList<>();
+        for (int i = 0; i < initial.length; i++) {
+            stubs.add(new StubSearch(RotorSettings.getRotors(i), initial[i], steps[i]));
+        }
+        return stubs;
+    }
+
+    private static MultiStartSearch search(List<StubSearch> stubs, Duration budget) {
+        List<Rotor[]> candidates = new ArrayList<>();
+        for (StubSearch stub : stubs) {
+            candidates.add(stub.rotors);
+        }
+        return new MultiStartSearch(candidates, rotors -> stubs.get(candidates.indexOf(rotors)), budget);
+    }
+
+    /**
+     * Heuristic whose fitness grows by a fixed step every millisecond until it is stopped.
+     */
+    private static final class StubSearch implements EnigmaHeuristic {
+        private final Rotor[] rotors;
+        private final float step;
+        private volatile float fitness;
+        private volatile long iterations;
+        private volatile boolean stopped;
+        private volatile boolean snapshotRequested;
+        private volatile SearchCheckpoint.State snapshot;
+        private volatile SearchCheckpoint.State restored;
+        private volatile boolean started;
+        private volatile boolean returned;
+        private volatile long stoppedAt;
+
+        private StubSearch(Rotor[] rotors, float initial, float step) {
+            this.rotors = rotors;
+            this.fitness = initial;
+            this.step = step;
+        }
+
+        private SearchCheckpoint.State state(float fitness, long iterations) {
+            return new SearchCheckpoint.State(rotors, null, fitness, iterations, new long[0]);
+        }
+
+        @Override
+        public void optimize() {
+            started = true;
+            while (!stopped) {
+                if (snapshotRequested) {
+                    snapshotRequested = false;
+                    snapshot = state(fitness, iterations);
+                }
+                fitness += step;
+                iterations++;
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            snapshot = state(fitness, iterations);
+            returned = true;
+        }
+
+        @Override
+        public void stop() {
+            if (!stopped) {
+                stoppedAt = System.nanoTime();
+                stopped = true;
+            }
+        }
+
+        @Override
+        public void requestSnapshot() {
+            snapshotRequested = true;
+        }
+
+        @Override
+        public SearchCheckpoint.State getSnapshot() {
+            return snapshot;
+        }
+
+        @Override
+        public void restore(SearchCheckpoint.State state) {
+            restored = state;
+            snapshot = state;
+            fitness = state.getBestFitness();
+            iterations = state.getIterations();
+        }
+
+        @Override
+        public float getBestFitness() {
+            return fitness;
+        }
+
+        @Override
+        public String getBestPlugboard() {
+            return null;
+        }
+
+        @Override
+        public String getBestDecryptedMessage() {
+            return null;
+        }
+
+        @Override
+        public void setResultSink(ResultSink resultSink) {
+        }
+    }
+}
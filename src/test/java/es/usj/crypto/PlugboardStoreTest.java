@@ -0,0 +1,136 @@
+package es.usj.crypto;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the PlugboardStore class.
+ *
+ * This class contains test cases to validate that the store records each plugboard once, keeps its best score, stops
+ * accepting new plugboards when it is full, and keeps its content when it is reopened.
+ */
+public class PlugboardStoreTest {
+
+    private static final int CAPACITY = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that a store accepts new plugboards until it is three quarters full, and then rejects them while still
+     * raising the scores of the plugboards it holds.
+     */
+    @Test
+    public void fillUp() throws IOException {
+        List<Long> fingerprints = fingerprints(CAPACITY);
+        try (PlugboardStore store = PlugboardStore.open(folder.getRoot().toPath().resolve("store"), CAPACITY, true)) {
+            for (int i = 0; i < CAPACITY / 4 * 3; i++) {
+                assertFalse(store.isFull());
+                assertTrue(store.record(fingerprints.get(i), Float.NaN));
+            }
+            assertTrue(store.isFull());
+            assertEquals(CAPACITY / 4 * 3, store.size());
+            for (int i = CAPACITY / 4 * 3; i < CAPACITY; i++) {
+                assertFalse(store.record(fingerprints.get(i), 1f));
+                assertFalse(store.contains(fingerprints.get(i)));
+            }
+            assertFalse(store.record(fingerprints.get(0), 2f));
+            assertEquals(2f, store.getScore(fingerprints.get(0)), 0f);
+            assertEquals(CAPACITY / 4 * 3, store.size());
+        }
+    }
+
+    /**
+     * Tests that a recorded score is only replaced by a higher one, and that a plugboard recorded without score reads
+     * as not scored.
+     */
+    @Test
+    public void raiseScore() throws IOException {
+        long fingerprint = fingerprints(1).get(0);
+        try (PlugboardStore store = PlugboardStore.open(folder.getRoot().toPath().resolve("store"), CAPACITY, false)) {
+            assertTrue(Float.isNaN(store.getScore(fingerprint)));
+            assertTrue(store.record(fingerprint, Float.NaN));
+            assertTrue(Float.isNaN(store.getScore(fingerprint)));
+            assertFalse(store.record(fingerprint, -20f));
+            assertEquals(-20f, store.getScore(fingerprint), 0f);
+            store.record(fingerprint, -30f);
+            assertEquals(-20f, store.getScore(fingerprint), 0f);
+            store.record(fingerprint, Float.NaN);
+            assertEquals(-20f, store.getScore(fingerprint), 0f);
+            store.record(fingerprint, -10f);
+            assertEquals(-10f, store.getScore(fingerprint), 0f);
+            assertEquals(1, store.size());
+        }
+    }
+
+    /**
+     * Tests that a reopened store, with its Bloom filter rebuilt, still holds the plugboards and scores of the
+     * previous run, and the capacity it was created with.
+     */
+    @Test
+    public void reopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("store");
+        List<Long> fingerprints = fingerprints(8);
+        try (PlugboardStore store = PlugboardStore.open(path, CAPACITY, true)) {
+            for (int i = 0; i < 4; i++) {
+                store.record(fingerprints.get(i), i);
+            }
+        }
+        try (PlugboardStore store = PlugboardStore.open(path, 2 * CAPACITY, true)) {
+            assertEquals(CAPACITY, store.capacity());
+            assertEquals(4, store.size());
+            for (int i = 0; i < 4; i++) {
+                assertTrue(store.contains(fingerprints.get(i)));
+                assertFalse(store.record(fingerprints.get(i), Float.NaN));
+                assertEquals(i, store.getScore(fingerprints.get(i)), 0f);
+            }
+            for (int i = 4; i < 8; i++) {
+                assertFalse(store.contains(fingerprints.get(i)));
+            }
+            assertTrue(store.record(fingerprints.get(4), Float.NaN));
+            assertEquals(5, store.size());
+        }
+    }
+
+    /**
+     * Tests that migrating a text file imports each of its plugboards once and renames the file.
+     */
+    @Test
+    public void migrate() throws IOException {
+        Path textFile = folder.getRoot().toPath().resolve("plugboards.txt");
+        Files.write(textFile, Arrays.asList("AB:CD:EF", "", "GH:IJ", "AB:CD:EF", "KL"));
+        try (PlugboardStore store = PlugboardStore.open(folder.getRoot().toPath().resolve("store"), CAPACITY, true)) {
+            assertEquals(3, store.migrate(textFile, 7));
+            assertEquals(3, store.size());
+            assertTrue(store.contains(PlugboardStore.fingerprint(PlugboardWiring.parse("GH:IJ"), 7)));
+            assertFalse(store.contains(PlugboardStore.fingerprint(PlugboardWiring.parse("GH:IJ"), 8)));
+        }
+        assertFalse(Files.exists(textFile));
+        assertTrue(Files.exists(Paths.get(textFile + ".migrated")));
+    }
+
+    private static List<Long> fingerprints(int count) {
+        Random random = new Random(13);
+        List<Long> fingerprints = new ArrayList<>();
+        while (fingerprints.size() < count) {
+            long fingerprint = PlugboardStore.fingerprint(PlugboardWiring.random(random, 10), 0);
+            if (!fingerprints.contains(fingerprint)) {
+                fingerprints.add(fingerprint);
+            }
+        }
+        return fingerprints;
+    }
+}
@@ -0,0 +1,215 @@
+package es.usj.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ResultSink class.
+ *
+ * This class contains test cases to validate that improvements submitted while the queue is full are coalesced and
+ * counted but still reach the log and the summary, that only the best result of each search in a batch is logged,
+ * that closing the sink writes every pending result, and that the log lines are valid JSON.
+ */
+public class ResultSinkTest {
+
+    private static final Pattern LINE = Pattern.compile("\"rotors\":\"([^\"]*)\",\"fitness\":([^,]*),");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the improvements submitted while the writer is stalled and the queue is full are counted as
+     * coalesced, that only the best result of each search in the queued batch is logged, and that the best dropped
+     * results are logged and summarized when the sink is closed.
+     */
+    @Test
+    public void coalescesWhenFull() throws IOException, InterruptedException {
+        Path log = folder.getRoot().toPath().resolve("results.jsonl");
+        Path summary = folder.getRoot().toPath().resolve("summary.txt");
+        StallingStream stream = new StallingStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(stream, true));
+        try {
+            ResultSink sink = new ResultSink(log, summary, Duration.ofHours(1), 4);
+            // The writer takes the first result and stalls printing it
+            sink.submit("A", 1, "AB", "FIRST");
+            assertTrue(stream.stalled.await(10, TimeUnit.SECONDS));
+
+            // Fills the queue with a batch for the same search
+            for (float fitness : new float[]{3, 5, 2, 4}) {
+                sink.submit("A", fitness, "AB", "QUEUED");
+            }
+            assertEquals(4, sink.getQueueDepth());
+            assertEquals(0, sink.getCoalesced());
+
+            // Dropped, but 10 and 100 are the best results of their searches
+            sink.submit("A", 7, "AB", "DROPPED");
+            sink.submit("A", 10, "CD", "BEST");
+            sink.submit("A", 6, "AB", "DROPPED");
+            sink.submit("B", 100, "EF", "ONLY");
+            sink.submit("B", 50, "EF", "DROPPED");
+            assertEquals(5, sink.getCoalesced());
+
+            stream.release.countDown();
+            sink.close();
+        } finally {
+            System.setOut(out);
+        }
+
+        List<String> logged = new ArrayList<>();
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            Matcher matcher = LINE.matcher(line);
+            assertTrue(line, matcher.find());
+            logged.add(matcher.group(1) + "=" + Float.parseFloat(matcher.group(2)));
+        }
+        assertEquals(4, logged.size());
+        assertEquals(Arrays.asList("A=1.0", "A=5.0"), logged.subList(0, 2));
+        assertTrue(logged.containsAll(Arrays.asList("A=10.0", "B=100.0")));
+
+        String text = new String(Files.readAllBytes(summary), StandardCharsets.UTF_8);
+        assertTrue(text, text.startsWith("Plugboard: EF\nScore (Fitness): 100.0\nRotors: B\nDecrypted Message: ONLY\n"));
+        assertTrue(text, text.contains("CD"));
+    }
+
+    /**
+     * Tests that closing the sink right after submitting results logs the best result of every search and writes
+     * the summary.
+     */
+    @Test
+    public void closeDrainsPending() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("results.jsonl");
+        Path summary = folder.getRoot().toPath().resolve("summary.txt");
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            ResultSink sink = new ResultSink(log, summary, Duration.ofHours(1));
+            for (int i = 0; i < 200; i++) {
+                sink.submit("S" + i % 10, i, "AB", "MESSAGE");
+            }
+            sink.close();
+            assertEquals(0, sink.getQueueDepth());
+            // A closed sink ignores a second close
+            sink.close();
+        } finally {
+            System.setOut(out);
+        }
+
+        Map<String, Float> bests = new HashMap<>();
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            Matcher matcher = LINE.matcher(line);
+            assertTrue(line, matcher.find());
+            bests.merge(matcher.group(1), Float.parseFloat(matcher.group(2)), Math::max);
+        }
+        assertEquals(10, bests.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(190f + i, bests.get("S" + i), 0f);
+        }
+        assertTrue(Files.readAllLines(summary, StandardCharsets.UTF_8).contains("Score (Fitness): 199.0"));
+    }
+
+    /**
+     * Tests that quotes, backslashes and control characters are escaped into a JSON string that reads back as the
+     * original value.
+     */
+    @Test
+    public void quoteEscapesJson() {
+        assertEquals("null", ResultSink.quote(null));
+        assertEquals("\"\"", ResultSink.quote(""));
+        assertEquals("\"A\\\"B\\\\C\"", ResultSink.quote("A\"B\\C"));
+        assertEquals("\"\\n\\r\\t\\u0001\\u001f\"", ResultSink.quote("\n\r\t\u0001\u001f"));
+
+        StringBuilder value = new StringBuilder("HEIL \"WETTER\" \\ ");
+        for (char c = 0; c < 0x80; c++) {
+            value.append(c);
+        }
+        String quoted = ResultSink.quote(value.toString());
+        for (char c : quoted.toCharArray()) {
+            assertTrue("Raw control character " + (int) c, c >= 0x20);
+        }
+        assertEquals(value.toString(), unquote(quoted));
+    }
+
+    // Reads a JSON string literal, failing on anything the JSON grammar does not allow
+    private static String unquote(String quoted) {
+        assertTrue(quoted.length() >= 2 && quoted.charAt(0) == '"' && quoted.charAt(quoted.length() - 1) == '"');
+        StringBuilder value = new StringBuilder();
+        for (int i = 1; i < quoted.length() - 1; i++) {
+            char c = quoted.charAt(i);
+            assertNotEquals("Unescaped quote at " + i, '"', c);
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escape = quoted.charAt(++i);
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append(escape);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(quoted.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    fail("Invalid escape \\" + escape);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Output stream that stalls the result writer thread on its first write until it is released.
+     */
+    private static final class StallingStream extends OutputStream {
+        private final CountDownLatch stalled = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void write(int b) {
+            if ("result-sink".equals(Thread.currentThread().getName())) {
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
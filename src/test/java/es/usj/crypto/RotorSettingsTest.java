@@ -0,0 +1,63 @@
+package es.usj.crypto;
+
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the RotorSettings class.
+ *
+ * This class contains test cases to validate that decoding the dense index lists every rotor setting once, in the
+ * order of the former list of "L%d-%c M%d-%c R%d-%c" combinations.
+ */
+public class RotorSettingsTest {
+
+    /**
+     * Tests that every index decodes to the combination listed at the same place by the nested loops over rotor types
+     * and positions, both as text and as rotors.
+     */
+    @Test
+    public void indexesFollowCombinationsOrder() {
+        int index = 0;
+        for (int leftRotor = 1; leftRotor <= 5; leftRotor++) {
+            for (int middleRotor = 1; middleRotor <= 5; middleRotor++) {
+                for (int rightRotor = 1; rightRotor <= 5; rightRotor++) {
+                    if (leftRotor == middleRotor || middleRotor == rightRotor || leftRotor == rightRotor) {
+                        continue;
+                    }
+                    for (char leftPosition = 'A'; leftPosition <= 'Z'; leftPosition++) {
+                        for (char middlePosition = 'A'; middlePosition <= 'Z'; middlePosition++) {
+                            for (char rightPosition = 'A'; rightPosition <= 'Z'; rightPosition++) {
+                                String combination = String.format("L%d-%c M%d-%c R%d-%c",
+                                        leftRotor, leftPosition,
+                                        middleRotor, middlePosition,
+                                        rightRotor, rightPosition);
+                                assertEquals(combination, RotorSettings.toString(index));
+                                index++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(RotorSettings.COUNT, index);
+    }
+
+    /**
+     * Tests that the rotors of an index have the types and positions of its combination.
+     */
+    @Test
+    public void getRotors() {
+        // Rotor order 1 is L1 M2 R4, the second one listed
+        int index = RotorSettings.POSITIONS + ('K' - 'A') * 26 * 26 + ('C' - 'A') * 26 + ('F' - 'A');
+        assertEquals("L1-K M2-C R4-F", RotorSettings.toString(index));
+        assertEquals(1, RotorSettings.getRotorOrder(index));
+        assertArrayEquals(new Rotor[]{
+            new Rotor(RotorConfiguration.ROTOR_I, 'K'),
+            new Rotor(RotorConfiguration.ROTOR_II, 'C'),
+            new Rotor(RotorConfiguration.ROTOR_IV, 'F')
+        }, RotorSettings.getRotors(index));
+    }
+}
@@ -0,0 +1,92 @@
+package es.usj.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SearchCheckpoint class.
+ *
+ * This class contains test cases to validate that a checkpoint read back from its file holds the state it was
+ * written with, and that files of another format are rejected.
+ */
+public class SearchCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that writing and reading a checkpoint keeps its tag, elapsed time, pruning state and the state of every
+     * search, including a search that did not score any plugboard yet.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("checkpoint.bin");
+        Rotor[] rotors = {
+            new Rotor(RotorConfiguration.ROTOR_III, 'K', 'B'),
+            new Rotor(RotorConfiguration.ROTOR_I, 'D', 'Q'),
+            new Rotor(RotorConfiguration.ROTOR_V, 'R')
+        };
+        PlugboardWiring best = PlugboardWiring.parse("AB:CD:EF:GH:IJ:KL:MN:OP:QR:ST");
+        SearchCheckpoint.State scored = new SearchCheckpoint.State(rotors, best, -1234.5f, 42,
+                new long[]{best.key(), PlugboardWiring.parse("AZ").key()});
+        SearchCheckpoint.State empty = new SearchCheckpoint.State(rotors, null, Float.NEGATIVE_INFINITY, 0, new long[0]);
+        new SearchCheckpoint(0x1234567890L, 5_000_000_000L, Arrays.asList(scored, empty),
+                new boolean[]{false, true}, new float[]{-1300f, Float.NEGATIVE_INFINITY}).write(path);
+        assertFalse(Files.exists(path.resolveSibling("checkpoint.bin.tmp")));
+
+        SearchCheckpoint checkpoint = SearchCheckpoint.read(path);
+        assertEquals(0x1234567890L, checkpoint.getTag());
+        assertEquals(5_000_000_000L, checkpoint.getElapsedNanos());
+        assertEquals(2, checkpoint.getStates().size());
+        assertFalse(checkpoint.isPruned(0));
+        assertTrue(checkpoint.isPruned(1));
+        assertEquals(-1300f, checkpoint.getLastFitness(0), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, checkpoint.getLastFitness(1), 0f);
+        assertArrayEquals(rotors, checkpoint.getRotors().get(1));
+
+        SearchCheckpoint.State state = checkpoint.getStates().get(0);
+        assertArrayEquals(rotors, state.getRotors());
+        assertEquals(best, state.getBestPlugboard());
+        assertEquals(-1234.5f, state.getBestFitness(), 0f);
+        assertEquals(42, state.getIterations());
+        assertArrayEquals(scored.getPending(), state.getPending());
+        assertNull(checkpoint.getStates().get(1).getBestPlugboard());
+        assertEquals(0, checkpoint.getStates().get(1).getPending().length);
+    }
+
+    /**
+     * Tests that a checkpoint written with another format version, as the first one that also stored the visited
+     * plugboards, is not read.
+     */
+    @Test
+    public void rejectsOtherVersion() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("checkpoint.bin");
+        new SearchCheckpoint(1, 0, Arrays.asList(), new boolean[0], new float[0]).write(path);
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).putInt(4, 1);
+        Files.write(path, bytes);
+        assertThrows(IOException.class, () -> SearchCheckpoint.read(path));
+    }
+
+    /**
+     * Tests that a file that is not a checkpoint is not read.
+     */
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("checkpoint.bin");
+        Files.write(path, "AB:CD:EF\nGH:IJ\n".getBytes());
+        assertThrows(IOException.class, () -> SearchCheckpoint.read(path));
+    }
+}
@@ -0,0 +1,153 @@
+package es.usj.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import es.usj.crypto.enigma.PlugboardWiring;
+import es.usj.crypto.enigma.Rotor;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SimulatedAnnealing class.
+ *
+ * This class contains test cases to validate that the moves of the chains keep the number of cables and give valid
+ * plugboards, that a restored search continues its chains from the plugboards of the checkpoint, and that stop()
+ * ends the optimization at the end of the current round.
+ */
+public class SimulatedAnnealingTest {
+
+    private static final String CIPHER_TEXT = "KS HGLYDQMB KNESHP YDK ZF IDKLJE JRM QRESG F RGXM WVAVRT IXUDO NAY KPMPUTL\n" +
+            "MAQ TXYNI RVI BZGSO MVHB BG ZKC YMPT XSR VUMCRZRG IBJ NOVMDUFVCDAC BFW";
+    private static final int ROUND_STEPS = 4096;
+
+    /**
+     * Tests that the proposed moves keep the number of cables of the plugboard, from none to thirteen, and give an
+     * involution without fixed points on the plugged letters.
+     */
+    @Test
+    public void proposeKeepsCables() {
+        Random random = new Random(11);
+        SplittableRandom moves = new SplittableRandom(11);
+        for (int cables = 0; cables <= 13; cables++) {
+            PlugboardWiring plugboard = PlugboardWiring.random(random, cables);
+            for (int step = 0; step < 500; step++) {
+                plugboard = SimulatedAnnealing.propose(plugboard, moves);
+                assertEquals(cables, plugboard.cables());
+                byte[] mapping = plugboard.getMapping();
+                int plugged = 0;
+                for (int c = 0; c < 26; c++) {
+                    assertEquals(c, mapping[mapping[c]]);
+                    assertEquals(mapping[c] != c, plugboard.isPlugged(c));
+                    plugged += plugboard.isPlugged(c) ? 1 : 0;
+                }
+                assertEquals(2 * cables, plugged);
+                // Keys, as stored in the checkpoints, are unique up to 11 cables
+                if (cables <= 11) {
+                    assertEquals(plugboard, PlugboardWiring.fromKey(plugboard.key()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a restored search starts one chain from each plugboard of the checkpoint and keeps its best
+     * plugboard and step count.
+     */
+    @Test
+    public void restoreStartsFromPending() {
+        Random random = new Random(5);
+        long[] pending = new long[3];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = PlugboardWiring.random(random, 10).key();
+        }
+        PlugboardWiring best = PlugboardWiring.random(random, 10);
+        EvaluationScheduler scheduler = new EvaluationScheduler(2);
+        try {
+            SimulatedAnnealing annealing = new SimulatedAnnealing(rotors(), new ArrayList<>(), CIPHER_TEXT, scheduler, 3);
+            annealing.restore(new SearchCheckpoint.State(rotors(), best, -12.5f, 81920, pending));
+            assertEquals(best.toString(), annealing.getBestPlugboard());
+            assertEquals(-12.5f, annealing.getBestFitness(), 0f);
+
+            // Stopped before the first round, so the snapshot holds the plugboards the chains start from
+            annealing.stop();
+            annealing.optimize();
+            SearchCheckpoint.State snapshot = annealing.getSnapshot();
+            assertArrayEquals(pending, snapshot.getPending());
+            assertEquals(81920, snapshot.getIterations());
+            assertEquals(best, snapshot.getBestPlugboard());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Tests that stop() ends the optimization after at most one more round of every chain, on a pool with fewer
+     * threads than chains.
+     */
+    @Test
+    public void stopEndsWithinRound() throws InterruptedException {
+        Random random = new Random(9);
+        List<PlugboardWiring> plugboards = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            plugboards.add(PlugboardWiring.random(random, 10));
+        }
+        int chains = 3;
+        EvaluationScheduler scheduler = new EvaluationScheduler(2);
+        try {
+            SimulatedAnnealing annealing = new SimulatedAnnealing(rotors(), plugboards, CIPHER_TEXT, scheduler, chains);
+            Thread thread = new Thread(annealing::optimize);
+            thread.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (annealing.getSteps() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            long steps = annealing.getSteps();
+            assertTrue(steps > 0);
+            annealing.stop();
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+            assertFalse(thread.isAlive());
+
+            assertTrue(annealing.getSteps() - steps <= (long) chains * ROUND_STEPS);
+            assertEquals(0, annealing.getSteps() % ((long) chains * ROUND_STEPS));
+            assertEquals(chains, annealing.getSnapshot().getPending().length);
+            assertNotNull(annealing.getBestPlugboard());
+            assertTrue(annealing.getBestFitness() > Float.NEGATIVE_INFINITY);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Tests that the chains of a search default to the share of the pool it is given.
+     */
+    @Test
+    public void chainsShareScheduler() {
+        EvaluationScheduler scheduler = new EvaluationScheduler(8);
+        try {
+            assertEquals(2, scheduler.share(4));
+            assertEquals(1, scheduler.share(20));
+            assertEquals(8, scheduler.share(0));
+
+            SimulatedAnnealing annealing = new SimulatedAnnealing(rotors(), new ArrayList<>(), CIPHER_TEXT, scheduler);
+            annealing.stop();
+            annealing.optimize();
+            assertEquals(8, annealing.getSnapshot().getPending().length);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static Rotor[] rotors() {
+        return new Rotor[]{
+                new Rotor(RotorConfiguration.ROTOR_III, 'K'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'D'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'R')
+        };
+    }
+}
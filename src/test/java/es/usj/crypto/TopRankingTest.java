@@ -0,0 +1,94 @@
+package es.usj.crypto;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the TopRanking class.
+ *
+ * This class contains test cases to validate that rankings keep only their best candidates, sorted by descending
+ * score, whatever the order in which they are offered or merged.
+ */
+public class TopRankingTest {
+
+    /**
+     * Tests that a ranking never keeps more candidates than its capacity, and that it keeps the best ones.
+     */
+    @Test
+    public void keepsBestCandidates() {
+        TopRanking ranking = new TopRanking(3);
+        float[] scores = {5f, 1f, 9f, 3f, 7f, 2f, 8f};
+        for (int i = 0; i < scores.length; i++) {
+            ranking.offer(i, scores[i]);
+            assertEquals(Math.min(i + 1, 3), ranking.size());
+        }
+        assertArrayEquals(new long[]{2, 6, 4}, ranking.getKeys());
+        assertArrayEquals(new float[]{9f, 8f, 7f}, ranking.getScores(), 0f);
+    }
+
+    /**
+     * Tests that the threshold is open until the ranking is full, and then is the worst kept score.
+     */
+    @Test
+    public void threshold() {
+        TopRanking ranking = new TopRanking(2);
+        assertEquals(Float.NEGATIVE_INFINITY, ranking.threshold(), 0f);
+        assertTrue(ranking.offer(0, 4f));
+        assertEquals(Float.NEGATIVE_INFINITY, ranking.threshold(), 0f);
+        assertTrue(ranking.offer(1, 6f));
+        assertEquals(4f, ranking.threshold(), 0f);
+        assertFalse(ranking.offer(2, 3f));
+        assertTrue(ranking.offer(3, 5f));
+        assertEquals(5f, ranking.threshold(), 0f);
+    }
+
+    /**
+     * Tests that a full ranking rejects a candidate tied with its worst one, keeping the candidate offered first.
+     */
+    @Test
+    public void tiesKeepFirstCandidate() {
+        TopRanking ranking = new TopRanking(2);
+        ranking.offer(0, 2f);
+        ranking.offer(1, 2f);
+        assertFalse(ranking.offer(2, 2f));
+        assertEquals(2, ranking.size());
+        long[] keys = ranking.getKeys();
+        assertEquals(1, keys[0] + keys[1]);
+    }
+
+    /**
+     * Tests that an empty ranking returns no candidates, and a ranking without capacity rejects every one.
+     */
+    @Test
+    public void emptyRankings() {
+        assertArrayEquals(new long[0], new TopRanking(4).getKeys());
+        TopRanking ranking = new TopRanking(0);
+        assertFalse(ranking.offer(0, 1f));
+        assertEquals(0, ranking.size());
+    }
+
+    /**
+     * Tests that merging per-worker rankings keeps the same candidates as offering every one to a single ranking.
+     */
+    @Test
+    public void mergeMatchesSingleRanking() {
+        Random random = new Random(3);
+        TopRanking single = new TopRanking(10);
+        TopRanking merged = new TopRanking(10);
+        for (int worker = 0; worker < 4; worker++) {
+            TopRanking workerRanking = new TopRanking(10);
+            for (int i = 0; i < 100; i++) {
+                long key = worker * 100L + i;
+                float score = random.nextFloat();
+                single.offer(key, score);
+                workerRanking.offer(key, score);
+            }
+            merged.merge(workerRanking);
+        }
+        assertArrayEquals(single.getKeys(), merged.getKeys());
+        assertArrayEquals(single.getScores(), merged.getScores(), 0f);
+    }
+}
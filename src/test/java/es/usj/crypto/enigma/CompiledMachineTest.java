@@ -0,0 +1,312 @@
+package es.usj.crypto.enigma;
+
+import es.usj.crypto.enigma.constant.ReflectorConfiguration;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the CompiledMachine class of the Enigma encryption system.
+ *
+ * This class contains test cases to validate that the compiled machine produces
+ * exactly the same output as the reference Machine implementation.
+ */
+public class CompiledMachineTest {
+
+    private static final String PLUGBOARD = "IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK";
+
+    /**
+     * Tests a basic use case of the compiled machine by encrypting a single character.
+     */
+    @Test
+    public void basicUseCase() {
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_I, 'F'),
+                new Rotor(RotorConfiguration.ROTOR_II, 'S'),
+                new Rotor(RotorConfiguration.ROTOR_III, 'E'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        assertEquals("P", machine.getCipheredText("A"));
+        assertEquals("A", machine.getCipheredText("P"));
+    }
+
+    /**
+     * Tests that the compiled machine and the reference machine produce the same output
+     * for every rotor order and a long input containing blank spaces.
+     */
+    @Test
+    public void sameOutputAsMachine() {
+        String plainText = "Hello this is a test to verify \n" +
+                "plain text input String containing allowed characters\t" +
+                "and long enough to turn the middle and left rotors AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA" +
+                "ZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZ";
+        RotorConfiguration[] configurations = RotorConfiguration.values();
+        for (RotorConfiguration right : configurations) {
+            for (RotorConfiguration middle : configurations) {
+                for (RotorConfiguration left : configurations) {
+                    if (right == middle || middle == left || left == right) {
+                        continue;
+                    }
+                    char rightPosition = (char) ('A' + (right.ordinal() * 7) % 26);
+                    char middlePosition = (char) ('A' + (middle.ordinal() * 11) % 26);
+                    char leftPosition = (char) ('A' + (left.ordinal() * 5) % 26);
+                    Machine machine = new Machine(
+                            new Plugboard(PLUGBOARD),
+                            new Rotor(right, rightPosition),
+                            new Rotor(middle, middlePosition),
+                            new Rotor(left, leftPosition),
+                            new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+                    CompiledMachine compiledMachine = new CompiledMachine(
+                            new Plugboard(PLUGBOARD),
+                            new Rotor(right, rightPosition),
+                            new Rotor(middle, middlePosition),
+                            new Rotor(left, leftPosition),
+                            new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+                    assertEquals(machine.getCipheredText(plainText), compiledMachine.getCipheredText(plainText));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that creating a compiled machine with repeated rotor configurations
+     * raises an AssertionError.
+     */
+    @Test
+    public void repeatedRotorConfiguration() {
+        Error error = assertThrows(AssertionError.class, () -> new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_I, 'F'),
+                new Rotor(RotorConfiguration.ROTOR_II, 'S'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'F'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT)));
+        assertTrue(error.getMessage().contains("Each rotor configuration should be different"));
+    }
+
+    /**
+     * Tests that providing an invalid input plain text raises an AssertionError.
+     */
+    @Test
+    public void wrongInputPlainText() {
+        assertThrows(AssertionError.class, () -> CompiledMachine.normalize("Hello!"));
+    }
+
+    /**
+     * Tests that whitespace characters are preserved and do not change the state of the machine's output.
+     */
+    @Test
+    public void whitespaceDoesNotChangeState() {
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_I, 'F'),
+                new Rotor(RotorConfiguration.ROTOR_II, 'S'),
+                new Rotor(RotorConfiguration.ROTOR_III, 'E'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        assertEquals(machine.getCipheredText("A B\nC").replaceAll("\\s", ""), machine.getCipheredText("ABC"));
+        assertEquals("A B\nC", CompiledMachine.denormalize(CompiledMachine.normalize("a b\nc")));
+    }
+
+    /**
+     * Tests that ring settings move the turnover of the rotors in the same way in both machines,
+     * and that changing them on a compiled machine is equivalent to compiling rotors with those settings.
+     */
+    @Test
+    public void ringSettings() {
+        String plainText = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA" +
+                "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+        Reflector reflector = new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT);
+        CompiledMachine defaultRings = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_I, 'F'),
+                new Rotor(RotorConfiguration.ROTOR_II, 'S'),
+                new Rotor(RotorConfiguration.ROTOR_III, 'E'),
+                reflector);
+        for (char rightRing : new char[]{'A', 'C', 'Z'}) {
+            for (char middleRing : new char[]{'A', 'K', 'Y'}) {
+                Machine machine = new Machine(
+                        new Plugboard(PLUGBOARD),
+                        new Rotor(RotorConfiguration.ROTOR_I, 'F', rightRing),
+                        new Rotor(RotorConfiguration.ROTOR_II, 'S', middleRing),
+                        new Rotor(RotorConfiguration.ROTOR_III, 'E', 'Q'),
+                        reflector);
+                String expected = machine.getCipheredText(plainText);
+                assertEquals(expected, defaultRings.withRingSettings(rightRing, middleRing).getCipheredText(plainText));
+                if (rightRing != 'A' || middleRing != 'A') {
+                    assertNotEquals(expected, defaultRings.getCipheredText(plainText));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that changing the rotor positions of a compiled machine is equivalent to
+     * compiling rotors placed at those positions.
+     */
+    @Test
+    public void positions() {
+        String plainText = "Hello this is a test to verify the initial rotor positions";
+        Reflector reflector = new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT);
+        CompiledMachine initialPositions = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_IV, 'A', 'C'),
+                new Rotor(RotorConfiguration.ROTOR_II, 'A', 'Y'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'A'),
+                reflector);
+        for (char position : new char[]{'A', 'E', 'V', 'Z'}) {
+            Machine machine = new Machine(
+                    new Plugboard(PLUGBOARD),
+                    new Rotor(RotorConfiguration.ROTOR_IV, position, 'C'),
+                    new Rotor(RotorConfiguration.ROTOR_II, (char) ('A' + 'Z' - position), 'Y'),
+                    new Rotor(RotorConfiguration.ROTOR_V, 'Q'),
+                    reflector);
+            assertEquals(machine.getCipheredText(plainText),
+                    initialPositions.withPositions(position, (char) ('A' + 'Z' - position), 'Q').getCipheredText(plainText));
+        }
+    }
+
+    /**
+     * Tests that the substitutions of a window of letters, scrambled one character at a time, are the ones of the
+     * trace of the whole text, including windows that start after the rotors came back to their initial positions.
+     */
+    @Test
+    public void windowPositions() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            text.append((char) ('A' + i * 7 % 26));
+        }
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(""),
+                new Rotor(RotorConfiguration.ROTOR_III, 'K', 'D'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'B', 'R'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'W'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        ScramblerTrace trace = machine.trace(CompiledMachine.normalize(text.toString()));
+        for (int first : new int[]{0, 1, 25, 300, 676, 1000, 1480}) {
+            int[] positions = new int[20 * 3];
+            machine.positions(first, positions);
+            for (int letter = 0; letter < 20; letter++) {
+                for (int c = 0; c < 26; c++) {
+                    assertEquals(trace.scramble(first + letter, c), machine.scramble(positions, letter, c));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the right ring setting chosen for a turnover is equivalent to setting it on the rotor,
+     * and that the middle rotor turns over at the requested letter.
+     */
+    @Test
+    public void rightTurnover() {
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_II, 'M'),
+                new Rotor(RotorConfiguration.ROTOR_IV, 'C', 'H'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'T'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        assertEquals('A', machine.getRightRingSetting());
+        String plainText = "the middle rotor should turn over exactly where it was asked to";
+        for (int letter : new int[]{0, 7, 25, 40}) {
+            CompiledMachine turned = machine.withRightTurnover(letter);
+            char ringSetting = turned.getRightRingSetting();
+            assertEquals(turned.getCipheredText(plainText), machine.withRingSettings(ringSetting, 'H').getCipheredText(plainText));
+
+            int[] positions = new int[2 * 3];
+            turned.positions(letter + 1, positions);
+            assertEquals(positions[1], positions[4]);
+            turned.positions(letter + 25, positions);
+            assertNotEquals(positions[1], positions[4]);
+        }
+    }
+
+    /**
+     * Tests that the middle ring setting chosen for a turnover is equivalent to setting it on the rotor, that the
+     * left rotor turns over while the middle rotor is at the requested head, and that the left rotor can be moved to
+     * a given head at a letter.
+     */
+    @Test
+    public void middleTurnover() {
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_II, 'M', 'K'),
+                new Rotor(RotorConfiguration.ROTOR_IV, 'C'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'T'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        assertEquals('A', machine.getMiddleRingSetting());
+        StringBuilder plainText = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            plainText.append((char) ('A' + i * 11 % 26));
+        }
+        int[] positions = new int[3];
+        for (int letter : new int[]{0, 30, 100}) {
+            machine.positions(letter, positions);
+            CompiledMachine turned = machine.withMiddleTurnover(positions[1]);
+            char ringSetting = turned.getMiddleRingSetting();
+            assertEquals(turned.getCipheredText(plainText.toString()),
+                    machine.withRingSettings('K', ringSetting).getCipheredText(plainText.toString()));
+
+            int[] window = new int[2 * 3];
+            turned.positions(letter, window);
+            assertEquals(window[1], window[4]);
+            assertNotEquals(window[2], window[5]);
+
+            CompiledMachine moved = turned.withLeftHead(letter, 7);
+            moved.positions(letter, positions);
+            assertEquals(7, positions[2]);
+            assertEquals(moved.getCipheredText(plainText.toString()), machine.withRingSettings('K', ringSetting)
+                    .withPositions('M', 'C', moved.getLeftPosition()).getCipheredText(plainText.toString()));
+        }
+    }
+
+    /**
+     * Tests that the letters counted while ciphering are the letters of the ciphered text.
+     */
+    @Test
+    public void countLetters() {
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_III, 'Q'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'D'),
+                new Rotor(RotorConfiguration.ROTOR_I, 'K'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        byte[] input = CompiledMachine.normalize("counting letters should not need the ciphered text \n at all");
+        byte[] output = new byte[input.length];
+        machine.encrypt(input, output);
+        int[] expected = new int[26];
+        for (byte c : output) {
+            if (c >= 0) {
+                expected[c]++;
+            }
+        }
+        int[] counts = new int[26];
+        counts[3] = 99;
+        machine.countLetters(input, counts);
+        assertArrayEquals(expected, counts);
+    }
+
+    /**
+     * Tests that a scrambler table counts the same letters as the rotors, for other positions and ring settings
+     * than those of the machine it was built from.
+     */
+    @Test
+    public void scramblerTable() {
+        CompiledMachine machine = new CompiledMachine(
+                new Plugboard(PLUGBOARD),
+                new Rotor(RotorConfiguration.ROTOR_II, 'A'),
+                new Rotor(RotorConfiguration.ROTOR_IV, 'A'),
+                new Rotor(RotorConfiguration.ROTOR_V, 'A'),
+                new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
+        ScramblerTable table = machine.scramblerTable();
+        byte[] input = CompiledMachine.normalize("a text long enough to turn over the middle rotor more than once and the left rotor too " +
+                "with every letter of the alphabet from a to z repeated several times over and over again");
+        int[] expected = new int[26];
+        int[] counts = new int[26];
+        for (char position = 'A'; position <= 'Z'; position += 5) {
+            CompiledMachine other = machine.withPositions(position, 'E', (char) ('Z' - position + 'A')).withRingSettings('K', position);
+            other.countLetters(input, expected);
+            other.countLetters(input, counts, table);
+            assertArrayEquals(expected, counts);
+        }
+    }
+}
@@ -144,4 +144,25 @@ public class MachineTest {
                 new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT));
         assertEquals(machine1.getCipheredText("A B C").replaceAll(" ", ""), machine2.getCipheredText("ABC"));
     }
+
+    /**
+     * Tests that machines sharing the same rotors do not interfere with each other,
+     * and that a reset machine ciphers again from the initial rotor positions.
+     */
+    @Test
+    public void sharedRotorsAndReset() {
+        Rotor rightRotor = new Rotor(RotorConfiguration.ROTOR_I, 'F');
+        Rotor middleRotor = new Rotor(RotorConfiguration.ROTOR_II, 'S');
+        Rotor leftRotor = new Rotor(RotorConfiguration.ROTOR_III, 'E');
+        Reflector reflector = new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT);
+        Machine machine1 = new Machine(new Plugboard("IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK"), rightRotor, middleRotor, leftRotor, reflector);
+        Machine machine2 = new Machine(new Plugboard("IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK"), rightRotor, middleRotor, leftRotor, reflector);
+
+        String cipherText = machine1.getCipheredText("HELLO WORLD");
+        assertEquals(cipherText, machine2.getCipheredText("HELLO WORLD"));
+        assertNotEquals(cipherText, machine1.getCipheredText("HELLO WORLD"));
+
+        machine1.reset();
+        assertEquals(cipherText, machine1.getCipheredText("HELLO WORLD"));
+    }
 }
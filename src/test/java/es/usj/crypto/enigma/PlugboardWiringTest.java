@@ -0,0 +1,81 @@
+package es.usj.crypto.enigma;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the PlugboardWiring class of the Enigma encryption system.
+ *
+ * This class contains test cases to validate the cable operations of the wiring,
+ * its canonical key and its conversion from and to the Plugboard string format.
+ */
+public class PlugboardWiringTest {
+
+    /**
+     * Tests that parsing and printing a wiring uses the Plugboard format, ordered by the lowest character.
+     */
+    @Test
+    public void parseAndPrint() {
+        PlugboardWiring wiring = PlugboardWiring.parse("YA:BR:CU");
+        assertEquals(3, wiring.cables());
+        assertEquals('Y' - 'A', wiring.partner(0));
+        assertFalse(wiring.isPlugged('Z' - 'A'));
+        assertEquals("AY:BR:CU", wiring.toString());
+        assertArrayEquals(new int[]{0, 1, 2}, wiring.getCables());
+        assertEquals("", PlugboardWiring.EMPTY.toString());
+    }
+
+    /**
+     * Tests the plug, unplug, replace and swap operations, and that they do not modify the original wiring.
+     */
+    @Test
+    public void cableOperations() {
+        PlugboardWiring wiring = PlugboardWiring.parse("AB:CD");
+        assertEquals("AB:CD:EF", wiring.plug(4, 5).toString());
+        assertEquals("CD", wiring.unplug(1).toString());
+        assertEquals("AE:CD", wiring.replace(1, 0, 4).toString());
+        assertEquals("AD:BC", wiring.swap(0, 2).toString());
+        assertEquals("BD", wiring.swap(0, 3).unplug(0).toString());
+        assertEquals("AB:CD", wiring.toString());
+        assertThrows(AssertionError.class, () -> wiring.plug(0, 4));
+    }
+
+    /**
+     * Tests that keys are canonical, unique and can be decoded back into the same wiring.
+     */
+    @Test
+    public void canonicalKeys() {
+        assertEquals(PlugboardWiring.parse("AB:CD").key(), PlugboardWiring.parse("DC:BA").key());
+
+        Random random = new Random(42);
+        Set<Long> keys = new HashSet<>();
+        Set<PlugboardWiring> wirings = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            PlugboardWiring wiring = PlugboardWiring.random(random, i % 12);
+            assertEquals(i % 12, wiring.cables());
+            assertEquals(wiring, PlugboardWiring.fromKey(wiring.key()));
+            keys.add(wiring.key());
+            wirings.add(wiring);
+        }
+        assertEquals(wirings.size(), keys.size());
+    }
+
+    /**
+     * Tests that a plugboard built from a wiring behaves like the one built from its string.
+     */
+    @Test
+    public void plugboardFromWiring() {
+        String pairs = "AY:BR:CU:DH:EQ:FS:GL:IP:JX:KN";
+        Plugboard expected = new Plugboard(pairs);
+        Plugboard actual = new Plugboard(PlugboardWiring.parse(pairs));
+        for (char c : Machine.ALPHABET.toCharArray()) {
+            assertEquals(expected.getPlug(c), actual.getPlug(c));
+        }
+        assertEquals(' ', actual.getPlug(' '));
+    }
+}
@@ -3,6 +3,7 @@ package es.usj.crypto.enigma;
 import es.usj.crypto.enigma.constant.RotorConfiguration;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
@@ -42,4 +43,34 @@ public class RotorTest {
         assertTrue(actualMessage.contains(expectedMessage));
     }
 
+    /**
+     * Tests the Rotor's response to an invalid ring setting.
+     */
+    @Test
+    public void wrongRingSetting() {
+        Error error = assertThrows(AssertionError.class, () -> new Rotor(RotorConfiguration.ROTOR_I, 'F', '1'));
+        assertTrue(error.getMessage().contains("Ring setting should be A to Z"));
+    }
+
+    /**
+     * Tests that rotor states rotate independently from each other and
+     * can be moved back to the initial position of the rotor.
+     */
+    @Test
+    public void independentStates() {
+        Rotor rotor = new Rotor(RotorConfiguration.ROTOR_I, 'F');
+        RotorState first = rotor.newState();
+        RotorState second = rotor.newState();
+
+        first.update(null);
+        assertEquals('V', first.getPosition());
+        assertEquals('F', second.getPosition());
+        assertEquals('F', rotor.getRotorPosition());
+
+        first.reset();
+        assertEquals('F', first.getPosition());
+        assertEquals('F', first.forward('A'));
+        assertEquals('A', first.backward('F'));
+    }
+
 }
@@ -0,0 +1,41 @@
+package es.usj.crypto.enigma;
+
+import es.usj.crypto.enigma.constant.ReflectorConfiguration;
+import es.usj.crypto.enigma.constant.RotorConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ScramblerTrace class of the Enigma encryption system.
+ *
+ * This class contains test cases to validate that ciphering a text through a
+ * scrambler trace gives the same result as the complete machine for any plugboard.
+ */
+public class ScramblerTraceTest {
+
+    /**
+     * Tests that a single trace reproduces the machine output for several plugboards.
+     */
+    @Test
+    public void sameOutputAsMachine() {
+        String text = "KS HGLYDQMB KNESHP YDK ZF IDKLJE JRM QRESG F RGXM WVAVRT\nIXUDO NAY KPMPUTL";
+        Rotor rightRotor = new Rotor(RotorConfiguration.ROTOR_IV, 'Q');
+        Rotor middleRotor = new Rotor(RotorConfiguration.ROTOR_II, 'C');
+        Rotor leftRotor = new Rotor(RotorConfiguration.ROTOR_V, 'X');
+        Reflector reflector = new Reflector(ReflectorConfiguration.REFLECTOR_DEFAULT);
+
+        ScramblerTrace trace = new CompiledMachine(new Plugboard(""), rightRotor, middleRotor, leftRotor, reflector)
+                .trace(CompiledMachine.normalize(text));
+        assertEquals(text.length(), trace.length());
+        assertEquals(text.replaceAll("\\s", "").length(), trace.letters());
+
+        for (String pairs : new String[]{"", "IR:HQ:NT:WZ:VC:OY:GP:LF:BX:AK", "AY:BR:CU:DH:EQ:FS:GL:IP:JX:KN"}) {
+            Plugboard plugboard = new Plugboard(pairs);
+            byte[] output = new byte[trace.length()];
+            trace.decrypt(plugboard.toArray(), output);
+            String expected = new Machine(plugboard, rightRotor, middleRotor, leftRotor, reflector).getCipheredText(text);
+            assertEquals(expected, CompiledMachine.denormalize(output));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package es.usj.crypto.fitness;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the NgramTables class.
+ *
+ * This class contains test cases to validate that the bigram, trigram and quadgram tables stored in every format,
+ * either mapped from the packed files or written in memory, reproduce the log-probabilities of the CSV files within
+ * the quantization step of the format.
+ */
+public class NgramTablesTest {
+
+    private static final NgramTables.Table[] TABLES = {
+            NgramTables.Table.BIGRAMS, NgramTables.Table.TRIGRAMS, NgramTables.Table.QUADGRAMS
+    };
+
+    /**
+     * Tests that the tables written in memory in every format reproduce the parsed values within half a step.
+     */
+    @Test
+    public void writtenTablesMatchParsed() {
+        for (NgramTables.Table table : TABLES) {
+            float[] values = NgramTables.parse(table);
+            for (NgramTables.Format format : NgramTables.Format.values()) {
+                ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + table.getEntries() * bytes(format))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                NgramTables.write(table, format, values, buffer);
+                assertMatches(table, format, values, NgramTables.read(table, format, buffer));
+            }
+        }
+    }
+
+    /**
+     * Tests that the packed tables mapped from the files compiled by the build reproduce the parsed values within
+     * half a step.
+     */
+    @Test
+    public void mappedTablesMatchParsed() throws IOException, URISyntaxException {
+        for (NgramTables.Table table : TABLES) {
+            float[] values = NgramTables.parse(table);
+            for (NgramTables.Format format : NgramTables.Format.values()) {
+                String name = "/data/" + table.name().toLowerCase(Locale.ROOT) + "-" +
+                        format.name().toLowerCase(Locale.ROOT) + ".bin";
+                URL resource = NgramTablesTest.class.getResource(name);
+                assertNotNull(name, resource);
+                Path path = Paths.get(resource.toURI());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                    assertMatches(table, format, values, NgramTables.read(table, format, buffer));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the tables loaded in the configured format reproduce the parsed values within half a step.
+     */
+    @Test
+    public void loadedTablesMatchParsed() {
+        for (NgramTables.Table table : TABLES) {
+            assertMatches(table, NgramTables.FORMAT, NgramTables.parse(table), NgramTables.get(table));
+        }
+    }
+
+    /**
+     * Tests that a table in another format than the one expected is rejected.
+     */
+    @Test
+    public void otherFormatRejected() {
+        NgramTables.Table table = NgramTables.Table.BIGRAMS;
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + table.getEntries() * Short.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        NgramTables.write(table, NgramTables.Format.SHORT, NgramTables.parse(table), buffer);
+        assertThrows(IllegalStateException.class, () -> NgramTables.read(table, NgramTables.Format.BYTE, buffer));
+    }
+
+    private static int bytes(NgramTables.Format format) {
+        switch (format) {
+            case SHORT:
+                return Short.BYTES;
+            case BYTE:
+                return Byte.BYTES;
+            default:
+                return Float.BYTES;
+        }
+    }
+
+    private static void assertMatches(NgramTables.Table table, NgramTables.Format format, float[] values,
+                                      NgramTable ngrams) {
+        float lowest = Float.POSITIVE_INFINITY;
+        float highest = Float.NEGATIVE_INFINITY;
+        for (float value : values) {
+            lowest = Math.min(lowest, value);
+            highest = Math.max(highest, value);
+        }
+        // Rounding to the nearest level is off by half a step at most, plus the float error of offset + q * scale
+        float tolerance;
+        switch (format) {
+            case SHORT:
+                tolerance = (highest - lowest) / 0xFFFF / 2 + Math.ulp(lowest) * 4;
+                break;
+            case BYTE:
+                tolerance = (highest - lowest) / 0xFF / 2 + Math.ulp(lowest) * 4;
+                break;
+            default:
+                tolerance = 0f;
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(table + " " + format + " " + i, values[i], ngrams.get(i), tolerance);
+        }
+    }
+}